@@ -0,0 +1,87 @@
+/*
+ * ElectionBenchmark measures how long one primary/backup election takes as the number
+ * of players grows, for the single-round election (-Dgame.election=single) and for the
+ * original broadcast election (-Dgame.election=broadcast).
+ *
+ * The Tracker and all the players are hosted in this JVM and talk to each other over
+ * RMI on loopback, so the numbers include real RMI round trips. The players are headless
+ * (see src.PlayerHost) and are torn down before the next player count.
+ *
+ * Invoke it from the same directory as the compiled game (see `make compile`):
+ * 		java -cp bin:. ElectionBenchmark [port-number] [rounds] [player-count...]
+ * e.g.
+ * 		java -cp bin:. ElectionBenchmark 6790 5 5 10 20 50 100
+ * Each player count uses its own Tracker on port-number, port-number + 1, ...
+ */
+
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+import src.Game;
+import src.Player;
+import src.PlayerHost;
+import src.Tracker;
+
+public class ElectionBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 3) {
+			System.out.println("Usage: java -cp bin:. ElectionBenchmark [port-number] [rounds] [player-count...]");
+			System.exit(0);
+		}
+		int port = Integer.parseInt(args[0]);
+		int rounds = Integer.parseInt(args[1]);
+
+		List<String> report = new ArrayList<String>();
+		report.add(String.format("%8s %18s %18s", "players", "single-round (ms)", "broadcast (ms)"));
+		for (int i = 2; i < args.length; i++) {
+			int players = Integer.parseInt(args[i]);
+			report.add(run(port + i - 2, players, rounds));
+		}
+
+		System.out.println("========== Election time per player count ==========");
+		for (String line : report) {
+			System.out.println(line);
+		}
+		System.exit(0);
+	}
+
+	private static String run(int port, int playerCount, int rounds) throws Exception {
+		Tracker tracker = new Tracker();
+		tracker.setPortNumber(port);
+		tracker.setN(Math.max(15, (int) Math.ceil(Math.sqrt(playerCount * 4))));
+		tracker.setK(10);
+		tracker.regTracker();
+
+		// Join with the cheap election, only the elections afterwards are measured
+		System.setProperty("game.election", "single");
+		PlayerHost host = new PlayerHost("127.0.0.1", port, Runtime.getRuntime().availableProcessors());
+		// One at a time, so the first player is the primary and starts the elections
+		List<Game> games = new ArrayList<Game>();
+		for (int i = 0; i < playerCount; i++) {
+			games.add(host.join(String.format("p%04d", i)));
+		}
+
+		double single = time(games.get(0), tracker, "single", rounds);
+		double broadcast = time(games.get(0), tracker, "broadcast", rounds);
+
+		// Stop the failure detectors and unexport every player before the next player count
+		host.shutdown();
+		UnicastRemoteObject.unexportObject(tracker, true);
+		return String.format("%8d %18.1f %18.1f", playerCount, single, broadcast);
+	}
+
+	// Average wall time of an election started by the initiator over all the players
+	private static double time(Game initiator, Tracker tracker, String mode, int rounds) throws Exception {
+		System.setProperty("game.election", mode);
+		// Warm up the RMI connections
+		initiator.initiateElection(new ArrayList<Player>(tracker.getPlayerList()));
+		long total = 0;
+		for (int round = 0; round < rounds; round++) {
+			long start = System.nanoTime();
+			initiator.initiateElection(new ArrayList<Player>(tracker.getPlayerList()));
+			total += System.nanoTime() - start;
+		}
+		return total / 1e6 / rounds;
+	}
+}
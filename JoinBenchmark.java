@@ -0,0 +1,154 @@
+/*
+ * JoinBenchmark measures how many registrations per second the Tracker admits when
+ * many players join at the same time, and how long it takes until an election has
+ * given a role to every one of them.
+ *
+ * The Tracker and the joiners are hosted in this JVM. The joiners call registerPlayer
+ * on the Tracker directly from one thread each, the Tracker and the elections reach the
+ * joiners over RMI on loopback. The joiners are lightweight stand-ins for Game (no GUI,
+ * no game state) that answer the election messages, so the numbers are those of the
+ * Tracker and the single-round election, not of the game itself.
+ *
+ * Invoke it from the same directory as the compiled game (see `make compile`):
+ * 		java -cp bin:. JoinBenchmark [port-number] [joiner-count...]
+ * e.g.
+ * 		java -cp bin:. JoinBenchmark 6890 10 100 1000
+ * Each joiner count uses its own Tracker on port-number, port-number + 1, ...
+ */
+
+import java.lang.reflect.Proxy;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import src.Election;
+import src.Game.ServerRole;
+import src.Player;
+import src.Tracker;
+
+public class JoinBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.out.println("Usage: java -cp bin:. JoinBenchmark [port-number] [joiner-count...]");
+			System.exit(0);
+		}
+		int port = Integer.parseInt(args[0]);
+
+		List<String> report = new ArrayList<String>();
+		report.add(String.format("%8s %12s %12s %16s %10s", "joiners", "joins (ms)", "joins/sec", "all roles (ms)", "elections"));
+		for (int i = 1; i < args.length; i++) {
+			report.add(run(port + i - 1, Integer.parseInt(args[i])));
+		}
+
+		System.out.println("========== Join throughput per joiner count ==========");
+		for (String line : report) {
+			System.out.println(line);
+		}
+		System.exit(0);
+	}
+
+	private static String run(int port, int joinerCount) throws Exception {
+		Tracker tracker = new Tracker();
+		tracker.setPortNumber(port);
+		tracker.setN(15);
+		tracker.setK(10);
+		tracker.regTracker();
+
+		// Every joiner counts down once an election result includes all the joiners
+		CountDownLatch allAssigned = new CountDownLatch(joinerCount);
+		List<Player> joiners = new ArrayList<Player>();
+		List<Player> stubs = new ArrayList<Player>();
+		for (int i = 0; i < joinerCount; i++) {
+			Player joiner = joiner(String.format("p%05d", i), joinerCount, allAssigned);
+			joiners.add(joiner);
+			stubs.add((Player) UnicastRemoteObject.exportObject(joiner, 0));
+		}
+
+		CountDownLatch start = new CountDownLatch(1);
+		CountDownLatch joined = new CountDownLatch(joinerCount);
+		AtomicInteger rejected = new AtomicInteger();
+		for (Player stub : stubs) {
+			Thread thread = new Thread(() -> {
+				try {
+					start.await();
+					if (!tracker.registerPlayer(stub)) {
+						rejected.incrementAndGet();
+					}
+				} catch (Exception e) {
+					rejected.incrementAndGet();
+				}
+				joined.countDown();
+			});
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		long begin = System.nanoTime();
+		start.countDown();
+		joined.await();
+		double joinMillis = (System.nanoTime() - begin) / 1e6;
+		allAssigned.await();
+		double assignedMillis = (System.nanoTime() - begin) / 1e6;
+		if (rejected.get() > 0) {
+			System.err.println(rejected.get() + " of " + joinerCount + " registrations failed");
+		}
+
+		for (Player joiner : joiners) {
+			UnicastRemoteObject.unexportObject(joiner, true);
+		}
+		UnicastRemoteObject.unexportObject(tracker, true);
+		return String.format("%8d %12.1f %12.0f %16.1f %10d", joinerCount, joinMillis,
+				joinerCount / (joinMillis / 1e3), assignedMillis, tracker.getElectionsRun());
+	}
+
+	// A joiner that only takes part in elections
+	private static Player joiner(String playerId, int joinerCount, CountDownLatch allAssigned) throws Exception {
+		long[] epoch = new long[1];
+		String[] initiator = new String[1];
+		ServerRole[] role = new ServerRole[1];
+		boolean[] assigned = new boolean[1];
+		return (Player) Proxy.newProxyInstance(Player.class.getClassLoader(), new Class<?>[] {Player.class},
+			(proxy, method, args) -> {
+				switch (method.getName()) {
+					case "getPlayerId":
+						return playerId;
+					case "ping":
+						return "pong";
+					case "initiateElection":
+						@SuppressWarnings("unchecked")
+						ArrayList<Player> players = (ArrayList<Player>) args[0];
+						Election.run(playerId, players);
+						return null;
+					case "probeForElection":
+						synchronized (epoch) {
+							return new Election.Probe(playerId, role[0], epoch[0]);
+						}
+					case "applyElectionResult":
+						Election.Result result = (Election.Result) args[0];
+						synchronized (epoch) {
+							if (result.supersedes(epoch[0], initiator[0])) {
+								epoch[0] = result.epoch;
+								initiator[0] = result.initiatorId;
+								role[0] = playerId.equals(result.primaryId) ? ServerRole.PRIMARY
+										: playerId.equals(result.backupId) ? ServerRole.BACKUP : ServerRole.PLAYER;
+							}
+							if (!assigned[0] && result.playerIds.size() == joinerCount) {
+								assigned[0] = true;
+								allAssigned.countDown();
+							}
+						}
+						return null;
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					case "equals":
+						return proxy == args[0];
+					case "toString":
+						return playerId;
+					default:
+						return null;
+				}
+			});
+	}
+}
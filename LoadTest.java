@@ -0,0 +1,257 @@
+/*
+ * LoadTest drives many players inside this JVM, instead of one Game process per player
+ * like StressTest, and reports the move throughput and latency.
+ *
+ * A Tracker and all the players (headless, see src.PlayerHost) run in this JVM over RMI
+ * on loopback. Every player sends single moves at a fixed rate, either a random walk or
+ * a script of keys played in a loop. Meanwhile players can join, leave gracefully or
+ * crash at a fixed rate. A move's latency is the time until the mover has the primary's
+ * answer applied. The seed fixes the spawns, the treasures, the walks and the churn.
+ *
+ * Invoke it from the same directory as the compiled game (see `make compile`):
+ * 		java -cp bin:. LoadTest [option=value...]
+ * e.g.
+ * 		java -cp bin:. LoadTest players=200 rate=5 duration=30 seed=42 join=1 leave=0.5 crash=0.2
+ *
+ * Options (default):
+ * 		port      Tracker port (6990)
+ * 		players   number of players at the start (50)
+ * 		rate      moves per second of each player (5)
+ * 		duration  seconds of measured load (20)
+ * 		warmup    seconds of load before measuring (5)
+ * 		seed      seed of everything random (42)
+ * 		script    keys each player plays in a loop, e.g. 3214; random walk if not set
+ * 		join      players joining per second (0)
+ * 		leave     players leaving gracefully per second (0)
+ * 		crash     players crashing per second (0)
+ * 		threads   threads sending the moves (number of processors * 4)
+ * 		quiet     discard the output of the players (true)
+ * 		regions   split the maze between region primaries, e.g. 2x2 (1x1, see src.RegionMap)
+ */
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import src.Direction;
+import src.Game;
+import src.PlayerHost;
+import src.Tracker;
+
+public class LoadTest {
+	private static final char[] MOVES = {Direction.LEFT, Direction.DOWN, Direction.RIGHT, Direction.UP};
+
+	private final Map<String, String> options;
+	private final long seed;
+	private final double rate;
+	private final String script;
+	private final PlayerHost host;
+	private final ScheduledExecutorService movers;
+	private final Map<String, ScheduledFuture<?>> moveTasks = new ConcurrentHashMap<String, ScheduledFuture<?>>();
+	// Random source of the churn, only used by the churn task
+	private final Random churnRandom;
+	private final AtomicInteger nextPlayer = new AtomicInteger();
+
+	// Latencies of the moves sent while measuring, in nanoseconds
+	private long[] latencies = new long[1 << 16];
+	private int latencyCount;
+	private volatile boolean measuring;
+	private final AtomicInteger joins = new AtomicInteger();
+	private final AtomicInteger leaves = new AtomicInteger();
+	private final AtomicInteger crashes = new AtomicInteger();
+	private final AtomicInteger failedJoins = new AtomicInteger();
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = new HashMap<String, String>();
+		for (String arg : args) {
+			String[] pair = arg.split("=", 2);
+			if (pair.length != 2) {
+				System.out.println("Usage: java -cp bin:. LoadTest [option=value...], see LoadTest.java for the options");
+				System.exit(0);
+			}
+			options.put(pair[0], pair[1]);
+		}
+		new LoadTest(options).run();
+		System.exit(0);
+	}
+
+	private LoadTest(Map<String, String> options) {
+		this.options = options;
+		this.seed = Long.parseLong(option("seed", "42"));
+		this.rate = Double.parseDouble(option("rate", "5"));
+		this.script = options.get("script");
+		// Seed the game itself too: spawns and treasures
+		System.setProperty("game.seed", Long.toString(seed));
+		System.setProperty("game.headless", "true");
+		System.setProperty("game.regions", option("regions", "1x1"));
+		this.churnRandom = new Random(seed);
+		int port = Integer.parseInt(option("port", "6990"));
+		this.host = new PlayerHost("127.0.0.1", port, Runtime.getRuntime().availableProcessors());
+		int threads = Integer.parseInt(option("threads", Integer.toString(Runtime.getRuntime().availableProcessors() * 4)));
+		this.movers = Executors.newScheduledThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "load-mover");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	private String option(String name, String defaultValue) {
+		return options.containsKey(name) ? options.get(name) : defaultValue;
+	}
+
+	private void run() throws Exception {
+		int players = Integer.parseInt(option("players", "50"));
+		int port = Integer.parseInt(option("port", "6990"));
+		long warmupMillis = (long) (Double.parseDouble(option("warmup", "5")) * 1000);
+		long durationMillis = (long) (Double.parseDouble(option("duration", "20")) * 1000);
+		PrintStream console = System.out;
+		if (Boolean.parseBoolean(option("quiet", "true"))) {
+			PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+			System.setOut(discard);
+			System.setErr(discard);
+		}
+
+		Tracker tracker = new Tracker();
+		tracker.setPortNumber(port);
+		// Room for the churn too
+		tracker.setN(Math.max(15, (int) Math.ceil(Math.sqrt(players * 8))));
+		tracker.setK(10);
+		tracker.regTracker();
+
+		console.println("Joining " + players + " players...");
+		long joinStart = System.currentTimeMillis();
+		List<String> playerIds = new ArrayList<String>();
+		for (int i = 0; i < players; i++) {
+			playerIds.add(newPlayerId());
+		}
+		for (Game game : host.joinAll(playerIds, Math.min(players, 32))) {
+			startMoving(game);
+		}
+		console.println(host.getPlayers().size() + " players joined in " + (System.currentTimeMillis() - joinStart) + "ms");
+
+		ScheduledFuture<?> churn = startChurn();
+
+		Thread.sleep(warmupMillis);
+		measuring = true;
+		long start = System.nanoTime();
+		Thread.sleep(durationMillis);
+		measuring = false;
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		if (churn != null) {
+			churn.cancel(false);
+		}
+		movers.shutdownNow();
+		movers.awaitTermination(5, TimeUnit.SECONDS);
+		host.shutdown();
+
+		report(console, seconds);
+	}
+
+	private String newPlayerId() {
+		return String.format("l%04d", nextPlayer.getAndIncrement());
+	}
+
+	private void startMoving(Game game) {
+		String playerId = game.getPlayerId();
+		Random random = new Random(seed ^ playerId.hashCode());
+		long periodMicros = (long) (1e6 / rate);
+		int[] step = new int[1];
+		Runnable move = () -> {
+			char key = script != null ? script.charAt(step[0]++ % script.length()) : MOVES[random.nextInt(MOVES.length)];
+			long sent = System.nanoTime();
+			game.processInput(String.valueOf(key));
+			if (measuring) {
+				record(System.nanoTime() - sent);
+			}
+		};
+		// Spread the players over the period, so they don't all move at the same instant
+		long offset = (long) (random.nextDouble() * periodMicros);
+		moveTasks.put(playerId, movers.scheduleAtFixedRate(move, offset, periodMicros, TimeUnit.MICROSECONDS));
+	}
+
+	private void stopMoving(String playerId) {
+		ScheduledFuture<?> task = moveTasks.remove(playerId);
+		if (task != null) {
+			task.cancel(false);
+		}
+	}
+
+	// One churn event at a time, each one a join, a leave or a crash in proportion to their rates
+	private ScheduledFuture<?> startChurn() {
+		double joinRate = Double.parseDouble(option("join", "0"));
+		double leaveRate = Double.parseDouble(option("leave", "0"));
+		double crashRate = Double.parseDouble(option("crash", "0"));
+		double total = joinRate + leaveRate + crashRate;
+		if (total <= 0) {
+			return null;
+		}
+		long periodMicros = (long) (1e6 / total);
+		return Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "load-churn");
+			thread.setDaemon(true);
+			return thread;
+		}).scheduleWithFixedDelay(() -> {
+			double pick = churnRandom.nextDouble() * total;
+			List<String> current = new ArrayList<String>(moveTasks.keySet());
+			current.sort(null);
+			if (pick < joinRate || current.size() <= 1) {
+				try {
+					startMoving(host.join(newPlayerId()));
+					joins.incrementAndGet();
+				} catch (Exception e) {
+					failedJoins.incrementAndGet();
+				}
+				return;
+			}
+			String playerId = current.get(churnRandom.nextInt(current.size()));
+			stopMoving(playerId);
+			if (pick < joinRate + leaveRate) {
+				host.leave(playerId);
+				leaves.incrementAndGet();
+			} else {
+				host.crash(playerId);
+				crashes.incrementAndGet();
+			}
+		}, periodMicros, periodMicros, TimeUnit.MICROSECONDS);
+	}
+
+	private synchronized void record(long latency) {
+		if (latencyCount == latencies.length) {
+			latencies = Arrays.copyOf(latencies, latencies.length * 2);
+		}
+		latencies[latencyCount++] = latency;
+	}
+
+	private synchronized void report(PrintStream console, double seconds) {
+		long[] sorted = Arrays.copyOf(latencies, latencyCount);
+		Arrays.sort(sorted);
+		console.println("========== Load test ==========");
+		console.println(String.format("players %s, rate %.1f/s per player, %s, seed %d",
+				option("players", "50"), rate, script != null ? "script " + script : "random walk", seed));
+		console.println(String.format("churn: %d joins (%d failed), %d leaves, %d crashes",
+				joins.get(), failedJoins.get(), leaves.get(), crashes.get()));
+		console.println(String.format("moves: %d in %.1fs, %.0f moves/sec", latencyCount, seconds, latencyCount / seconds));
+		console.println(String.format("latency (ms): p50 %.2f, p99 %.2f, p999 %.2f, max %.2f",
+				percentile(sorted, 0.50), percentile(sorted, 0.99), percentile(sorted, 0.999),
+				sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1e6));
+	}
+
+	private static double percentile(long[] sorted, double p) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		int idx = (int) Math.ceil(p * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(idx, sorted.length - 1))] / 1e6;
+	}
+}
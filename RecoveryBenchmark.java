@@ -0,0 +1,169 @@
+/*
+ * RecoveryBenchmark measures how long a restarted node takes to get the game state back from
+ * the state log (see src.StateLog): load the newest snapshot and replay the log after it.
+ *
+ * It plays random moves of many players on one maze the way the primary does (a move to a free
+ * cell, a treasure collected and another one spawned) and logs every committed delta, once with
+ * a single snapshot at the start, so recovery replays every event, and once with a snapshot every
+ * snapshot-every events. Then it recovers from each log and checks the state against the live one.
+ *
+ * Invoke it from the same directory as the compiled game (see `make compile`):
+ * 		java -cp bin:. RecoveryBenchmark [events] [snapshot-every] [directory]
+ * e.g.
+ * 		java -cp bin:. RecoveryBenchmark 1000000 300000 /tmp/recovery
+ */
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+import src.Direction;
+import src.GameDelta;
+import src.GameUtils;
+import src.OccupancyGrid;
+import src.Player.GameState;
+import src.StateLog;
+import src.StateSnapshot;
+
+public class RecoveryBenchmark {
+	private static final int GRID_SIZE = 100;
+	private static final int PLAYERS = 1000;
+	private static final int TREASURES = 100;
+	private static final char[] MOVES = {Direction.LEFT, Direction.DOWN, Direction.RIGHT, Direction.UP};
+
+	public static void main(String[] args) throws Exception {
+		int events = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		long snapshotEvery = args.length > 1 ? Long.parseLong(args[1]) : 100000;
+		Path root = args.length > 2 ? Paths.get(args[2]) : Files.createTempDirectory("recovery");
+
+		List<String> report = new ArrayList<String>();
+		report.add(String.format("%14s %10s %10s %12s %10s %12s %14s", "snapshot every", "events", "log (MB)",
+				"append (ns)", "replayed", "recover (ms)", "replay (ev/s)"));
+		report.add(run(root.resolve("full"), events, events + 1L));
+		report.add(run(root.resolve("periodic"), events, snapshotEvery));
+
+		System.out.println("========== Recovery from the state log, " + PLAYERS + " players on " + GRID_SIZE + "x"
+				+ GRID_SIZE + " ==========");
+		for (String line : report) {
+			System.out.println(line);
+		}
+	}
+
+	private static String run(Path dir, int events, long snapshotEvery) throws Exception {
+		clear(dir);
+		Random random = new Random(42);
+		GameState state = newState(random);
+		OccupancyGrid occupancy = new OccupancyGrid(GRID_SIZE);
+		occupancy.rebuild(state.playerPositions, state.treasurePositions);
+		String[] ids = state.playerPositions.keySet().toArray(new String[0]);
+		Arrays.sort(ids);
+
+		StateLog log = new StateLog(dir, GRID_SIZE, snapshotEvery);
+		log.snapshot(StateSnapshot.of(state));
+		long logged = 0;
+		long appendNanos = 0;
+		while (logged < events) {
+			GameDelta delta = move(state, occupancy, ids, random);
+			if (delta == null) {
+				continue;
+			}
+			delta.setVersion(++state.version);
+			delta.applyTo(state.playerPositions, state.treasurePositions, state.playerScores, occupancy);
+			long begin = System.nanoTime();
+			// Like the primary: a snapshot when the log is due for one
+			if (!log.append(delta) || log.isSnapshotDue()) {
+				log.snapshot(StateSnapshot.of(state));
+			}
+			appendNanos += System.nanoTime() - begin;
+			logged++;
+		}
+		log.close();
+		double megabytes = log.getAppendedBytes() / (1024.0 * 1024.0);
+
+		StateLog.Recovery recovery = StateLog.recover(dir);
+		if (recovery == null || recovery.state.version != state.version
+				|| !recovery.state.playerScores.equals(state.playerScores)
+				|| !samePositions(recovery.state.playerPositions, state.playerPositions)) {
+			System.err.println("Recovered state differs from the live one");
+		}
+		return String.format("%14d %10d %10.1f %12.0f %10d %12d %14.0f", Math.min(snapshotEvery, events), events,
+				megabytes, (double) appendNanos / events, recovery.replayed, recovery.millis,
+				recovery.replayed / Math.max(0.001, recovery.millis / 1e3));
+	}
+
+	// The primary's bookkeeping of one random move, null if it is rejected
+	private static GameDelta move(GameState state, OccupancyGrid occupancy, String[] ids, Random random) {
+		String id = ids[random.nextInt(ids.length)];
+		int[] pos = state.playerPositions.get(id);
+		char direction = MOVES[random.nextInt(4)];
+		int x = pos[0] + Direction.getDx(direction);
+		int y = pos[1] + Direction.getDy(direction);
+		if (!occupancy.isInside(x, y) || occupancy.hasPlayer(x, y)) {
+			return null;
+		}
+		GameDelta delta = new GameDelta();
+		delta.playerMoved(id, x, y);
+		if (occupancy.hasTreasure(x, y)) {
+			delta.treasureRemoved(x, y);
+			delta.scoreChanged(id, state.playerScores.getOrDefault(id, 0) + 1);
+			int cell = occupancy.randomFreeCell(random);
+			if (cell >= 0) {
+				delta.treasureSpawned(GameUtils.getX(cell, GRID_SIZE), GameUtils.getY(cell, GRID_SIZE));
+			}
+		}
+		return delta;
+	}
+
+	private static GameState newState(Random random) {
+		GameState state = new GameState();
+		state.isGameInitialized = true;
+		state.playerList = new ArrayList<>();
+		state.playerIds = new ArrayList<>();
+		state.playerPositions = new HashMap<>();
+		state.treasurePositions = new ArrayList<>();
+		state.playerScores = new HashMap<>();
+		state.startTime = "12:00:00";
+		OccupancyGrid occupancy = new OccupancyGrid(GRID_SIZE);
+		for (int i = 0; i < PLAYERS; i++) {
+			int cell = occupancy.randomFreeCell(random);
+			String id = String.format("p%04d", i);
+			state.playerPositions.put(id, new int[] {GameUtils.getX(cell, GRID_SIZE), GameUtils.getY(cell, GRID_SIZE)});
+			occupancy.placePlayer(id, GameUtils.getX(cell, GRID_SIZE), GameUtils.getY(cell, GRID_SIZE));
+		}
+		for (int i = 0; i < TREASURES; i++) {
+			int cell = occupancy.randomFreeCell(random);
+			state.treasurePositions.add(new int[] {GameUtils.getX(cell, GRID_SIZE), GameUtils.getY(cell, GRID_SIZE)});
+			occupancy.addTreasure(GameUtils.getX(cell, GRID_SIZE), GameUtils.getY(cell, GRID_SIZE));
+		}
+		return state;
+	}
+
+	private static boolean samePositions(Map<String, int[]> a, Map<String, int[]> b) {
+		if (a.size() != b.size()) {
+			return false;
+		}
+		for (Map.Entry<String, int[]> entry : a.entrySet()) {
+			if (!Arrays.equals(entry.getValue(), b.get(entry.getKey()))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void clear(Path dir) throws Exception {
+		if (!Files.isDirectory(dir)) {
+			return;
+		}
+		try (Stream<Path> files = Files.list(dir)) {
+			for (Path file : (Iterable<Path>) files::iterator) {
+				Files.delete(file);
+			}
+		}
+	}
+}
@@ -0,0 +1,178 @@
+package src;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import src.Player.GameState;
+
+// The reply a player gets from the primary on a crowded 2000x2000 maze: its area of interest
+// against every delta since its last reply. Between two replies of a player every other player
+// has moved once, as when everybody moves at the same pace, so each op also makes that many moves.
+// The average encoded size of a reply is printed at teardown
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class AreaOfInterestBenchmark {
+    private static final int GRID_SIZE = 2000;
+    private static final int RADIUS = 10;
+    // The players that ask for replies, the others only move
+    private static final int WATCHERS = 100;
+
+    @Param({"1000", "100000"})
+    public int players;
+
+    private OccupancyGrid occupancy;
+    private Map<String, int[]> positions;
+    private List<int[]> treasurePositions;
+    private Map<String, Integer> scores;
+    private DeltaHistory history;
+    private AreaOfInterest interest;
+    private String[] playerIds;
+    private long[] known;
+    private long version;
+    private int next;
+    private Random random;
+    private long replies;
+    private long replyBytes;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        random = new Random(42);
+        occupancy = new OccupancyGrid(GRID_SIZE, RADIUS);
+        positions = new HashMap<>();
+        treasurePositions = new ArrayList<>();
+        scores = new HashMap<>();
+        history = new DeltaHistory(players * 2);
+        interest = new AreaOfInterest(RADIUS);
+        playerIds = new String[players];
+        for (int i = 0; i < players; i++) {
+            playerIds[i] = BenchmarkStates.playerId(i);
+            int cell = occupancy.randomFreeCell(random);
+            int x = GameUtils.getX(cell, GRID_SIZE);
+            int y = GameUtils.getY(cell, GRID_SIZE);
+            occupancy.placePlayer(playerIds[i], x, y);
+            positions.put(playerIds[i], new int[] {x, y});
+            scores.put(playerIds[i], 0);
+        }
+        for (int i = 0; i < players / 10; i++) {
+            int cell = occupancy.randomFreeCell(random);
+            int x = GameUtils.getX(cell, GRID_SIZE);
+            int y = GameUtils.getY(cell, GRID_SIZE);
+            occupancy.addTreasure(x, y);
+            treasurePositions.add(new int[] {x, y});
+        }
+        history.reset(version);
+
+        // Every watcher starts from a fresh view
+        GameState state = new GameState();
+        state.playerPositions = positions;
+        state.treasurePositions = treasurePositions;
+        state.playerScores = scores;
+        state.version = version;
+        known = new long[WATCHERS];
+        for (int i = 0; i < WATCHERS; i++) {
+            interest.snapshot(playerIds[i], state, positions.get(playerIds[i]), occupancy);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.println();
+        System.out.println("players=" + players + ": " + (replies == 0 ? 0 : replyBytes / replies) + " bytes per reply");
+    }
+
+    // A random step of a random player, committed like the primary does
+    private void move() {
+        String id = playerIds[random.nextInt(players)];
+        int[] pos = positions.get(id);
+        char direction = BenchmarkStates.MOVES[random.nextInt(4)];
+        int x = pos[0] + Direction.getDx(direction);
+        int y = pos[1] + Direction.getDy(direction);
+        if (!occupancy.isInside(x, y) || occupancy.hasPlayer(x, y)) {
+            return;
+        }
+        GameDelta delta = new GameDelta();
+        delta.playerMoved(id, x, y);
+        if (occupancy.hasTreasure(x, y)) {
+            delta.treasureRemoved(x, y);
+            delta.scoreChanged(id, scores.get(id) + 1);
+        }
+        delta.setVersion(++version);
+        delta.applyTo(positions, treasurePositions, scores, occupancy);
+        history.append(delta);
+    }
+
+    private void count(List<GameDelta> deltas) {
+        CountingStream bytes = new CountingStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            for (GameDelta delta : deltas) {
+                delta.writeTo(out);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        replies++;
+        replyBytes += bytes.count;
+    }
+
+    @Benchmark
+    public GameDelta areaOfInterestReply() {
+        for (int i = 0; i < players / WATCHERS; i++) {
+            move();
+        }
+        int watcher = next++ % WATCHERS;
+        String id = playerIds[watcher];
+        GameDelta changes = interest.changes(id, known[watcher], version, positions.get(id), occupancy, scores);
+        known[watcher] = version;
+        count(List.of(changes));
+        return changes;
+    }
+
+    @Benchmark
+    public List<GameDelta> wholeStateReply() {
+        for (int i = 0; i < players / WATCHERS; i++) {
+            move();
+        }
+        int watcher = next++ % WATCHERS;
+        List<GameDelta> deltas = history.since(known[watcher]);
+        known[watcher] = version;
+        count(deltas);
+        return deltas;
+    }
+
+    private static class CountingStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
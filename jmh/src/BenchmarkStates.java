@@ -0,0 +1,94 @@
+package src;
+
+import java.lang.reflect.Proxy;
+import java.rmi.NoSuchObjectException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import src.Player.GameState;
+
+// Fixtures shared by the benchmarks: stand-in players and random game states
+class BenchmarkStates {
+    static final char[] MOVES = {Direction.LEFT, Direction.DOWN, Direction.RIGHT, Direction.UP};
+
+    // At most half of the maze is taken by players, so moves are still mostly possible
+    static int playerCount(int gridSize, int treasures, int players) {
+        return Math.max(1, Math.min(players, gridSize * gridSize / 2 - treasures));
+    }
+
+    static String playerId(int i) {
+        return String.format("b%04d", i);
+    }
+
+    // A player that only knows its id, enough for the primary and the election
+    static Player stub(String playerId) {
+        return (Player) Proxy.newProxyInstance(Player.class.getClassLoader(), new Class<?>[] {Player.class},
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getPlayerId":
+                    case "toString":
+                        return playerId;
+                    case "ping":
+                        return "pong";
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    default:
+                        return null;
+                }
+            });
+    }
+
+    // Real RMI stubs, so a serialized player list costs what it costs in the game
+    static ArrayList<Player> exportStubs(List<Player> players) throws Exception {
+        ArrayList<Player> stubs = new ArrayList<>();
+        for (Player player : players) {
+            stubs.add((Player) UnicastRemoteObject.exportObject(player, 0));
+        }
+        return stubs;
+    }
+
+    static void unexport(List<Player> players) {
+        for (Player player : players) {
+            try {
+                UnicastRemoteObject.unexportObject(player, true);
+            } catch (NoSuchObjectException e) {
+                // Not exported
+            }
+        }
+    }
+
+    // Players and treasures on distinct random cells, on top of the given positions
+    static GameState randomGameState(int gridSize, int treasures, ArrayList<Player> playerList, List<String> playerIds,
+                                     Map<String, int[]> initialPositions, long seed) {
+        Random random = new Random(seed);
+        OccupancyGrid occupancy = new OccupancyGrid(gridSize);
+        Map<String, int[]> positions = new HashMap<>(initialPositions);
+        Map<String, Integer> scores = new HashMap<>();
+        List<int[]> treasurePositions = new CopyOnWriteArrayList<>();
+        for (Map.Entry<String, int[]> entry : initialPositions.entrySet()) {
+            occupancy.placePlayer(entry.getKey(), entry.getValue()[0], entry.getValue()[1]);
+        }
+        for (String playerId : playerIds) {
+            int cell = occupancy.randomFreeCell(random);
+            int x = GameUtils.getX(cell, gridSize);
+            int y = GameUtils.getY(cell, gridSize);
+            occupancy.placePlayer(playerId, x, y);
+            positions.put(playerId, new int[] {x, y});
+            scores.put(playerId, random.nextInt(10));
+        }
+        for (int i = 0; i < treasures; i++) {
+            int cell = occupancy.randomFreeCell(random);
+            int x = GameUtils.getX(cell, gridSize);
+            int y = GameUtils.getY(cell, gridSize);
+            occupancy.addTreasure(x, y);
+            treasurePositions.add(new int[] {x, y});
+        }
+        return new GameState(true, playerList, new ArrayList<>(playerIds), positions, treasurePositions, scores, "12:00:00", 1);
+    }
+}
@@ -0,0 +1,61 @@
+package src;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import src.Game.ServerRole;
+
+// The local work of an election: deciding the roles from the probes, and a player taking
+// the result into its member directory. The RMI round trips are in ElectionBenchmark.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ElectionBookkeepingBenchmark {
+    @Param({"10", "100", "1000"})
+    public int players;
+
+    private List<Player> playerList;
+    private List<Election.Probe> probes;
+    private Election.Result result;
+    private MemberDirectory members;
+
+    @Setup
+    public void setUp() {
+        playerList = new ArrayList<>();
+        probes = new ArrayList<>();
+        // Probes arrive in join order, not in id order
+        for (int i = players - 1; i >= 0; i--) {
+            String playerId = BenchmarkStates.playerId(i);
+            ServerRole role = i == players - 2 ? ServerRole.PRIMARY : i == players - 3 ? ServerRole.BACKUP : ServerRole.PLAYER;
+            playerList.add(BenchmarkStates.stub(playerId));
+            probes.add(new Election.Probe(playerId, role, 7));
+        }
+        result = Election.decide(playerList, probes);
+        members = new MemberDirectory();
+    }
+
+    @Benchmark
+    public Election.Result decide() {
+        return Election.decide(playerList, probes);
+    }
+
+    @Benchmark
+    public MemberDirectory applyResult() {
+        members.replaceAll(result.playerIds, result.players);
+        return members;
+    }
+}
@@ -0,0 +1,141 @@
+package src;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import src.Player.GameState;
+
+// Taking a snapshot of the full game state, handing it out and the serialization RMI does to ship it.
+// The *Legacy benchmarks ship the same state the way GameState used to be serialized:
+// default serialization of the collections, boxed scores and the stubs of all the players.
+// The encoded sizes are printed at setup
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class GameStateBenchmark {
+    @Param({"15", "100"})
+    public int gridSize;
+
+    @Param({"10", "100"})
+    public int treasures;
+
+    @Param({"10", "1000"})
+    public int players;
+
+    private ArrayList<Player> playerList;
+    private GameState state;
+    private StateSnapshot stateSnapshot;
+    private LegacyGameState legacyState;
+    private byte[] serialized;
+    private byte[] serializedLegacy;
+
+    // GameState as it was before its compact encoding
+    static class LegacyGameState implements Serializable {
+        boolean isGameInitialized;
+        ArrayList<Player> playerList;
+        Map<String, int[]> playerPositions;
+        List<int[]> treasurePositions;
+        Map<String, Integer> playerScores;
+        String startTime;
+        long version;
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        int count = BenchmarkStates.playerCount(gridSize, treasures, players);
+        List<String> ids = new ArrayList<>();
+        List<Player> stubs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ids.add(BenchmarkStates.playerId(i));
+            stubs.add(BenchmarkStates.stub(ids.get(i)));
+        }
+        playerList = BenchmarkStates.exportStubs(stubs);
+        state = BenchmarkStates.randomGameState(gridSize, treasures, playerList, ids, new HashMap<>(), 42);
+        legacyState = new LegacyGameState();
+        legacyState.isGameInitialized = state.isGameInitialized;
+        legacyState.playerList = state.playerList;
+        legacyState.playerPositions = state.playerPositions;
+        legacyState.treasurePositions = state.treasurePositions;
+        legacyState.playerScores = state.playerScores;
+        legacyState.startTime = state.startTime;
+        legacyState.version = state.version;
+        stateSnapshot = takeSnapshot();
+        serialized = serialize();
+        serializedLegacy = serializeLegacy();
+        System.out.println();
+        System.out.println("GameState: " + serialized.length + " bytes, legacy: " + serializedLegacy.length + " bytes");
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkStates.unexport(playerList);
+    }
+
+    // What the primary pays, under the state lock, for the first read of a new version
+    @Benchmark
+    public StateSnapshot takeSnapshot() {
+        return StateSnapshot.of(state);
+    }
+
+    // What every getGameState pays, without the lock, once the version's snapshot is taken
+    @Benchmark
+    public GameState snapshotToGameState() {
+        return stateSnapshot.toGameState();
+    }
+
+    @Benchmark
+    public byte[] serialize() throws Exception {
+        return write(state);
+    }
+
+    @Benchmark
+    public Object deserialize() throws Exception {
+        return read(serialized);
+    }
+
+    @Benchmark
+    public byte[] serializeLegacy() throws Exception {
+        return write(legacyState);
+    }
+
+    @Benchmark
+    public Object deserializeLegacy() throws Exception {
+        return read(serializedLegacy);
+    }
+
+    private static byte[] write(Object object) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object read(byte[] bytes) throws Exception {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package src;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Moves of many concurrent players against one maze, as the primary's RMI threads deliver them:
+// every move taking the state lock and committing a delta of its own, against the MoveSequencer
+// applying whatever has queued up as one batch. The move itself is the primary's bookkeeping
+// (occupancy check, position update, delta) without treasures, so the cost is that of sequencing.
+// Run with more threads than the default with -Pjmh="MoveSequencer -t 8"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+public class MoveSequencerBenchmark {
+    private static final int GRID_SIZE = 1000;
+    private static final int PLAYERS = 1024;
+
+    private final Object stateLock = new Object();
+    private OccupancyGrid occupancy;
+    private Map<String, int[]> positions;
+    private DeltaHistory history;
+    private long version;
+    private MoveSequencer sequencer;
+    private final AtomicInteger nextMover = new AtomicInteger();
+
+    // The player a benchmark thread moves around
+    @State(Scope.Thread)
+    public static class Mover {
+        String id;
+        Random random;
+
+        @Setup
+        public void setUp(MoveSequencerBenchmark benchmark) {
+            int i = benchmark.nextMover.getAndIncrement() % PLAYERS;
+            id = BenchmarkStates.playerId(i);
+            random = new Random(i);
+        }
+
+        char direction() {
+            return BenchmarkStates.MOVES[random.nextInt(4)];
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        occupancy = new OccupancyGrid(GRID_SIZE, 0);
+        positions = new HashMap<>();
+        history = new DeltaHistory(DeltaHistory.DEFAULT_CAPACITY);
+        for (int i = 0; i < PLAYERS; i++) {
+            String id = BenchmarkStates.playerId(i);
+            int cell = occupancy.randomFreeCell(random);
+            int x = GameUtils.getX(cell, GRID_SIZE);
+            int y = GameUtils.getY(cell, GRID_SIZE);
+            occupancy.placePlayer(id, x, y);
+            positions.put(id, new int[] {x, y});
+        }
+        sequencer = new MoveSequencer(stateLock, new MoveSequencer.Writer() {
+            @Override
+            public void apply(String playerId, int x, int y, char[] directions, GameDelta delta) {
+                step(playerId, directions[0], delta);
+            }
+
+            @Override
+            public GameDelta commit(GameDelta delta) {
+                return MoveSequencerBenchmark.this.commit(delta);
+            }
+        });
+    }
+
+    // With stateLock held
+    private void step(String playerId, char direction, GameDelta delta) {
+        int[] pos = positions.get(playerId);
+        int x = pos[0] + Direction.getDx(direction);
+        int y = pos[1] + Direction.getDy(direction);
+        if (!occupancy.isInside(x, y) || occupancy.hasPlayer(x, y)) {
+            return;
+        }
+        int[] oldPos = positions.put(playerId, new int[] {x, y});
+        occupancy.movePlayer(playerId, oldPos, x, y);
+        delta.playerMoved(playerId, x, y);
+    }
+
+    // With stateLock held
+    private GameDelta commit(GameDelta delta) {
+        if (delta.isEmpty()) {
+            return null;
+        }
+        delta.setVersion(++version);
+        history.append(delta);
+        return delta;
+    }
+
+    @Benchmark
+    public GameDelta lockPerMove(Mover mover) {
+        char direction = mover.direction();
+        synchronized (stateLock) {
+            GameDelta delta = new GameDelta();
+            step(mover.id, direction, delta);
+            return commit(delta);
+        }
+    }
+
+    @Benchmark
+    public GameDelta sequenced(Mover mover) {
+        return sequencer.moves(mover.id, new char[] {mover.direction()});
+    }
+}
@@ -0,0 +1,87 @@
+package src;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// The cell index behind move validation and treasure respawn, without the rest of the primary
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class OccupancyBenchmark {
+    @Param({"15", "100", "1000"})
+    public int gridSize;
+
+    @Param({"10", "100"})
+    public int treasures;
+
+    @Param({"10", "1000"})
+    public int players;
+
+    private OccupancyGrid occupancy;
+    private String[] playerIds;
+    private int[][] positions;
+    private int[] treasureCells;
+    private Random random;
+
+    @Setup
+    public void setUp() {
+        random = new Random(42);
+        occupancy = new OccupancyGrid(gridSize);
+        int count = BenchmarkStates.playerCount(gridSize, treasures, players);
+        playerIds = new String[count];
+        positions = new int[count][];
+        for (int i = 0; i < count; i++) {
+            int cell = occupancy.randomFreeCell(random);
+            playerIds[i] = BenchmarkStates.playerId(i);
+            positions[i] = new int[] {GameUtils.getX(cell, gridSize), GameUtils.getY(cell, gridSize)};
+            occupancy.placePlayer(playerIds[i], positions[i][0], positions[i][1]);
+        }
+        treasureCells = new int[treasures];
+        for (int i = 0; i < treasures; i++) {
+            treasureCells[i] = occupancy.randomFreeCell(random);
+            occupancy.addTreasure(GameUtils.getX(treasureCells[i], gridSize), GameUtils.getY(treasureCells[i], gridSize));
+        }
+    }
+
+    // Check one random step of a random player and make it if the cell is free, like the primary does
+    @Benchmark
+    public boolean validateMove() {
+        int i = random.nextInt(playerIds.length);
+        int[] pos = positions[i];
+        char direction = BenchmarkStates.MOVES[random.nextInt(4)];
+        int x = pos[0] + Direction.getDx(direction);
+        int y = pos[1] + Direction.getDy(direction);
+        if (!occupancy.isInside(x, y) || occupancy.hasPlayer(x, y)) {
+            return false;
+        }
+        occupancy.movePlayer(playerIds[i], pos, x, y);
+        positions[i] = new int[] {x, y};
+        return true;
+    }
+
+    // Take a treasure away and put a new one on a random free cell
+    @Benchmark
+    public int pickupAndRespawn() {
+        int i = random.nextInt(treasureCells.length);
+        int cell = treasureCells[i];
+        occupancy.removeTreasure(GameUtils.getX(cell, gridSize), GameUtils.getY(cell, gridSize));
+        int newCell = occupancy.randomFreeCell(random);
+        occupancy.addTreasure(GameUtils.getX(newCell, gridSize), GameUtils.getY(newCell, gridSize));
+        treasureCells[i] = newCell;
+        return newCell;
+    }
+}
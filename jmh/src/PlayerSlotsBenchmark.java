@@ -0,0 +1,137 @@
+package src;
+
+import java.lang.ref.Reference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// The positions and scores of the players as the primary used to keep them, an int[2] per player
+// in a HashMap and boxed scores, against PlayerSlots. A move writes the new position and, now and
+// then, a score. Run with -prof gc for the allocation per move. The heap each layout takes per
+// player is printed once at setup, as the used heap after a GC with many copies of it alive.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PlayerSlotsBenchmark {
+    @Param({"10000"})
+    public int players;
+
+    private String[] ids;
+    private Map<String, int[]> mapPositions;
+    private Map<String, Integer> mapScores;
+    private PlayerSlots slots;
+    private Random random;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        random = new Random(42);
+        ids = new String[players];
+        for (int i = 0; i < players; i++) {
+            ids[i] = BenchmarkStates.playerId(i);
+        }
+        mapPositions = new HashMap<>();
+        mapScores = new HashMap<>();
+        fillMaps(mapPositions, mapScores);
+        slots = new PlayerSlots();
+        fillSlots(slots);
+
+        long maps = heapPerPlayer(copies -> {
+            Object[] held = new Object[copies];
+            for (int i = 0; i < copies; i++) {
+                Map<String, int[]> positions = new HashMap<>();
+                Map<String, Integer> scores = new HashMap<>();
+                fillMaps(positions, scores);
+                held[i] = new Object[] {positions, scores};
+            }
+            return held;
+        });
+        long slotted = heapPerPlayer(copies -> {
+            PlayerSlots[] held = new PlayerSlots[copies];
+            for (int i = 0; i < copies; i++) {
+                held[i] = new PlayerSlots();
+                fillSlots(held[i]);
+            }
+            return held;
+        });
+        System.out.println();
+        System.out.println("Heap per player with " + players + " players: maps " + maps + " B, slots " + slotted + " B");
+    }
+
+    private void fillMaps(Map<String, int[]> positions, Map<String, Integer> scores) {
+        for (int i = 0; i < players; i++) {
+            positions.put(ids[i], new int[] {i % 1000, i / 1000});
+            // Scores past the Integer cache, as they are once a game has gone on a while
+            scores.put(ids[i], 1000 + i);
+        }
+    }
+
+    private void fillSlots(PlayerSlots target) {
+        for (int i = 0; i < players; i++) {
+            int slot = target.intern(ids[i]);
+            target.setPosition(slot, i % 1000, i / 1000);
+            target.setScore(slot, 1000 + i);
+        }
+    }
+
+    // Bytes of used heap per player that the built copies of a layout keep alive.
+    // The ids are shared by all of them, so only the layout itself is counted
+    private long heapPerPlayer(IntFunction<Object> build) {
+        int copies = 20;
+        long before = usedHeapAfterGc();
+        Object held = build.apply(copies);
+        long after = usedHeapAfterGc();
+        Reference.reachabilityFence(held);
+        return (after - before) / ((long) copies * players);
+    }
+
+    private static long usedHeapAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Benchmark
+    public int moveMaps() {
+        String id = ids[random.nextInt(players)];
+        int[] pos = mapPositions.get(id);
+        mapPositions.put(id, new int[] {pos[1], pos[0]});
+        if ((pos[0] & 7) == 0) {
+            int score = mapScores.getOrDefault(id, 0) + 1;
+            mapScores.put(id, score);
+            return score;
+        }
+        return pos[0];
+    }
+
+    @Benchmark
+    public int moveSlots() {
+        int slot = slots.intern(ids[random.nextInt(players)]);
+        int x = slots.getX(slot);
+        slots.setPosition(slot, slots.getY(slot), x);
+        if ((x & 7) == 0) {
+            int score = slots.getScore(slot) + 1;
+            slots.setScore(slot, score);
+            return score;
+        }
+        return x;
+    }
+}
@@ -0,0 +1,146 @@
+package src;
+
+import com.sun.management.ThreadMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import src.Player.StateUpdate;
+
+// A move as the primary handles it: validation, treasure pickup and respawn, commit and the
+// state update sent back to the mover. The primary is a real headless Game with no backup,
+// called directly rather than over RMI.
+// After every iteration it also prints the bytes allocated per move, read from the JVM's
+// per-thread allocation counter. In the steady state that is the committed delta, which the
+// history keeps for lagging players: keep it there.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PrimaryMoveBenchmark {
+    @Param({"15", "100"})
+    public int gridSize;
+
+    @Param({"10", "100"})
+    public int treasures;
+
+    @Param({"10", "1000"})
+    public int players;
+
+    private Tracker tracker;
+    private Game primary;
+    private Player[] movers;
+    private String[] moverIds;
+    private Map<String, int[]> positions;
+    private Random random;
+    private long version;
+
+    @Setup
+    public void setUp() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        tracker = new Tracker();
+        tracker.setPortNumber(port);
+        tracker.setN(gridSize);
+        tracker.setK(treasures);
+        tracker.regTracker();
+        primary = new Game("127.0.0.1", port, "zzzz", new HeadlessGameView());
+        primary.setExitOnLeave(false);
+
+        int count = BenchmarkStates.playerCount(gridSize, treasures, players);
+        movers = new Player[count];
+        moverIds = new String[count];
+        List<String> ids = new ArrayList<>();
+        ArrayList<Player> playerList = new ArrayList<>();
+        playerList.add(primary);
+        for (int i = 0; i < count; i++) {
+            moverIds[i] = BenchmarkStates.playerId(i);
+            movers[i] = BenchmarkStates.stub(moverIds[i]);
+            ids.add(moverIds[i]);
+            playerList.add(movers[i]);
+        }
+        Map<String, int[]> own = primary.getGameState(primary).playerPositions;
+        primary.updateGameState(BenchmarkStates.randomGameState(gridSize, treasures, playerList, ids, own, 42));
+        // Our own copy, kept up to date from the state updates the moves get back
+        positions = primary.getGameState(primary).playerPositions;
+        random = new Random(42);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        UnicastRemoteObject.unexportObject(primary, true);
+        UnicastRemoteObject.unexportObject(tracker, true);
+    }
+
+    // Bytes allocated by the benchmark thread over an iteration, divided by the moves it made
+    @State(Scope.Thread)
+    public static class Allocation {
+        private static final ThreadMXBean THREADS = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        long moves;
+        private long start;
+
+        @Setup(Level.Iteration)
+        public void start() {
+            moves = 0;
+            start = THREADS.getCurrentThreadAllocatedBytes();
+        }
+
+        @TearDown(Level.Iteration)
+        public void report() {
+            long bytes = THREADS.getCurrentThreadAllocatedBytes() - start;
+            System.out.printf("%nallocated: %.1f B/move%n", (double) bytes / Math.max(1, moves));
+        }
+    }
+
+    @Benchmark
+    public StateUpdate move(Allocation allocation) throws Exception {
+        allocation.moves++;
+        int i = random.nextInt(movers.length);
+        int[] pos = positions.get(moverIds[i]);
+        char direction = BenchmarkStates.MOVES[random.nextInt(4)];
+        StateUpdate update = primary.updateGamebyNewMove(movers[i], pos[0] + Direction.getDx(direction),
+                                                         pos[1] + Direction.getDy(direction), version);
+        version = update.version;
+        follow(update);
+        return update;
+    }
+
+    private void follow(StateUpdate update) {
+        if (update.deltas == null) {
+            positions = update.snapshot.playerPositions;
+            return;
+        }
+        for (GameDelta delta : update.deltas) {
+            for (int e = 0; e < delta.size(); e++) {
+                int[] pos = delta.getType(e) == GameDelta.PLAYER_MOVED ? positions.get(delta.getPlayerId(e)) : null;
+                // In place, so following the moves allocates nothing of its own
+                if (pos != null) {
+                    pos[0] = delta.getX(e);
+                    pos[1] = delta.getY(e);
+                }
+            }
+        }
+    }
+}
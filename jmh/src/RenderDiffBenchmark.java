@@ -0,0 +1,88 @@
+package src;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// What renderGUI computes before it touches Swing: the cells changed by the last moves
+// and what each of them now shows
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RenderDiffBenchmark {
+    @Param({"15", "100", "1000"})
+    public int gridSize;
+
+    @Param({"10", "1000"})
+    public int players;
+
+    // Moves between two frames
+    @Param({"1", "10"})
+    public int movesPerFrame;
+
+    private OccupancyGrid occupancy;
+    private String[] playerIds;
+    private int[][] positions;
+    private Random random;
+
+    @Setup
+    public void setUp() {
+        random = new Random(42);
+        occupancy = new OccupancyGrid(gridSize);
+        int count = BenchmarkStates.playerCount(gridSize, 10, players);
+        playerIds = new String[count];
+        positions = new int[count][];
+        for (int i = 0; i < count; i++) {
+            int cell = occupancy.randomFreeCell(random);
+            playerIds[i] = BenchmarkStates.playerId(i);
+            positions[i] = new int[] {GameUtils.getX(cell, gridSize), GameUtils.getY(cell, gridSize)};
+            occupancy.placePlayer(playerIds[i], positions[i][0], positions[i][1]);
+        }
+        for (int i = 0; i < 10; i++) {
+            int cell = occupancy.randomFreeCell(random);
+            occupancy.addTreasure(GameUtils.getX(cell, gridSize), GameUtils.getY(cell, gridSize));
+        }
+        // The first frame draws everything
+        occupancy.takeDirtyCells();
+    }
+
+    @Benchmark
+    public int frame() {
+        for (int m = 0; m < movesPerFrame; m++) {
+            int i = random.nextInt(playerIds.length);
+            int[] pos = positions[i];
+            char direction = BenchmarkStates.MOVES[random.nextInt(4)];
+            int x = pos[0] + Direction.getDx(direction);
+            int y = pos[1] + Direction.getDy(direction);
+            if (occupancy.isInside(x, y) && !occupancy.hasPlayer(x, y)) {
+                occupancy.movePlayer(playerIds[i], pos, x, y);
+                positions[i] = new int[] {x, y};
+            }
+        }
+
+        // Same as renderGUI
+        int[] cells = occupancy.takeDirtyCells();
+        int[] statuses = new int[cells.length];
+        String[] occupants = new String[cells.length];
+        for (int i = 0; i < cells.length; i++) {
+            int x = GameUtils.getX(cells[i], gridSize);
+            int y = GameUtils.getY(cells[i], gridSize);
+            statuses[i] = occupancy.getBlockStatus(x, y);
+            occupants[i] = occupancy.getPlayerAt(x, y);
+        }
+        return cells.length;
+    }
+}
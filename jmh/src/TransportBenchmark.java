@@ -0,0 +1,101 @@
+package src;
+
+import java.net.ServerSocket;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import src.Player.StateUpdate;
+
+// Player calls over loopback, RMI against the NIO transport. Two headless players join a Tracker
+// in this JVM; the second one calls the first, the primary, through the reference it got from
+// the election, as it would across JVMs. A move is replicated to the backup, the caller itself.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TransportBenchmark {
+    @Param({"rmi", "nio"})
+    public String transport;
+
+    private Tracker tracker;
+    private Game primary;
+    private Game mover;
+    private Player primaryReference;
+    private int x;
+    private int y;
+    private int dx;
+    private long version;
+
+    @Setup
+    public void setUp() throws Exception {
+        // Before any player is exported, the transport is chosen once per JVM
+        System.setProperty("game.transport", transport);
+        System.setProperty("game.nio.host", "127.0.0.1");
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        tracker = new Tracker();
+        tracker.setPortNumber(port);
+        tracker.setN(15);
+        tracker.setK(10);
+        tracker.regTracker();
+        // The highest id is the primary
+        primary = new Game("127.0.0.1", port, "zz", new HeadlessGameView());
+        primary.setExitOnLeave(false);
+        mover = new Game("127.0.0.1", port, "aa", new HeadlessGameView());
+        mover.setExitOnLeave(false);
+        primaryReference = mover.getPrimaryServer();
+
+        int[] pos = primary.getGameState(primary).playerPositions.get("aa");
+        x = pos[0];
+        y = pos[1];
+        dx = x == 14 ? -1 : 1;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        mover.leave();
+        primary.leave();
+        UnicastRemoteObject.unexportObject(tracker, true);
+    }
+
+    @Benchmark
+    public String ping() throws Exception {
+        return primaryReference.ping();
+    }
+
+    // Back and forth between two cells
+    @Benchmark
+    public StateUpdate move() throws Exception {
+        StateUpdate update = primaryReference.updateGamebyNewMove(mover, x + dx, y, version);
+        x += dx;
+        dx = -dx;
+        version = update.version;
+        return update;
+    }
+
+    // Many callers sharing the connection(s) to the primary
+    @Benchmark
+    @Threads(8)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public String pingConcurrent() throws Exception {
+        return primaryReference.ping();
+    }
+}
@@ -0,0 +1,136 @@
+package src;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import src.Player.GameState;
+
+// What each player is shown of a large maze when -Dgame.aoi.radius is set: the players, with
+// their scores, and the treasures at most that many cells away from it along both axes.
+// The primary remembers what it last sent each player and replies with the events that bring
+// that up to date: entering the view is a PLAYER_MOVED or TREASURE_SPAWNED, leaving it a
+// PLAYER_LEFT_VIEW or TREASURE_REMOVED. The view is looked up in the spatial index of the
+// OccupancyGrid, so a reply doesn't grow with the number of players in the maze.
+// Must be used with the primary's stateLock held.
+public class AreaOfInterest {
+    // 0 sends every player the whole maze
+    public static final int RADIUS = Integer.getInteger("game.aoi.radius", 0);
+
+    private final int radius;
+    // Player id -> what it was last sent
+    private final Map<String, View> views = new HashMap<>();
+
+    private static class View {
+        // The state version the player was brought to
+        long version;
+        // Player id -> cell, for the players in view
+        Map<String, Integer> players = new HashMap<>();
+        // Player id -> score, for the players in view
+        Map<String, Integer> scores = new HashMap<>();
+        // The cells of the treasures in view
+        Set<Integer> treasures = new HashSet<>();
+    }
+
+    public AreaOfInterest(int radius) {
+        this.radius = radius;
+    }
+
+    public int getRadius() {
+        return radius;
+    }
+
+    // The events that bring what the player was last sent up to the current state, stamped with
+    // the current version. Null if it has to be sent a fresh view (see snapshot) instead:
+    // it is new here or doesn't know the version it was last sent
+    public GameDelta changes(String playerId, long knownVersion, long version, int[] position,
+                             OccupancyGrid occupancy, Map<String, Integer> playerScores) {
+        View view = views.get(playerId);
+        if (view == null || view.version != knownVersion) {
+            return null;
+        }
+        GameDelta delta = new GameDelta();
+        int gridSize = occupancy.getGridSize();
+        Map<String, Integer> players = new HashMap<>();
+        Map<String, Integer> scores = new HashMap<>();
+        Set<Integer> treasures = new HashSet<>();
+        if (position != null) {
+            occupancy.forEachPlayerNear(position[0], position[1], radius, (id, x, y) -> {
+                int cell = GameUtils.getIdx(x, y, gridSize);
+                players.put(id, cell);
+                Integer sent = view.players.get(id);
+                if (sent == null || sent != cell) {
+                    delta.playerMoved(id, x, y);
+                }
+                Integer score = playerScores.get(id);
+                if (score != null) {
+                    scores.put(id, score);
+                    if (!score.equals(view.scores.get(id))) {
+                        delta.scoreChanged(id, score);
+                    }
+                }
+            });
+            occupancy.forEachTreasureNear(position[0], position[1], radius, cell -> {
+                treasures.add(cell);
+                if (!view.treasures.contains(cell)) {
+                    delta.treasureSpawned(GameUtils.getX(cell, gridSize), GameUtils.getY(cell, gridSize));
+                }
+            });
+        }
+        for (String id : view.players.keySet()) {
+            if (!players.containsKey(id)) {
+                delta.playerLeftView(id);
+            }
+        }
+        for (int cell : view.treasures) {
+            if (!treasures.contains(cell)) {
+                delta.treasureRemoved(GameUtils.getX(cell, gridSize), GameUtils.getY(cell, gridSize));
+            }
+        }
+
+        view.version = version;
+        view.players = players;
+        view.scores = scores;
+        view.treasures = treasures;
+        delta.setVersion(version);
+        return delta;
+    }
+
+    // The full game state cut down to the player's view, remembered as what it was last sent.
+    // The player list is kept whole
+    public GameState snapshot(String playerId, GameState state, int[] position, OccupancyGrid occupancy) {
+        View view = new View();
+        view.version = state.version;
+        Map<String, int[]> playerPositions = new HashMap<>();
+        List<int[]> treasurePositions = new ArrayList<>();
+        if (position != null) {
+            int gridSize = occupancy.getGridSize();
+            occupancy.forEachPlayerNear(position[0], position[1], radius, (id, x, y) -> {
+                view.players.put(id, GameUtils.getIdx(x, y, gridSize));
+                playerPositions.put(id, new int[] {x, y});
+                Integer score = state.playerScores.get(id);
+                if (score != null) {
+                    view.scores.put(id, score);
+                }
+            });
+            occupancy.forEachTreasureNear(position[0], position[1], radius, cell -> {
+                view.treasures.add(cell);
+                treasurePositions.add(new int[] {GameUtils.getX(cell, gridSize), GameUtils.getY(cell, gridSize)});
+            });
+        }
+        views.put(playerId, view);
+        return new GameState(state.isGameInitialized, state.playerList, state.playerIds, playerPositions,
+                             treasurePositions, new HashMap<>(view.scores), state.startTime, state.version);
+    }
+
+    // The player left the game
+    public void forget(String playerId) {
+        views.remove(playerId);
+    }
+
+    public int getViewCount() {
+        return views.size();
+    }
+}
@@ -0,0 +1,84 @@
+package src;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Ring buffer of the most recently committed deltas.
+// A node that is only a few versions behind gets the missing deltas from here,
+// anyone further behind gets a full snapshot instead.
+public class DeltaHistory {
+    public static final int DEFAULT_CAPACITY = Integer.getInteger("game.deltaHistory", 1024);
+
+    private final GameDelta[] ring;
+    // Index of the oldest delta in the ring
+    private int start;
+    private int size;
+    // The version of the state after the newest delta
+    private long latestVersion;
+
+    public DeltaHistory(int capacity) {
+        ring = new GameDelta[capacity];
+    }
+
+    // State versions are <term> << 32 | <sequence>. A node that takes over as primary
+    // moves to the next term, so every version it commits is newer than anything
+    // a player may have seen from the previous primary.
+    public static long nextTerm(long version) {
+        return ((version >>> 32) + 1) << 32;
+    }
+
+    public long getLatestVersion() {
+        return latestVersion;
+    }
+
+    public void append(GameDelta delta) {
+        if (size == ring.length) {
+            ring[start] = null;
+            start = (start + 1) % ring.length;
+            size--;
+        }
+        ring[(start + size) % ring.length] = delta;
+        size++;
+        latestVersion = delta.getVersion();
+    }
+
+    // Forget every delta, e.g. after the state was replaced by a snapshot
+    public void reset(long version) {
+        for (int i = 0; i < ring.length; i++) {
+            ring[i] = null;
+        }
+        start = 0;
+        size = 0;
+        latestVersion = version;
+    }
+
+    // The deltas that bring a node from the given version to the latest one,
+    // or null if they are no longer (or never were) in the history
+    public List<GameDelta> since(long version) {
+        List<GameDelta> deltas = new ArrayList<>();
+        return since(version, deltas) ? deltas : null;
+    }
+
+    // Same, into the given list, which is cleared first. False if they aren't in the history
+    public boolean since(long version, List<GameDelta> deltas) {
+        deltas.clear();
+        if (version == latestVersion) {
+            return true;
+        }
+        if (version > latestVersion || size == 0) {
+            return false;
+        }
+        long oldestBase = ring[start].getVersion() - 1;
+        if (version < oldestBase) {
+            return false;
+        }
+        int skip = (int) (version - oldestBase);
+        if (skip > size) {
+            return false;
+        }
+        for (int i = skip; i < size; i++) {
+            deltas.add(ring[(start + i) % ring.length]);
+        }
+        return true;
+    }
+}
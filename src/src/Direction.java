@@ -6,4 +6,17 @@ public class Direction {
     public static final char LEFT = '1';
     public static final char RIGHT = '3';
 
+    public static boolean isMove(char direction) {
+        return direction == UP || direction == DOWN || direction == LEFT || direction == RIGHT;
+    }
+
+    // Change of x when moving in the direction
+    public static int getDx(char direction) {
+        return direction == LEFT ? -1 : direction == RIGHT ? 1 : 0;
+    }
+
+    // Change of y when moving in the direction
+    public static int getDy(char direction) {
+        return direction == UP ? -1 : direction == DOWN ? 1 : 0;
+    }
 }
@@ -0,0 +1,275 @@
+package src;
+
+import java.io.Serializable;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import src.Game.ServerRole;
+
+// Single-round election of the primary and backup servers.
+// The initiator probes every player once, decides the roles from the live ones itself
+// and sends the result to every player once, i.e. 2N messages instead of every player
+// broadcasting its id to every other player and asking everyone for its role (N^2).
+// Results carry an epoch so a player never goes back to an older election's roles.
+// Elections started at the same time by different players end up with the same epoch, so the
+// results are ordered by (epoch, initiator id) and every player settles on the same one.
+// Each probe has a deadline (-Dgame.election.probeTimeoutMs), a hung player is left out.
+//
+// Select with -Dgame.election=single (default) or -Dgame.election=broadcast for the old scheme.
+//
+// When the maze is split into regions (see RegionMap), the players are paired off from the
+// highest id down: the first pair is the primary and backup of region 0 as before, the next
+// pair those of region 1, and so on. Once the players run out, the pairs are reused.
+// Only the single-round election assigns regions.
+public class Election {
+    private static final long PROBE_TIMEOUT_MILLIS = Long.getLong("game.election.probeTimeoutMs", 1000L);
+    // Runs the probes of an election in parallel, shared by every player of the JVM
+    private static final ExecutorService PROBES = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "election-probe");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public enum Mode {
+        SINGLE_ROUND,
+        BROADCAST
+    }
+
+    public static Mode getMode() {
+        return "broadcast".equalsIgnoreCase(System.getProperty("game.election")) ? Mode.BROADCAST : Mode.SINGLE_ROUND;
+    }
+
+    // What a player reports about itself when probed
+    public static class Probe implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        public final String playerId;
+        public final ServerRole role;
+        // The epoch of the last election result the player applied
+        public final long epoch;
+        // The regions the player holds the state of, as their primary or backup
+        public final int[] regions;
+
+        public Probe(String playerId, ServerRole role, long epoch) {
+            this(playerId, role, epoch, new int[0]);
+        }
+
+        public Probe(String playerId, ServerRole role, long epoch, int[] regions) {
+            this.playerId = playerId;
+            this.role = role;
+            this.epoch = epoch;
+            this.regions = regions;
+        }
+
+        boolean holds(int region) {
+            for (int held : regions) {
+                if (held == region) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    public static class Result implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        public final long epoch;
+        // The player that ran the election, breaks the tie between results of the same epoch
+        public final String initiatorId;
+        // The live players, ordered by id
+        public final ArrayList<String> playerIds;
+        public final ArrayList<Player> players;
+        public final String primaryId;
+        // null if there is only one player
+        public final String backupId;
+        // Where the new primary gets the game state from: the old primary, or the old backup
+        // if the primary is gone. null if there was no server before
+        public final String stateSourceId;
+        // Per region: its primary, its backup (null if there is none) and where its new primary
+        // gets the region's state from (null if nobody held it). Region 0 is primaryId's
+        public final ArrayList<String> regionPrimaryIds;
+        public final ArrayList<String> regionBackupIds;
+        public final ArrayList<String> regionStateSourceIds;
+
+        Result(long epoch, String initiatorId, ArrayList<String> playerIds, ArrayList<Player> players,
+               String primaryId, String backupId, String stateSourceId,
+               ArrayList<String> regionPrimaryIds, ArrayList<String> regionBackupIds,
+               ArrayList<String> regionStateSourceIds) {
+            this.epoch = epoch;
+            this.initiatorId = initiatorId;
+            this.playerIds = playerIds;
+            this.players = players;
+            this.primaryId = primaryId;
+            this.backupId = backupId;
+            this.stateSourceId = stateSourceId;
+            this.regionPrimaryIds = regionPrimaryIds;
+            this.regionBackupIds = regionBackupIds;
+            this.regionStateSourceIds = regionStateSourceIds;
+        }
+
+        // Whether this result replaces the one of the given epoch and initiator
+        public boolean supersedes(long otherEpoch, String otherInitiatorId) {
+            return isNewer(epoch, initiatorId, otherEpoch, otherInitiatorId);
+        }
+
+        public Player getPlayer(String id) {
+            int idx = id == null ? -1 : playerIds.indexOf(id);
+            return idx < 0 ? null : players.get(idx);
+        }
+
+        // The primary whose backup the given player is, null if it isn't a backup
+        public String primaryOf(String backupId) {
+            int region = regionBackupIds.indexOf(backupId);
+            return region < 0 ? null : regionPrimaryIds.get(region);
+        }
+
+        // The backup of the given primary, null if it isn't a primary or has no backup
+        public String backupOf(String primaryId) {
+            int region = regionPrimaryIds.indexOf(primaryId);
+            return region < 0 ? null : regionBackupIds.get(region);
+        }
+    }
+
+    // Whether an election comes after another one: the higher epoch, or of the same epoch the
+    // higher initiator id. An unknown (null) initiator comes first
+    public static boolean isNewer(long epoch, String initiatorId, long otherEpoch, String otherInitiatorId) {
+        if (epoch != otherEpoch) {
+            return epoch > otherEpoch;
+        }
+        if (initiatorId == null || otherInitiatorId == null) {
+            return initiatorId != null;
+        }
+        return initiatorId.compareTo(otherInitiatorId) > 0;
+    }
+
+    // Decide the roles from the probes of the live players, probes.get(i) belongs to players.get(i).
+    // As before, the player with the highest id is the primary and the second highest the backup
+    public static Result decide(List<Player> players, List<Probe> probes) {
+        return decide(players, probes, 1);
+    }
+
+    public static Result decide(List<Player> players, List<Probe> probes, int regionCount) {
+        return decide(players, probes, regionCount, null);
+    }
+
+    public static Result decide(List<Player> players, List<Probe> probes, int regionCount, String initiatorId) {
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < probes.size(); i++) {
+            order.add(i);
+        }
+        order.sort((a, b) -> String.CASE_INSENSITIVE_ORDER.compare(probes.get(a).playerId, probes.get(b).playerId));
+
+        ArrayList<String> playerIds = new ArrayList<>(order.size());
+        ArrayList<Player> orderedPlayers = new ArrayList<>(order.size());
+        long epoch = 0;
+        Probe oldPrimary = null;
+        Probe oldBackup = null;
+        for (int i : order) {
+            Probe probe = probes.get(i);
+            playerIds.add(probe.playerId);
+            orderedPlayers.add(players.get(i));
+            epoch = Math.max(epoch, probe.epoch);
+            if (probe.role == ServerRole.PRIMARY && (oldPrimary == null || probe.epoch > oldPrimary.epoch)) {
+                oldPrimary = probe;
+            } else if (probe.role == ServerRole.BACKUP && (oldBackup == null || probe.epoch > oldBackup.epoch)) {
+                oldBackup = probe;
+            }
+        }
+
+        int n = playerIds.size();
+        String primaryId = playerIds.get(n - 1);
+        String backupId = n > 1 ? playerIds.get(n - 2) : null;
+        String stateSourceId = oldPrimary != null ? oldPrimary.playerId : oldBackup != null ? oldBackup.playerId : null;
+
+        // Pair i is the (2i+1)th and (2i+2)th highest ids, a single player is a pair on its own
+        int pairs = Math.max(1, Math.min(regionCount, n / 2));
+        ArrayList<String> regionPrimaryIds = new ArrayList<>(regionCount);
+        ArrayList<String> regionBackupIds = new ArrayList<>(regionCount);
+        ArrayList<String> regionStateSourceIds = new ArrayList<>(regionCount);
+        for (int region = 0; region < regionCount; region++) {
+            int pair = region % pairs;
+            regionPrimaryIds.add(playerIds.get(n - 1 - 2 * pair));
+            regionBackupIds.add(n - 2 - 2 * pair >= 0 ? playerIds.get(n - 2 - 2 * pair) : null);
+            regionStateSourceIds.add(regionCount == 1 ? stateSourceId : regionStateSource(order, probes, region));
+        }
+        return new Result(epoch + 1, initiatorId, playerIds, orderedPlayers, primaryId, backupId, stateSourceId,
+                          regionPrimaryIds, regionBackupIds, regionStateSourceIds);
+    }
+
+    // The newest primary that held the region, or else the newest backup that did
+    private static String regionStateSource(List<Integer> order, List<Probe> probes, int region) {
+        Probe primary = null;
+        Probe backup = null;
+        for (int i : order) {
+            Probe probe = probes.get(i);
+            if (!probe.holds(region)) {
+                continue;
+            }
+            if (probe.role == ServerRole.PRIMARY && (primary == null || probe.epoch > primary.epoch)) {
+                primary = probe;
+            } else if (probe.role == ServerRole.BACKUP && (backup == null || probe.epoch > backup.epoch)) {
+                backup = probe;
+            }
+        }
+        return primary != null ? primary.playerId : backup != null ? backup.playerId : null;
+    }
+
+    // Probe the players, decide the roles and tell everyone.
+    // Returns the result, or null if none of the players is alive
+    public static Result run(String initiatorId, List<Player> players) {
+        List<Future<Probe>> pending = new ArrayList<>(players.size());
+        for (Player player : players) {
+            pending.add(PROBES.submit(player::probeForElection));
+        }
+        long deadline = System.currentTimeMillis() + PROBE_TIMEOUT_MILLIS;
+        ArrayList<Player> livePlayers = new ArrayList<>();
+        ArrayList<Probe> probes = new ArrayList<>();
+        for (int i = 0; i < players.size(); i++) {
+            try {
+                probes.add(pending.get(i).get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS));
+                livePlayers.add(players.get(i));
+            } catch (TimeoutException e) {
+                Log.warn("Player did not answer the election probe in time, leaving it out");
+                pending.get(i).cancel(true);
+            } catch (ExecutionException e) {
+                Log.warn("Error probing player for election: " + e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+        if (livePlayers.isEmpty()) {
+            return null;
+        }
+
+        Result result = decide(livePlayers, probes, RegionMap.configuredCount(), initiatorId);
+        Log.info("Election " + result.epoch + " by " + initiatorId + ": primary " + result.primaryId + ", backup " + result.backupId
+                           + ", " + result.playerIds.size() + " players");
+
+        // The new primary goes first, so it holds the game state before anyone sends it a move
+        Player primary = result.getPlayer(result.primaryId);
+        send(primary, result);
+        for (Player player : result.players) {
+            if (player != primary) {
+                send(player, result);
+            }
+        }
+        return result;
+    }
+
+    private static void send(Player player, Result result) {
+        try {
+            player.applyElectionResult(result);
+        } catch (RemoteException e) {
+            // It died since the probe, the failure detector will trigger another election
+            Log.warn("Error sending election result: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package src;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Pings a set of peers concurrently and reports every peer it considers dead in one pass.
+//
+// Each ping has a deadline, so one hung peer can no longer hold up the others for a full TCP timeout.
+// A ping that fails outright (connection refused, no such object...) is a hard failure, and the peer is
+// dead after maxFailures of them in a row. A ping that only times out raises the suspicion level phi,
+// computed phi-accrual style from the history of heartbeat inter-arrival times, and the peer is dead
+// once phi exceeds the threshold. A hung ping is not given up, as a blocked RMI read can't be
+// interrupted anyway: the next probes wait on the same ping rather than tie up another thread.
+//
+// Configure with -Dgame.fd.intervalMs, -Dgame.fd.timeoutMs, -Dgame.fd.phi and -Dgame.fd.maxFailures.
+public class FailureDetector {
+    // Number of inter-arrival samples kept per peer
+    private static final int WINDOW = 100;
+    // Lower bound of the standard deviation, so a perfectly regular history doesn't make phi explode
+    private static final double MIN_STD_DEV_MILLIS = 100;
+
+    private final long intervalMillis;
+    private final long timeoutMillis;
+    private final double phiThreshold;
+    private final int maxFailures;
+    private final ExecutorService pingers;
+    private final Map<Player, PeerState> peers = new HashMap<>();
+    // The ping of every peer that hasn't answered yet
+    private final Map<Player, Future<String>> pending = new HashMap<>();
+
+    // Detection latency: time from the last good heartbeat to declaring the peer dead
+    private long detections;
+    private long totalDetectionMillis;
+    private long maxDetectionMillis;
+    private long lastProbeMillis;
+
+    private static class PeerState {
+        final long[] intervals = new long[WINDOW];
+        int samples;
+        int next;
+        long lastHeartbeat;
+        int consecutiveFailures;
+
+        PeerState(long now) {
+            lastHeartbeat = now;
+        }
+
+        void heartbeat(long now, long expectedInterval) {
+            // Seed the history with the expected interval so the first suspicions are sensible
+            long interval = samples == 0 ? expectedInterval : now - lastHeartbeat;
+            intervals[next] = interval;
+            next = (next + 1) % WINDOW;
+            samples = Math.min(samples + 1, WINDOW);
+            lastHeartbeat = now;
+            consecutiveFailures = 0;
+        }
+
+        double phi(long now, long expectedInterval) {
+            double mean = expectedInterval;
+            double variance = 0;
+            if (samples > 0) {
+                double sum = 0;
+                for (int i = 0; i < samples; i++) {
+                    sum += intervals[i];
+                }
+                mean = sum / samples;
+                for (int i = 0; i < samples; i++) {
+                    variance += (intervals[i] - mean) * (intervals[i] - mean);
+                }
+                variance /= samples;
+            }
+            double stdDev = Math.max(Math.sqrt(variance), MIN_STD_DEV_MILLIS);
+            // Logistic approximation of the normal CDF, as used by the phi accrual detector
+            double y = (now - lastHeartbeat - mean) / stdDev;
+            double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+            if (now - lastHeartbeat > mean) {
+                return -Math.log10(e / (1.0 + e));
+            }
+            return -Math.log10(1.0 - 1.0 / (1.0 + e));
+        }
+    }
+
+    public FailureDetector(String name) {
+        this(name,
+             Long.getLong("game.fd.intervalMs", 500L),
+             Long.getLong("game.fd.timeoutMs", 300L),
+             Double.parseDouble(System.getProperty("game.fd.phi", "8.0")),
+             Integer.getInteger("game.fd.maxFailures", 1));
+    }
+
+    public FailureDetector(String name, long intervalMillis, long timeoutMillis, double phiThreshold, int maxFailures) {
+        this.intervalMillis = intervalMillis;
+        this.timeoutMillis = timeoutMillis;
+        this.phiThreshold = phiThreshold;
+        this.maxFailures = Math.max(1, maxFailures);
+        this.pingers = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "ping-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    // Ping all the peers at once and return the ones that are now considered dead
+    public List<Player> probe(Collection<Player> targets) {
+        long start = System.currentTimeMillis();
+        List<Player> targetList = new ArrayList<>(targets);
+        List<Future<String>> pings = new ArrayList<>(targetList.size());
+        for (Player peer : targetList) {
+            pings.add(ping(peer));
+        }
+
+        long deadline = start + timeoutMillis;
+        List<Player> dead = new ArrayList<>();
+        for (int i = 0; i < targetList.size(); i++) {
+            Player peer = targetList.get(i);
+            Future<String> ping = pings.get(i);
+            boolean hardFailure = false;
+            boolean alive = false;
+            try {
+                ping.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                alive = true;
+            } catch (TimeoutException e) {
+                // Hung or slow: leave it to the suspicion level, the ping stays pending
+            } catch (ExecutionException e) {
+                hardFailure = e.getCause() instanceof RemoteException;
+                if (!hardFailure) {
+                    Log.warn("Error pinging player: " + e.getCause());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (ping.isDone()) {
+                synchronized (this) {
+                    pending.remove(peer, ping);
+                }
+            }
+            if (record(peer, alive, hardFailure)) {
+                dead.add(peer);
+            }
+        }
+        synchronized (this) {
+            lastProbeMillis = System.currentTimeMillis() - start;
+        }
+        return dead;
+    }
+
+    // A new ping of the peer, or the one still pending from an earlier probe
+    private synchronized Future<String> ping(Player peer) {
+        Future<String> ping = pending.get(peer);
+        if (ping == null) {
+            ping = pingers.submit(peer::ping);
+            pending.put(peer, ping);
+        }
+        return ping;
+    }
+
+    // Ping a single peer, e.g. the primary from the backup
+    public boolean isAlive(Player peer) {
+        List<Player> targets = new ArrayList<>();
+        targets.add(peer);
+        return probe(targets).isEmpty();
+    }
+
+    private synchronized boolean record(Player peer, boolean alive, boolean hardFailure) {
+        long now = System.currentTimeMillis();
+        PeerState state = peers.computeIfAbsent(peer, p -> new PeerState(now));
+        if (alive) {
+            state.heartbeat(now, intervalMillis);
+            return false;
+        }
+        if (hardFailure) {
+            state.consecutiveFailures++;
+        }
+        if (state.consecutiveFailures >= maxFailures || state.phi(now, intervalMillis) > phiThreshold) {
+            long latency = now - state.lastHeartbeat;
+            detections++;
+            totalDetectionMillis += latency;
+            maxDetectionMillis = Math.max(maxDetectionMillis, latency);
+            peers.remove(peer);
+            return true;
+        }
+        return false;
+    }
+
+    // Current suspicion level of a peer, 0 if it has never been probed
+    public synchronized double getPhi(Player peer) {
+        PeerState state = peers.get(peer);
+        return state == null ? 0 : state.phi(System.currentTimeMillis(), intervalMillis);
+    }
+
+    // Forget a peer that has left the game
+    public synchronized void forget(Player peer) {
+        peers.remove(peer);
+        Future<String> ping = pending.remove(peer);
+        if (ping != null) {
+            ping.cancel(true);
+        }
+    }
+
+    // Forget every peer but the given ones, e.g. the players of the last election
+    public synchronized void retainAll(Collection<Player> live) {
+        Set<Player> known = new HashSet<>(peers.keySet());
+        known.addAll(pending.keySet());
+        known.removeAll(new HashSet<>(live));
+        for (Player peer : known) {
+            forget(peer);
+        }
+    }
+
+    // Number of peers with a history or a pending ping
+    public synchronized int getTrackedPeers() {
+        Set<Player> known = new HashSet<>(peers.keySet());
+        known.addAll(pending.keySet());
+        return known.size();
+    }
+
+    public synchronized long getDetections() {
+        return detections;
+    }
+
+    public synchronized double getAverageDetectionMillis() {
+        return detections == 0 ? 0 : (double) totalDetectionMillis / detections;
+    }
+
+    public synchronized long getMaxDetectionMillis() {
+        return maxDetectionMillis;
+    }
+
+    // Wall time of the last probe pass, bounded by the ping timeout
+    public synchronized long getLastProbeMillis() {
+        return lastProbeMillis;
+    }
+
+    public void shutdown() {
+        pingers.shutdownNow();
+    }
+}
@@ -0,0 +1,66 @@
+package src;
+
+import java.util.Random;
+
+// Sparse set of the cells that hold neither a player nor a treasure.
+// Add, remove, contains and picking a random free cell are all O(1),
+// so respawning a treasure no longer scans and shuffles the whole grid.
+public class FreeCellPool {
+    // dense[0..size) are the free cell indices, in no particular order
+    private final int[] dense;
+    // sparse[cell] is the position of the cell in dense, only meaningful while the cell is free
+    private final int[] sparse;
+    private int size;
+
+    public FreeCellPool(int cellCount) {
+        dense = new int[cellCount];
+        sparse = new int[cellCount];
+        fill();
+    }
+
+    // Mark every cell as free
+    public void fill() {
+        for (int i = 0; i < dense.length; i++) {
+            dense[i] = i;
+            sparse[i] = i;
+        }
+        size = dense.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(int cell) {
+        int pos = sparse[cell];
+        return pos < size && dense[pos] == cell;
+    }
+
+    public void add(int cell) {
+        if (contains(cell)) {
+            return;
+        }
+        dense[size] = cell;
+        sparse[cell] = size;
+        size++;
+    }
+
+    public void remove(int cell) {
+        if (!contains(cell)) {
+            return;
+        }
+        // Move the last free cell into the hole
+        int pos = sparse[cell];
+        int last = dense[--size];
+        dense[pos] = last;
+        sparse[last] = pos;
+    }
+
+    // A uniformly random free cell, or -1 if the grid is full
+    public int randomCell(Random random) {
+        if (size == 0) {
+            return -1;
+        }
+        return dense[random.nextInt(size)];
+    }
+}
@@ -1,35 +1,39 @@
 package src;
 
-import java.awt.Color;
-import java.awt.GridLayout;
-import java.awt.Toolkit;
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.file.Path;
+import java.rmi.NoSuchObjectException;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Random;
-import javax.swing.*;
-import java.awt.Font;
-import java.awt.BorderLayout;
-import java.awt.Dimension;
-import java.awt.Component;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Map;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Set;
 
 public class Game extends UnicastRemoteObject implements Player {
-    private Player primaryServer;
-    private Player backupServer;
+    private volatile Player primaryServer;
+    private volatile Player backupServer;
     private String IP_address;
     private int port_number;
     // My player id
@@ -43,70 +47,143 @@ public class Game extends UnicastRemoteObject implements Player {
         PLAYER
     }
     // The local player's role
-    private ServerRole serverRole;
-
-    // The panel to display the current score of all the players
-    private JPanel sidePanel;
-
-    private final Object sidePanelLock = new Object();
-    private volatile boolean isUpdatingSidePanel = false;
+    private volatile ServerRole serverRole;
+    // The epoch and initiator of the last single-round election result applied
+    private volatile long electionEpoch;
+    private volatile String electionInitiatorId;
+    private final Object electionLock = new Object();
+    // Player id -> stub of every player, so ids don't have to be asked for remotely
+    private final MemberDirectory members = new MemberDirectory();
+    // How the other nodes reach this player (-Dgame.transport), and the reference they call it through
+    private final Transport transport = Transport.get();
+    private Player self;
+    // How the maze is split between region primaries (-Dgame.regions), a single region by default
+    private RegionMap regions;
+    // Per region, the id and the reference of its primary as of the last election
+    private volatile List<String> regionOwnerIds = Collections.emptyList();
+    private volatile Player[] regionOwners = new Player[0];
+    // The regions this player holds the state of as their primary or backup, for the next election
+    private volatile int[] heldRegions = new int[0];
+    // When split: the version of the state stream of every region primary, by its id, as seen here
+    private final Map<String, Long> ownerVersions = new ConcurrentHashMap<>();
+
+    // The window of the player, or a view that draws nothing when headless
+    private final GameView view;
 
     // ===== Start of Game state =====
     // Flag to indicate whether the game is initialized to avoid race condition
     private boolean isGameInitialized;
     // All the players in the game
-    private ArrayList<Player> playerList;
-    // The positions of all the players
-    private Map<String, int[]> playerPositions = new ConcurrentHashMap<>();
+    private volatile ArrayList<Player> playerList;
+    // The positions and scores of all the players, each player interned to a slot of primitive arrays
+    private final PlayerSlots slots = new PlayerSlots();
+    // The positions of all the players, a view of slots
+    private final Map<String, int[]> playerPositions = slots.positions();
     // The positions of all the treasures
     private List<int[]> treasurePositions = new CopyOnWriteArrayList<>();
-    // The score of all the players
-    private Map<String, Integer> playerScores = new ConcurrentHashMap<>();
+    // The score of all the players, a view of slots
+    private final Map<String, Integer> playerScores = slots.scores();
+    // The array of the last collected treasure, the next treasure spawned reuses it
+    private int[] collectedTreasure;
     private String startTime;
+    // Version of the game state, bumped by every change the primary commits
+    private volatile long stateVersion;
+    // The most recent deltas, so a lagging player or backup can catch up without a full snapshot
+    private final DeltaHistory deltaHistory = new DeltaHistory(DeltaHistory.DEFAULT_CAPACITY);
+    // Ships the committed deltas to the backup server
+    private ReplicationPipeline replication;
+    // Persists the committed deltas and snapshots while we are the primary, null unless -Dgame.wal.dir
+    // is set. Guarded by stateLock
+    private StateLog stateLog;
+
+    // Detects crashed players and servers
+    private FailureDetector failureDetector;
+    private ScheduledExecutorService failureDetectorTimer;
+    private ScheduledFuture<?> failureDetectorTask;
+    // Cell index of playerPositions and treasurePositions for O(1) collision and treasure checks
+    private OccupancyGrid occupancy;
+    // What the primary last sent each player of its area of interest, null if everyone gets the whole maze
+    private final AreaOfInterest interest = AreaOfInterest.RADIUS > 0 ? new AreaOfInterest(AreaOfInterest.RADIUS) : null;
+    // Whether this player only holds its area of interest, so deltas of the whole state don't apply to it
+    private volatile boolean partialState;
+    // Guards playerPositions, treasurePositions, playerScores, occupancy and interest
+    private final Object stateLock = new Object();
+    // The state as of the last version that was read, see StateSnapshot
+    private volatile StateSnapshot snapshot;
+    private volatile long snapshotsTaken;
+    // Applies the moves the primary receives one batch at a time, see MoveSequencer
+    private final MoveSequencer sequencer;
+    // The delta replies of getStateUpdate, one per calling thread. Both transports write a reply out
+    // before the thread takes its next call, so it is filled in again rather than allocated per move
+    private final ThreadLocal<StateUpdate> replies = ThreadLocal.withInitial(() -> new StateUpdate(0, new ArrayList<>(), null));
     // ===== End of Game state =====
 
     private int GRID_SIZE = 15;
-    private static JFrame frame;
-    private static JPanel gridPanel;
-
-    public static int score;
+    // Queued on the view's thread by requestRender, at most one at a time: the commits until it
+    // runs are drawn by the same frame
+    private final AtomicBoolean renderQueued = new AtomicBoolean();
+    private final Runnable renderTask = () -> {
+        // Clear it first, a commit while drawing queues the next frame
+        renderQueued.set(false);
+        renderGUI(GRID_SIZE);
+    };
+    // What the side panel shows was drawn from these, it is only redrawn once one of them changes.
+    // Guarded by stateLock
+    private long drawnScoreChanges = -1;
+    private Player drawnPrimary;
+    private Player drawnBackup;
+    private List<Player> drawnPlayers;
+    // The Tracker session this player joined, its maze gives GRID_SIZE and K
+    private volatile String sessionId;
+    private static final int JOIN_ATTEMPTS = 3;
+
+    private int score;
+    // Whether leaving the game exits the JVM, false when several players share one JVM
+    private volatile boolean exitOnLeave = true;
 
     public int K;
 
-    // 0 empty
-    // 1 player
-    // 2 treasure
-    public static int[][] arr;
+    // Random source for spawns and treasure respawns, seedable with -Dgame.seed
+    private Random random;
 
     public Game(String IP_address, int port_number, String playerId)  throws RemoteException {
+        this(IP_address, port_number, playerId, GameView.create());
+    }
+
+    public Game(String IP_address, int port_number, String playerId, GameView view)  throws RemoteException {
+        this.view = view;
         this.IP_address = IP_address;
         this.port_number = port_number;
         this.playerId = playerId;
+        this.random = GameUtils.newRandom(playerId);
+        this.failureDetector = new FailureDetector(playerId);
+        this.sequencer = new MoveSequencer(stateLock, new SequencedMoves());
+        this.replication = new ReplicationPipeline(playerId, () -> backupServer, () -> currentSnapshot().toGameState());
 
         score = 0;
         // init treasure positions
         playerList = new ArrayList<>();
-        playerPositions = new HashMap<>();
         treasurePositions = new ArrayList<>();
         // The player Ids received for server election
         receivedPlayerIds = new ArrayList<>();
-        // The score of all the players
-        playerScores = new HashMap<>();
 
         // Register to tracker
+        self = transport.export(this);
         var isRegistered = registerToTracker();
         if (!isRegistered) {
-            System.out.println("Player " + playerId + " is not successfully registered. Exiting...");
-            System.exit(0);
+            throw new IllegalStateException("Player " + playerId + " is not successfully registered");
+        }
+        // The Tracker runs the election in the background, wait until it has given us a role
+        if (!awaitElection(Long.getLong("game.joinTimeoutMs", 60000L))) {
+            throw new IllegalStateException("Player " + playerId + " was not assigned a role by any election");
         }
-        
-        // This must be done after registerToTracker() to get the GRID_SIZE
-        arr = new int[GRID_SIZE][GRID_SIZE];
 
         // Sync the game state(player positions, treasures positions) from primary server
         if (serverRole == ServerRole.PRIMARY) {
+            // The election has usually opened it already
+            openStateLog();
             // This need to be done after registerToTracker() to get the player ID
-            if (!isGameInitialized) {
+            if (!isGameInitialized && !recoverGameState()) {
                 startTime = LocalTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss"));
                 initializeGameState();
             }
@@ -116,39 +193,34 @@ public class Game extends UnicastRemoteObject implements Player {
                 try {
                     Thread.sleep(100);
                 } catch (InterruptedException e) {
-                    e.printStackTrace();
+                    Log.error("Interrupted while waiting for the game to be initialized", e);
                 }
             }
-            System.out.println("Player " + playerId + " is getting game state from primary server");
+            Log.info("Player " + playerId + " is getting game state from primary server");
             // Get playerList, playerPositions, and treasurePositions from primary server
             GameState gameState = getPrimaryServer().getGameState(this);
-            playerList = gameState.playerList;
-            playerPositions = gameState.playerPositions;
-            treasurePositions = gameState.treasurePositions;
-            isGameInitialized = gameState.isGameInitialized;
-            System.out.println("Player list updated: " + playerList.size());
-            for (Player player : playerList) {
-                try {
-                    System.out.println("Player ID: " + player.getPlayerId());
-                } catch (RemoteException e) {
-                    System.err.println("Error getting player ID: " + e.getMessage());
-                }
-            }
+            updateGameState(gameState);
+            Log.info("Player list updated: " + playerList.size());
+            Log.info("Player IDs: " + members.getIds());
+        }
+        if (isSharded()) {
+            // The other regions come from their own primaries
+            syncRegions();
         }
         // Init the player position
-        // Find a random empty position in the arr to set the player position
-        Random random = new Random();
-        int newX, newY;
-        newX = random.nextInt(GRID_SIZE);
-        newY = random.nextInt(GRID_SIZE);
-        while (arr[newX][newY] != 0 || isTreasurePosition(newX, newY)) {  // Keep searching until an empty cell is found that's not a treasure
-            newX = random.nextInt(GRID_SIZE);
-            newY = random.nextInt(GRID_SIZE);
-        }
-        // Set the player's position
-        arr[newX][newY] = 1;  // Mark the position as occupied
-        System.out.println("Player " + playerId + " is initialized at position " + newX + " " + newY);
-        playerPositions.put(playerId, new int[] {newX, newY});
+        // Pick a random empty cell that's not a treasure to set the player position
+        int freeCell = occupancy.randomFreeCell(random);
+        if (freeCell < 0) {
+            throw new IllegalStateException("Player " + playerId + " cannot join as the maze is full");
+        }
+        int newX = GameUtils.getX(freeCell, GRID_SIZE);
+        int newY = GameUtils.getY(freeCell, GRID_SIZE);
+        Log.info("Player " + playerId + " is initialized at position " + newX + " " + newY);
+        synchronized (stateLock) {
+            playerPositions.put(playerId, new int[] {newX, newY});
+            occupancy.placePlayer(playerId, newX, newY);
+            stateChanged();
+        }
 
         initializeGUI();
 
@@ -159,15 +231,6 @@ public class Game extends UnicastRemoteObject implements Player {
         updatePositionToPrimaryServer(newX, newY);
     }
 
-    private boolean isTreasurePosition(int x, int y) {
-        for (int[] treasure : treasurePositions) {
-            if (treasure[0] == x && treasure[1] == y) {
-                return true;
-            }
-        }
-        return false;
-    }
-
     private TrackerInterface getTracker() {
         try {
             // Get the registry
@@ -178,7 +241,7 @@ public class Game extends UnicastRemoteObject implements Player {
             TrackerInterface stub = (TrackerInterface) registry.lookup("Tracker");
             return stub;
         } catch (Exception e) {
-            System.err.println("Client exception: " + e.toString());
+            Log.error("Client exception", e);
         }
         return null;
     }
@@ -190,67 +253,77 @@ public class Game extends UnicastRemoteObject implements Player {
 
     @Override
     public void clearReceivedPlayerIds() {
-        System.out.println("Player " + playerId + " is clearing received player ids");
+        Log.info("Player " + playerId + " is clearing received player ids");
         receivedPlayerIds.clear();
     }
 
     @Override
     public void setPlayerList(ArrayList<Player> playerList) {
-        System.out.println("Player " + playerId + " is setting player list");
-        System.out.println("Player list: ");
+        Log.info("Player " + playerId + " is setting player list");
+        Log.info("Player list: ");
         Set<String> activePlayerIds = new HashSet<String>();
         for (Player player : playerList) {
             try {
-                System.out.println(player.getPlayerId());
-                activePlayerIds.add(player.getPlayerId());
+                String pid = idOf(player);
+                Log.info(pid);
+                activePlayerIds.add(pid);
             } catch (RemoteException e) {
-                System.err.println("Error getting player ID: " + e.getMessage());
+                Log.warn("Error getting player ID: " + e.getMessage());
             }
         }
         this.playerList = playerList;
+        failureDetector.retainAll(playerList);
 
         // Update playerPositions and playerScores by removing players not in the playerList
-        playerPositions.keySet().removeIf(pid -> !activePlayerIds.contains(pid));
-        playerScores.keySet().removeIf(pid -> !activePlayerIds.contains(pid));
+        retainPlayers(activePlayerIds);
     }
 
     @Override
     public void broadcastId() {
-        System.out.println("Player " + playerId + " is broadcasting id");
+        Log.info("Player " + playerId + " is broadcasting id");
         // Broadcast my player id to all other players
         for (Player player : playerList) {
             try {
-                if (!player.getPlayerId().equals(playerId)) {
-                    System.out.println("Sending id to " + player.getPlayerId());
+                String otherPlayerId = idOf(player);
+                if (!otherPlayerId.equals(playerId)) {
+                    Log.info("Sending id to " + otherPlayerId);
                     player.receiveId(playerId);
-                    System.out.println("Sent id to " + player.getPlayerId());
+                    Log.info("Sent id to " + otherPlayerId);
                 }
             } catch (RemoteException e) {
-                System.err.println("Error setting player list: " + e.getMessage());
+                Log.warn("Error setting player list: " + e.getMessage());
             }
         }
     }
 
     @Override
     public void receiveId(String otherPlayerId) {
-        System.out.println("Player " + playerId + " received id " + otherPlayerId);
+        Log.info("Player " + playerId + " received id " + otherPlayerId);
         if (!receivedPlayerIds.contains(otherPlayerId)) {
             receivedPlayerIds.add(otherPlayerId);
         }
     }
 
     public void initiateElection(ArrayList<Player> players) throws RemoteException {
-        System.out.println("Player " + getPlayerId() + " initiating election");
+        Log.info("Player " + getPlayerId() + " initiating election");
+        if (Election.getMode() == Election.Mode.SINGLE_ROUND) {
+            // Probe everyone once, decide here and send the result to everyone once
+            Election.Result result = Election.run(playerId, players);
+            if (result != null && isSharded()) {
+                reportRegionOwners(result);
+            }
+            return;
+        }
         try {
             // Use the player list from the parameter as the new player list
             // Because it could be a new player joinning who is initiating the election
-            System.out.println("Current players:" + players.size());
+            Log.info("Current players:" + players.size());
             ArrayList<Player> deadPlayers = new ArrayList<>();
             for (Player player : players) {
                 try {
-                    System.out.println("Player ID: " + player.getPlayerId());
+                    Log.info("Player ID: " + player.getPlayerId());
                 } catch (RemoteException e) {
-                    System.err.println("Error getting player ID: " + e.getMessage());
+                    Log.warn("Error getting player ID: " + e.getMessage());
                     // Flag the dead player for removal
                     deadPlayers.add(player);
                 }
@@ -258,7 +331,7 @@ public class Game extends UnicastRemoteObject implements Player {
             // Remove dead players after the iteration
             players.removeAll(deadPlayers);
 
-            System.out.println("Total players: " + players.size());
+            Log.info("Total players: " + players.size());
 
             // Clear the receivedPlayerIds first
             // BUG ALERT: Note this can not be done in following for loop
@@ -278,13 +351,13 @@ public class Game extends UnicastRemoteObject implements Player {
                 player.electServers();
             }
         } catch (RemoteException e) {
-            System.err.println("Error triggering primary server election: " + e.getMessage());
+            Log.warn("Error triggering primary server election: " + e.getMessage());
         }
     }
 
     @Override
     public void electServers() {
-        System.out.println("========== Player " + playerId + " is electing the primary server ==========");
+        Log.info("========== Player " + playerId + " is electing the primary server ==========");
         try {
             // Add my id to the receivedPlayerIds
             List<String> receivedPlayerIdsCopy = new ArrayList<>(receivedPlayerIds);
@@ -303,43 +376,52 @@ public class Game extends UnicastRemoteObject implements Player {
                         servers.add(player);
                     }
                 } catch (RemoteException e) {
-                    System.err.println("Error getting server role: " + e.getMessage());
+                    Log.warn("Error getting server role: " + e.getMessage());
                 }
             }
-            System.out.println("Servers number: " + servers.size());
+            Log.info("Servers number: " + servers.size());
 
-            // Retrive the current game state from the old primary
-            if (!servers.isEmpty()) {
+            // Retrive the current game state from the old primary, unless that is me
+            if (!servers.isEmpty() && !idOf(servers.get(0)).equals(playerId)) {
                 GameState currentGameState = servers.get(0).getGameState(this);
                 updateGameState(currentGameState);
             }
 
             // Check if receivedPlayerIdsCopy is not empty before proceeding
             if (receivedPlayerIdsCopy.isEmpty()) {
-                System.out.println("Error: No player IDs received. Cannot proceed with server election.");
+                Log.warn("No player IDs received. Cannot proceed with server election.");
                 return;
             }
 
             // The player with the highest id is elected as the primary server
             // Get the highest id from the receivedPlayerIdsCopy
-            System.out.println("All received player ids: " + receivedPlayerIdsCopy);
+            Log.info("All received player ids: " + receivedPlayerIdsCopy);
             // Compare player IDs lexicographically (alphabetically)
             receivedPlayerIdsCopy.sort(String.CASE_INSENSITIVE_ORDER);
-            System.out.println("All received player ids after sorting: " + receivedPlayerIdsCopy);
+            Log.info("All received player ids after sorting: " + receivedPlayerIdsCopy);
             String highestId = receivedPlayerIdsCopy.get(receivedPlayerIdsCopy.size() - 1);
-            System.out.println("The highest id is " + highestId);
+            Log.info("The highest id is " + highestId);
             String secondHighestId = receivedPlayerIdsCopy.size() > 1 ? receivedPlayerIdsCopy.get(receivedPlayerIdsCopy.size() - 2) : null;
-            System.out.println("The second highest id is " + secondHighestId);
+            Log.info("The second highest id is " + secondHighestId);
 
             if (playerId.equals(highestId)) {
                 // This node becomes the primary server
+                if (serverRole != ServerRole.PRIMARY) {
+                    // Start a new term of state versions, so whatever the players and the new backup
+                    // saw from the old primary is detected as a gap and replaced by a snapshot
+                    synchronized (stateLock) {
+                        stateVersion = DeltaHistory.nextTerm(stateVersion);
+                        deltaHistory.reset(stateVersion);
+                    }
+                }
                 serverRole = ServerRole.PRIMARY;
                 primaryServer = this;
-                System.out.println("I, " + playerId + ", am the new primary server");
+                openStateLog();
+                Log.info("I, " + playerId + ", am the new primary server");
 
                 // If there was a previous primary, it becomes the backup
                 if (servers.size() > 0) {
-                    System.out.println("There is a previous primary server: " + servers.get(0).getPlayerId());
+                    Log.info("There is a previous primary server: " + idOf(servers.get(0)));
                     Player oldPrimary = servers.get(0);
                     oldPrimary.demoteToBackup();
                     backupServer = oldPrimary;
@@ -354,7 +436,7 @@ public class Game extends UnicastRemoteObject implements Player {
                 serverRole = ServerRole.BACKUP;
                 backupServer = this;
                 primaryServer = getPlayerById(highestId);
-                System.out.println("I, " + playerId + ", am the new backup server");
+                Log.info("I, " + playerId + ", am the new backup server");
 
                 // If there was a previous backup, it becomes a regular player
                 if (servers.size() > 1) {
@@ -363,10 +445,14 @@ public class Game extends UnicastRemoteObject implements Player {
             } else {
                 // This node is a regular player
                 serverRole = ServerRole.PLAYER;
-                System.out.println("I, " + playerId + ", am a regular player");
+                Log.info("I, " + playerId + ", am a regular player");
                 primaryServer = getPlayerById(highestId);
                 backupServer = secondHighestId != null ? getPlayerById(secondHighestId) : null;
             }
+            if (serverRole != ServerRole.PRIMARY) {
+                replication.stop();
+                closeStateLog();
+            }
             // Re-construct the playerList from the received Ids
             ArrayList<Player> newPlayerList = new ArrayList<>();
             for (String id : receivedPlayerIdsCopy) {
@@ -374,28 +460,463 @@ public class Game extends UnicastRemoteObject implements Player {
                 if (player != null) {
                     newPlayerList.add(player);
                 } else {
-                    System.err.println("Warning: Could not find player with ID " + id);
+                    Log.warn("Could not find player with ID " + id);
                 }
             }
 
             // Update the playerList
             playerList = new ArrayList<>(newPlayerList);
-            System.out.println("Updated player list: " + playerList.size() + " players");
+            failureDetector.retainAll(playerList);
+            Log.info("Updated player list: " + playerList.size() + " players");
 
             // Update the primary server's GUI
             if (serverRole == ServerRole.PRIMARY) {
-                SwingUtilities.invokeLater(() -> {
-                    renderGUI(GRID_SIZE);
-                });
+                requestRender();
+            }
+        } catch (RemoteException e) {
+            Log.warn("Error electing primary server: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public Election.Probe probeForElection() {
+        return new Election.Probe(playerId, serverRole, electionEpoch, heldRegions);
+    }
+
+    // Tell the Tracker which primary owns which region now
+    private void reportRegionOwners(Election.Result result) {
+        TrackerInterface tracker = getTracker();
+        if (tracker == null) {
+            return;
+        }
+        try {
+            tracker.updateRegionOwners(sessionId, result.epoch, result.initiatorId, result.regionPrimaryIds);
+        } catch (RemoteException e) {
+            Log.warn("Error reporting the region owners: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void applyElectionResult(Election.Result result) {
+        synchronized (electionLock) {
+            // Of two elections run at once, every player keeps the one of the highest initiator
+            if (!result.supersedes(electionEpoch, electionInitiatorId)) {
+                Log.info("Ignoring result of election " + result.epoch + " by " + result.initiatorId + ", already at "
+                    + electionEpoch + " by " + electionInitiatorId);
+                return;
+            }
+            electionEpoch = result.epoch;
+            electionInitiatorId = result.initiatorId;
+            Log.info("========== Player " + playerId + " applies the result of election " + result.epoch + " by "
+                + result.initiatorId + " ==========");
+            playerList = new ArrayList<>(result.players);
+            // Stop tracking the players that left or were dropped
+            failureDetector.retainAll(result.players);
+            members.replaceAll(result.playerIds, result.players);
+
+            if (isSharded()) {
+                applyRegionRoles(result);
+            } else if (playerId.equals(result.primaryId)) {
+                // Take over the game state from the old primary (or the old backup if the primary is gone)
+                if (result.stateSourceId != null && !result.stateSourceId.equals(playerId)) {
+                    try {
+                        updateGameState(result.getPlayer(result.stateSourceId).getGameState(this));
+                        playerList = new ArrayList<>(result.players);
+                    } catch (RemoteException e) {
+                        Log.warn("Error getting game state from " + result.stateSourceId + ": " + e.getMessage());
+                    }
+                }
+                if (serverRole != ServerRole.PRIMARY) {
+                    // Start a new term of state versions, so whatever the players and the new backup
+                    // saw from the old primary is detected as a gap and replaced by a snapshot
+                    synchronized (stateLock) {
+                        stateVersion = DeltaHistory.nextTerm(stateVersion);
+                        deltaHistory.reset(stateVersion);
+                    }
+                }
+                serverRole = ServerRole.PRIMARY;
+                primaryServer = this;
+                backupServer = result.getPlayer(result.backupId);
+                openStateLog();
+                Log.info("I, " + playerId + ", am the new primary server");
+            } else if (playerId.equals(result.backupId)) {
+                serverRole = ServerRole.BACKUP;
+                backupServer = this;
+                primaryServer = result.getPlayer(result.primaryId);
+                Log.info("I, " + playerId + ", am the new backup server");
+            } else {
+                serverRole = ServerRole.PLAYER;
+                primaryServer = result.getPlayer(result.primaryId);
+                backupServer = result.getPlayer(result.backupId);
+                Log.info("I, " + playerId + ", am a regular player");
+            }
+
+            if (serverRole != ServerRole.PRIMARY) {
+                // Only the primary replicates and logs, let the sender thread and the log go
+                replication.stop();
+                closeStateLog();
+            }
+            // Drop the positions and scores of the players that didn't make it into the election
+            retainPlayers(new HashSet<>(result.playerIds));
+        }
+
+        // Update the primary server's GUI
+        if (serverRole == ServerRole.PRIMARY) {
+            requestRender();
+        }
+    }
+
+    // The roles when the maze is split into regions: the primary of some regions, the backup of
+    // such a primary, or a regular player. A new primary of a region takes its state over from the
+    // node that held it and starts a new term, so every player resyncs with it.
+    // Must be called with electionLock held
+    private void applyRegionRoles(Election.Result result) {
+        List<String> oldOwnerIds = regionOwnerIds;
+        List<Integer> gained = new ArrayList<>();
+        List<Integer> held = new ArrayList<>();
+        Player[] owners = new Player[result.regionPrimaryIds.size()];
+        for (int region = 0; region < owners.length; region++) {
+            String ownerId = result.regionPrimaryIds.get(region);
+            owners[region] = ownerId.equals(playerId) ? this : result.getPlayer(ownerId);
+            boolean owned = ownerId.equals(playerId);
+            if (owned && (region >= oldOwnerIds.size() || !playerId.equals(oldOwnerIds.get(region)))) {
+                gained.add(region);
+            }
+            if (owned || playerId.equals(result.regionBackupIds.get(region))) {
+                held.add(region);
+            }
+        }
+
+        // Fetch the state of each node we take regions over from once
+        Map<String, GameState> sources = new HashMap<>();
+        for (int region : gained) {
+            String sourceId = result.regionStateSourceIds.get(region);
+            if (sourceId == null || sourceId.equals(playerId)) {
+                // Nobody had it, or we already hold it as its backup
+                continue;
+            }
+            GameState state = sources.get(sourceId);
+            if (state == null) {
+                try {
+                    state = result.getPlayer(sourceId).getGameState(this);
+                    sources.put(sourceId, state);
+                } catch (RemoteException e) {
+                    Log.warn("Error getting the state of region " + region + " from " + sourceId + ": " + e.getMessage());
+                    continue;
+                }
+            }
+            BitSet mask = new BitSet();
+            mask.set(region);
+            synchronized (stateLock) {
+                mergeRegions(mask, state);
+            }
+            isGameInitialized |= state.isGameInitialized;
+            if (startTime == null) {
+                startTime = state.startTime;
+            }
+        }
+
+        regionOwnerIds = new ArrayList<>(result.regionPrimaryIds);
+        regionOwners = owners;
+        heldRegions = held.stream().mapToInt(Integer::intValue).toArray();
+
+        String myPrimaryId = result.primaryOf(playerId);
+        if (result.regionPrimaryIds.contains(playerId)) {
+            GameDelta committed = null;
+            synchronized (stateLock) {
+                if (serverRole != ServerRole.PRIMARY || !gained.isEmpty()) {
+                    stateVersion = DeltaHistory.nextTerm(stateVersion);
+                    deltaHistory.reset(stateVersion);
+                }
+                if (isGameInitialized) {
+                    // A region nobody held any more has lost its treasures
+                    GameDelta delta = new GameDelta();
+                    topUpTreasures(delta);
+                    committed = commitDelta(delta);
+                }
+            }
+            serverRole = ServerRole.PRIMARY;
+            primaryServer = this;
+            backupServer = result.getPlayer(result.backupOf(playerId));
+            Log.info("I, " + playerId + ", am the primary of regions " + held + " of " + owners.length);
+            publishCommitted(committed);
+        } else if (myPrimaryId != null) {
+            serverRole = ServerRole.BACKUP;
+            backupServer = this;
+            primaryServer = result.getPlayer(myPrimaryId);
+            Log.info("I, " + playerId + ", am the backup of " + myPrimaryId + ", for regions " + held);
+        } else {
+            serverRole = ServerRole.PLAYER;
+            primaryServer = result.getPlayer(result.primaryId);
+            backupServer = result.getPlayer(result.backupId);
+            Log.info("I, " + playerId + ", am a regular player");
+        }
+    }
+
+    // Whether the maze is split between several region primaries.
+    // Only the single-round election assigns regions
+    private boolean isSharded() {
+        return regions != null && regions.isSharded() && Election.getMode() == Election.Mode.SINGLE_ROUND;
+    }
+
+    // The id of the primary of the region of a cell, null before the first election
+    private String ownerIdAt(int x, int y) {
+        List<String> ownerIds = regionOwnerIds;
+        int region = regions.regionOf(x, y);
+        return region < ownerIds.size() ? ownerIds.get(region) : null;
+    }
+
+    private Player ownerAt(int x, int y) {
+        Player[] owners = regionOwners;
+        int region = regions.regionOf(x, y);
+        return region < owners.length ? owners[region] : null;
+    }
+
+    private boolean ownsCell(int x, int y) {
+        return playerId.equals(ownerIdAt(x, y));
+    }
+
+    // The regions of the given primary
+    private BitSet regionsOf(String ownerId) {
+        BitSet mask = new BitSet();
+        List<String> ownerIds = regionOwnerIds;
+        for (int region = 0; region < ownerIds.size(); region++) {
+            if (ownerIds.get(region).equals(ownerId)) {
+                mask.set(region);
+            }
+        }
+        return mask;
+    }
+
+    // The events of a region primary's stream that still hold here: the ones in its current
+    // regions, as it may have lost some since, and not about a player known to be elsewhere
+    private GameDelta.CellFilter regionFilter(String ownerId) {
+        BitSet mask = regionsOf(ownerId);
+        return (pid, x, y) -> inRegions(mask, x, y) && (pid == null || !knownElsewhere(pid, mask));
+    }
+
+    // Whether what the primary of the given regions says about a player is out of date here:
+    // it stands in a region we own, or it is us and we stand outside of the given regions.
+    // Whoever holds the region a player stands in knows best, and we know where we are
+    private boolean knownElsewhere(String pid, BitSet mask) {
+        int[] pos = playerPositions.get(pid);
+        if (pos == null) {
+            return false;
+        }
+        return pid.equals(playerId) ? !inRegions(mask, pos) : ownsCell(pos[0], pos[1]);
+    }
+
+    // Replace what we know of the given regions with what the state holds of them.
+    // Must be called with stateLock held
+    private void mergeRegions(BitSet mask, GameState state) {
+        for (Iterator<Map.Entry<String, int[]>> it = playerPositions.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<String, int[]> entry = it.next();
+            int[] pos = entry.getValue();
+            if (entry.getKey().equals(playerId) && !inRegions(mask, state.playerPositions.get(playerId))) {
+                // Like in updateGameState, our move may not have made it there yet
+                continue;
+            }
+            if (mask.get(regions.regionOf(pos[0], pos[1]))) {
+                it.remove();
+                occupancy.removePlayer(entry.getKey(), pos[0], pos[1]);
+            }
+        }
+        treasurePositions.removeIf(treasure -> {
+            if (!mask.get(regions.regionOf(treasure[0], treasure[1]))) {
+                return false;
+            }
+            occupancy.removeTreasure(treasure[0], treasure[1]);
+            return true;
+        });
+        for (Map.Entry<String, int[]> entry : state.playerPositions.entrySet()) {
+            String pid = entry.getKey();
+            int[] pos = entry.getValue();
+            if (!inRegions(mask, pos) || knownElsewhere(pid, mask)) {
+                continue;
+            }
+            int[] oldPos = playerPositions.put(pid, pos);
+            occupancy.movePlayer(pid, oldPos, pos[0], pos[1]);
+            Integer score = state.playerScores.get(pid);
+            if (score != null) {
+                playerScores.merge(pid, score, Math::max);
+            }
+        }
+        for (int[] treasure : state.treasurePositions) {
+            if (occupancy.isInside(treasure[0], treasure[1]) && mask.get(regions.regionOf(treasure[0], treasure[1]))
+                    && !occupancy.hasTreasure(treasure[0], treasure[1])) {
+                treasurePositions.add(treasure);
+                occupancy.addTreasure(treasure[0], treasure[1]);
+            }
+        }
+        stateChanged();
+    }
+
+    private boolean inRegions(BitSet mask, int[] pos) {
+        return pos != null && inRegions(mask, pos[0], pos[1]);
+    }
+
+    private boolean inRegions(BitSet mask, int x, int y) {
+        return occupancy.isInside(x, y) && mask.get(regions.regionOf(x, y));
+    }
+
+    // Bring every region we own up to its share of the K treasures.
+    // Must be called with stateLock held
+    private void topUpTreasures(GameDelta delta) {
+        int[] counts = new int[regions.size()];
+        for (int[] treasure : treasurePositions) {
+            counts[regions.regionOf(treasure[0], treasure[1])]++;
+        }
+        List<String> ownerIds = regionOwnerIds;
+        for (int region = 0; region < counts.length; region++) {
+            if (region < ownerIds.size() && ownerIds.get(region).equals(playerId)) {
+                spawnTreasures(region, regions.treasuresOf(region, K) - counts[region], delta);
+            }
+        }
+    }
+
+    // Put treasures on random free cells of a region.
+    // Must be called with stateLock held
+    private void spawnTreasures(int region, int count, GameDelta delta) {
+        for (int i = 0; i < count; i++) {
+            int cell = -1;
+            for (int attempt = 0; attempt < 64 && cell < 0; attempt++) {
+                int candidate = regions.randomCell(region, random);
+                if (occupancy.isEmpty(GameUtils.getX(candidate, GRID_SIZE), GameUtils.getY(candidate, GRID_SIZE))) {
+                    cell = candidate;
+                }
+            }
+            if (cell < 0) {
+                // The region is (nearly) full
+                return;
+            }
+            int locX = GameUtils.getX(cell, GRID_SIZE);
+            int locY = GameUtils.getY(cell, GRID_SIZE);
+            treasurePositions.add(newTreasure(locX, locY));
+            occupancy.addTreasure(locX, locY);
+            delta.treasureSpawned(locX, locY);
+        }
+    }
+
+    // Catch up with every region primary, e.g. after joining
+    private void syncRegions() {
+        Player[] owners = regionOwners;
+        List<String> ownerIds = regionOwnerIds;
+        Set<String> synced = new HashSet<>();
+        for (int region = 0; region < owners.length; region++) {
+            String ownerId = ownerIds.get(region);
+            if (owners[region] == null || owners[region] == this || !synced.add(ownerId)) {
+                continue;
+            }
+            try {
+                applyStateUpdate(owners[region], owners[region].getStateUpdate(this, ownerVersions.getOrDefault(ownerId, -1L)));
+            } catch (RemoteException e) {
+                Log.warn("Error syncing with the primary of region " + region + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // Apply the state stream of one region primary, which only covers its own regions
+    private void applyRegionUpdate(Player source, String sourceId, StateUpdate update) throws RemoteException {
+        synchronized (stateLock) {
+            long known = ownerVersions.getOrDefault(sourceId, -1L);
+            if (update.snapshot != null) {
+                if (update.version >= known) {
+                    mergeRegions(regionsOf(sourceId), update.snapshot);
+                    ownerVersions.put(sourceId, update.version);
+                }
+                return;
+            }
+            boolean gap = false;
+            GameDelta.CellFilter cells = regionFilter(sourceId);
+            for (GameDelta delta : update.deltas) {
+                if (delta.getVersion() <= known) {
+                    continue;
+                }
+                if (delta.getVersion() != known + 1) {
+                    gap = true;
+                    break;
+                }
+                delta.applyTo(playerPositions, treasurePositions, playerScores, occupancy, cells);
+                known = delta.getVersion();
+            }
+            ownerVersions.put(sourceId, known);
+            stateChanged();
+            if (!gap) {
+                return;
+            }
+        }
+        GameState state = source.getGameState(this);
+        synchronized (stateLock) {
+            mergeRegions(regionsOf(sourceId), state);
+            ownerVersions.put(sourceId, state.version);
+        }
+    }
+
+    // The move leaves the regions we own: the primary of the target cell validates it and takes
+    // the player over, then the player is handed off in our stream.
+    // Returns the committed delta, or null if the move was rejected
+    private GameDelta handOff(String playerId, int playerX, int playerY) {
+        int[] from;
+        int score;
+        synchronized (stateLock) {
+            from = playerPositions.get(playerId);
+            if (from == null || !ownsCell(from[0], from[1]) || !occupancy.isInside(playerX, playerY)) {
+                return null;
+            }
+            score = playerScores.getOrDefault(playerId, 0);
+        }
+        // Not holding the lock, the other primary may be handing a player off to us right now
+        Player owner = ownerAt(playerX, playerY);
+        try {
+            if (owner == null || !owner.acceptHandOff(playerId, playerX, playerY, score)) {
+                return null;
             }
         } catch (RemoteException e) {
-            System.err.println("Error electing primary server: " + e.getMessage());
+            Log.warn("Error handing player " + playerId + " off to the primary of " + playerX + "," + playerY + ": " + e.getMessage());
+            return null;
         }
+        synchronized (stateLock) {
+            GameDelta delta = new GameDelta();
+            delta.playerHandedOff(playerId, from[0], from[1]);
+            // Our copy of the player in the other region, until that primary's stream says otherwise
+            int[] oldPos = playerPositions.put(playerId, new int[] {playerX, playerY});
+            occupancy.movePlayer(playerId, oldPos, playerX, playerY);
+            if (Log.DEBUG) Log.debug("Player " + playerId + " handed off to the primary of " + playerX + "," + playerY);
+            return commitDelta(delta);
+        }
+    }
+
+    @Override
+    public boolean acceptHandOff(String playerId, int playerX, int playerY, int score) {
+        GameDelta committed;
+        synchronized (stateLock) {
+            if (!isSharded() || !ownsCell(playerX, playerY)) {
+                return false;
+            }
+            String occupant = occupancy.getPlayerAt(playerX, playerY);
+            if (occupant != null && !occupant.equals(playerId)) {
+                return false;
+            }
+            GameDelta delta = new GameDelta();
+            // What we knew of the player in the region it comes from is out of date,
+            // and its score comes along
+            int[] stale = playerPositions.remove(playerId);
+            if (stale != null) {
+                occupancy.removePlayer(playerId, stale[0], stale[1]);
+            }
+            int newScore = Math.max(score, playerScores.getOrDefault(playerId, 0));
+            playerScores.put(playerId, newScore);
+            delta.scoreChanged(playerId, newScore);
+            applyMoveLocked(playerId, playerX, playerY, delta);
+            committed = commitDelta(delta);
+        }
+        publishCommitted(committed);
+        return true;
     }
 
     @Override
     public void promoteBackupToPrimary() throws RemoteException {
-        System.out.println("Player " + playerId + " is promoting backup to primary");
+        Log.info("Player " + playerId + " is promoting backup to primary");
         if (backupServer != null) {
             primaryServer = backupServer;
             backupServer = null;
@@ -405,11 +926,15 @@ public class Game extends UnicastRemoteObject implements Player {
     @Override
     public void demoteToBackup() {
         serverRole = ServerRole.BACKUP;
+        replication.stop();
+        closeStateLog();
     }
 
     @Override
     public void demoteToPlayer() {
         serverRole = ServerRole.PLAYER;
+        replication.stop();
+        closeStateLog();
     }
 
     @Override
@@ -418,35 +943,84 @@ public class Game extends UnicastRemoteObject implements Player {
     }
 
     private Player getPlayerById(String id) {
+        Player known = members.get(id);
+        if (known != null) {
+            return known;
+        }
         for (Player player : playerList) {
             try {
-                if (player.getPlayerId().equals(id)) {
+                if (idOf(player).equals(id)) {
                     return player;
                 }
             } catch (RemoteException e) {
-                System.err.println("Error getting player ID: " + e.getMessage());
+                Log.warn("Error getting player ID: " + e.getMessage());
             }
         }
         return null;
     }
 
 
+    // Join the session of -Dgame.session, started with the Tracker's maze if there is none yet,
+    // or the first one the Tracker has room in
     private boolean registerToTracker() {
         try {
             TrackerInterface tracker = getTracker();
-            
-            // Register the current player to tracker
-            playerList = tracker.getPlayerList();
-            GRID_SIZE = tracker.getN();
-            K = tracker.getK();
-            return tracker.registerPlayer(this);
+            String requested = System.getProperty("game.session");
+            // A session picked for us can fill up before we get in, then ask for another one
+            for (int attempt = 0; attempt < JOIN_ATTEMPTS; attempt++) {
+                GameSession.Info session = tracker.findSession(requested);
+                if (session == null) {
+                    // Somebody may start it at the same time, then join theirs
+                    session = tracker.createSession(requested, tracker.getN(), tracker.getK());
+                    if (session == null) {
+                        continue;
+                    }
+                }
+                Log.info("Player " + playerId + " is joining session " + session);
+                sessionId = session.id;
+                // Register the current player to tracker
+                playerList = tracker.getPlayerList(sessionId);
+                GRID_SIZE = session.n;
+                K = session.k;
+                regions = RegionMap.create(GRID_SIZE);
+                // The election triggered by the registration may already push game state to us
+                occupancy = new OccupancyGrid(GRID_SIZE, AreaOfInterest.RADIUS);
+                if (tracker.joinSession(sessionId, self)) {
+                    return true;
+                }
+                GameSession.Info joined = tracker.findSession(sessionId);
+                if (joined != null && (requested != null || !joined.isFull())) {
+                    // Not for lack of room, the id is taken
+                    return false;
+                }
+            }
         } catch (Exception e) {
-            System.err.println("Client exception: " + e.toString());
-            e.printStackTrace();
+            Log.error("Client exception", e);
         }
         return false;
     }
+
+    public String getSessionId() {
+        return sessionId;
+    }
     
+    // Wait until an election has told this player its role and the primary server
+    private boolean awaitElection(long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (serverRole == null || getPrimaryServer() == null) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
     public Player getPrimaryServer() {
         if (serverRole == ServerRole.PRIMARY) {
             return this;
@@ -456,36 +1030,109 @@ public class Game extends UnicastRemoteObject implements Player {
     }
 
     private void updatePositionToPrimaryServer(int x, int y) {
+        if (isSharded()) {
+            updatePositionToRegionPrimary(x, y);
+            return;
+        }
         try {
             Player primaryServer = getPrimaryServer();
-            GameState gameState = primaryServer.updateGamebyNewMove(this, x, y);
+            StateUpdate update = primaryServer.updateGamebyNewMove(this, x, y, stateVersion);
             // Update the local game state
-            updateGameState(gameState);
+            applyStateUpdate(primaryServer, update);
+        } catch (Exception e) {
+            Log.error("Client exception", e);
+        }
+    }
+
+    // Send the move to the primary of the region we stand in (of the target cell when joining),
+    // which hands us off if the move leaves its regions
+    private void updatePositionToRegionPrimary(int x, int y) {
+        int[] pos;
+        synchronized (stateLock) {
+            pos = playerPositions.get(playerId);
+        }
+        String ownerId = pos != null ? ownerIdAt(pos[0], pos[1]) : ownerIdAt(x, y);
+        Player owner = pos != null ? ownerAt(pos[0], pos[1]) : ownerAt(x, y);
+        if (owner == null) {
+            Log.warn("No primary owns the region of " + (pos != null ? pos[0] + "," + pos[1] : x + "," + y) + " yet");
+            return;
+        }
+        try {
+            applyStateUpdate(owner, owner.updateGamebyNewMove(this, x, y, ownerVersions.getOrDefault(ownerId, -1L)));
+            String targetOwnerId = ownerIdAt(x, y);
+            synchronized (stateLock) {
+                pos = playerPositions.get(playerId);
+            }
+            if ((pos == null || pos[0] != x || pos[1] != y) && targetOwnerId != null && !targetOwnerId.equals(ownerId)) {
+                // Handed off (or not): the primary of the target region knows where we are now
+                Player targetOwner = ownerAt(x, y);
+                applyStateUpdate(targetOwner, targetOwner.getStateUpdate(this, ownerVersions.getOrDefault(targetOwnerId, -1L)));
+            }
         } catch (Exception e) {
-            System.err.println("Client exception: " + e.toString());
-            e.printStackTrace();
+            Log.error("Client exception", e);
+        }
+    }
+
+    // Number of committed deltas the backup server has not acknowledged yet
+    public long getReplicationLag() {
+        return replication.getLag();
+    }
+
+    // Catch up with the primary using the deltas in the update,
+    // falling back to a full snapshot if some versions are missing
+    private void applyStateUpdate(Player source, StateUpdate update) throws RemoteException {
+        if (source == this || update == null) {
+            // The primary's own state is always up to date
+            return;
+        }
+        String sourceId = isSharded() ? members.getId(source) : null;
+        if (sourceId != null) {
+            applyRegionUpdate(source, sourceId, update);
+        } else if (update.view) {
+            applyView(update);
+        } else if (update.snapshot != null) {
+            updateGameState(update.snapshot);
+        } else if (!applyGameDeltas(update.deltas)) {
+            updateGameState(source.getGameState(this));
+        }
+    }
+
+    // Apply a state update that only covers our area of interest
+    private void applyView(StateUpdate update) {
+        if (update.version < stateVersion) {
+            // Overtaken by a newer reply
+            return;
+        }
+        if (update.snapshot != null) {
+            updateGameState(update.snapshot);
+            partialState = true;
+            return;
+        }
+        synchronized (stateLock) {
+            for (GameDelta delta : update.deltas) {
+                delta.applyTo(playerPositions, treasurePositions, playerScores, occupancy);
+            }
+            stateVersion = update.version;
+            partialState = true;
+            stateChanged();
         }
     }
 
-    // if everything is ok, return value will be NULL;
-    // if someone died, return value will be the player reference
-    public Player heartBeat() {
+    // Returns every player that stopped responding, empty if everything is ok
+    public List<Player> heartBeat() {
         // heartbeat must be done by primary server
         // other thread only return all well
-        if (!serverRole.equals(ServerRole.PRIMARY)) {
-            return null;
+        if (serverRole != ServerRole.PRIMARY) {
+            return Collections.emptyList();
         }
-        for (Player player: playerList) {
-            try {
-                var msg = player.ping();
-                assert msg.equals("pong");
-            } catch (RemoteException e) {
-                System.err.println("Error setting player list: " + e.getMessage());
-                return player;
-            }
+        // All the players are pinged at once, each with its own deadline
+        List<Player> deadPlayers = failureDetector.probe(new ArrayList<>(playerList));
+        if (deadPlayers.isEmpty()) {
+            if (Log.DEBUG) Log.debug("all normal nodes well");
+        } else {
+            Log.warn(deadPlayers.size() + " player(s) not responding");
         }
-        System.out.println("all normal nodes well");
-        return null;
+        return deadPlayers;
     }
 
     // watchdog for backup
@@ -493,26 +1140,68 @@ public class Game extends UnicastRemoteObject implements Player {
     public boolean serverAlive() {
         // watchdog must be done by backup server
         // other thread only return all things normal
-        if (!serverRole.equals(ServerRole.PRIMARY) &&
-            !serverRole.equals(ServerRole.BACKUP)) {
+        if (serverRole != ServerRole.PRIMARY && serverRole != ServerRole.BACKUP) {
             return true;
         }
-        try {
-            if (serverRole.equals(ServerRole.PRIMARY) && backupServer != null) {
-                var msg = backupServer.ping();
-                assert msg.equals("pong");
-            } else if (serverRole.equals(ServerRole.BACKUP) && primaryServer != null) {
-                var msg = primaryServer.ping();
-                assert msg.equals("pong");
-            }
-        } catch (RemoteException e) {
-            System.err.println("Error setting player list: " + e.getMessage());
+        Player server = serverRole == ServerRole.PRIMARY ? backupServer : primaryServer;
+        if (server == null || server == this) {
+            return true;
+        }
+        if (!failureDetector.isAlive(server)) {
             return false;
         }
-        System.out.println("primary nodes well");
+        if (Log.DEBUG) Log.debug("primary nodes well");
         return true;
     }
 
+    // Run heartBeat() and serverAlive() periodically on a dedicated thread,
+    // so a slow peer never blocks the Event Dispatch Thread
+    public void startFailureDetector() {
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "failure-detector-" + playerId);
+            thread.setDaemon(true);
+            return thread;
+        });
+        startFailureDetector(timer);
+        failureDetectorTimer = timer;
+    }
+
+    // Run the failure detector on a timer shared with other players hosted in the same JVM
+    public void startFailureDetector(ScheduledExecutorService timer) {
+        long interval = failureDetector.getIntervalMillis();
+        failureDetectorTask = timer.scheduleWithFixedDelay(() -> {
+            try {
+                List<Player> deadPlayers = heartBeat();
+                if (!deadPlayers.isEmpty()) {
+                    Log.info("normal node died, begin to process");
+                    regularPlayerDied(deadPlayers);
+                }
+                if (!serverAlive()) {
+                    Log.info("primary node died, begin to process");
+                    serverDied();
+                }
+            } catch (Exception e) {
+                // Keep the detector running whatever happens in one round
+                Log.error("Failure detector round failed", e);
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public void stopFailureDetector() {
+        if (failureDetectorTask != null) {
+            failureDetectorTask.cancel(false);
+        }
+        // Only shut down the timer if it is our own
+        if (failureDetectorTimer != null) {
+            failureDetectorTimer.shutdownNow();
+        }
+        failureDetector.shutdown();
+    }
+
+    public FailureDetector getFailureDetector() {
+        return failureDetector;
+    }
+
     // ===== Primary Server methods start =====
     @Override
     public String getPlayerId() {
@@ -526,278 +1215,682 @@ public class Game extends UnicastRemoteObject implements Player {
 
     @Override
     public GameState getGameState(Player requester) {
-        System.out.println("Current game state:");
-        System.out.println("Player list: " + playerList.size());
-        System.out.println("Player positions: " + playerPositions.size());
-        System.out.println("Treasure positions: " + treasurePositions.size());
-        System.out.println("Is game initialized: " + isGameInitialized);
-        System.out.println("Player scores: " + playerScores.size());
-        System.out.println("Start time: " + startTime);
-        return new GameState(isGameInitialized, playerList, playerPositions,
-                             treasurePositions, playerScores, startTime);
+        if (Log.DEBUG) {
+            Log.debug("Current game state: " + playerList.size() + " players, " + playerPositions.size() + " positions, "
+                + treasurePositions.size() + " treasures, " + playerScores.size() + " scores, initialized "
+                + isGameInitialized + ", started " + startTime);
+        }
+        return currentSnapshot().toGameState();
     }
 
     @Override
-    public boolean isGameInitialized() {
-        return isGameInitialized;
+    public StateUpdate getStateUpdate(Player requester, long knownVersion) {
+        String viewerId = viewerOf(requester);
+        synchronized (stateLock) {
+            if (viewerId != null) {
+                return getViewUpdate(viewerId, knownVersion);
+            }
+            StateUpdate reply = replies.get();
+            if (!deltaHistory.since(knownVersion, reply.deltas)) {
+                // The requester is too far behind (or on another primary's term), send everything
+                return new StateUpdate(stateVersion, null, snapshotGameState());
+            }
+            reply.version = stateVersion;
+            return reply;
+        }
     }
 
-    @Override
-    public void updateGameState(GameState gameState) {
-        // Update current player's game state from the server
-        System.out.println("Updating game state");
-        System.out.println("Player list: " + gameState.playerList.size());
-        System.out.println("Player positions: " + gameState.playerPositions.size());
-        System.out.println("Treasure positions: " + gameState.treasurePositions.size());
-        System.out.println("Is game initialized: " + gameState.isGameInitialized);
-        System.out.println("Player scores: " + gameState.playerScores.size());
-        System.out.println("Start time: " + gameState.startTime);
-        playerList = gameState.playerList;
-        int[] currentPlayerPosition = playerPositions.get(playerId);
-        playerPositions = gameState.playerPositions;
-        // There is a chance that the current player position is not updated in the shared player positions
-        // So we need to add the current player position to the player positions manually
-        if (currentPlayerPosition != null && !playerPositions.containsKey(playerId)) {
-            System.out.println("Add the current player position which is not included in the shared player positions");
-            playerPositions.put(playerId, currentPlayerPosition);
-        }
-        treasurePositions = gameState.treasurePositions;
-        isGameInitialized = gameState.isGameInitialized;
-        playerScores = gameState.playerScores;
-        startTime = gameState.startTime;
+    // The id of the player to send only its area of interest to, null if it gets the whole state:
+    // when there is no area of interest, this isn't the primary, or the requester is the backup,
+    // which has to hold everything to take over
+    private String viewerOf(Player requester) {
+        if (interest == null || requester == this || serverRole != ServerRole.PRIMARY || isSharded()) {
+            return null;
+        }
+        String id = members.getId(requester);
+        Player backup = backupServer;
+        if (id == null || (backup != null && backup != this && id.equals(members.getId(backup)))) {
+            return null;
+        }
+        return id;
     }
 
-    @Override
-    public GameState updateGamebyNewMove(Player player, int playerX, int playerY) {
-        // Primary server ONLY can call this method
-        // Update the game state by a new move from a player
-        try {
-            System.out.println("Received move from player " + player.getPlayerId() + ": " + playerX + " " + playerY);
+    // Must be called with stateLock held
+    private StateUpdate getViewUpdate(String viewerId, long knownVersion) {
+        int[] position = playerPositions.get(viewerId);
+        GameDelta changes = interest.changes(viewerId, knownVersion, stateVersion, position, occupancy, playerScores);
+        StateUpdate update = changes != null
+            ? new StateUpdate(stateVersion, Collections.singletonList(changes), null)
+            : new StateUpdate(stateVersion, null, interest.snapshot(viewerId, liveGameState(), position, occupancy));
+        update.view = true;
+        return update;
+    }
 
-            var playerId = player.getPlayerId();
+    // Must be called with stateLock held
+    private GameState snapshotGameState() {
+        return takeSnapshot().toGameState();
+    }
 
-            // Check if the new position is already occupied by another player
-            for (String otherPlayerId : playerPositions.keySet()) {
-                if (!otherPlayerId.equals(playerId)) {
-                    int[] otherPlayerPos = playerPositions.get(otherPlayerId);
-                    if (otherPlayerPos[0] == playerX && otherPlayerPos[1] == playerY) {
-                        System.out.println("Player " + playerId + " cannot move to " + playerX + "," + playerY + " as it's occupied by " + otherPlayerId);
-                        return new GameState(isGameInitialized, playerList, playerPositions, treasurePositions, playerScores, startTime);
+    // The live collections in a GameState, for reading them right away with stateLock held
+    private GameState liveGameState() {
+        ArrayList<Player> players = new ArrayList<>(playerList);
+        ArrayList<String> ids = new ArrayList<>(players.size());
+        for (Player player : players) {
+            ids.add(player == this ? playerId : members.getId(player));
+        }
+        return new GameState(isGameInitialized, players, ids, playerPositions,
+                             treasurePositions, playerScores, startTime, stateVersion);
+    }
+
+    // The snapshot of the current state. Only takes the lock if nobody has read this version yet
+    private StateSnapshot currentSnapshot() {
+        StateSnapshot current = snapshot;
+        if (current != null && current.isOf(stateVersion, playerList, isGameInitialized, startTime)) {
+            return current;
+        }
+        synchronized (stateLock) {
+            return takeSnapshot();
+        }
+    }
+
+    // Must be called with stateLock held
+    private StateSnapshot takeSnapshot() {
+        StateSnapshot current = snapshot;
+        ArrayList<Player> players = playerList;
+        if (current != null && current.isOf(stateVersion, players, isGameInitialized, startTime)) {
+            return current;
+        }
+        // Only the ids are sent, the stub of a player is sent only if its id isn't known here
+        ArrayList<String> ids = new ArrayList<>(players.size());
+        for (Player player : players) {
+            ids.add(player == this ? playerId : members.getId(player));
+        }
+        current = new StateSnapshot(isGameInitialized, players, ids, slots, treasurePositions,
+                                    startTime, stateVersion);
+        snapshot = current;
+        snapshotsTaken++;
+        return current;
+    }
+
+    // Drop the published snapshot after a change that doesn't bump the state version.
+    // Must be called with stateLock held
+    private void stateChanged() {
+        snapshot = null;
+    }
+
+    // Whether we persist our state, only the primary does and only with -Dgame.wal.dir set
+    public boolean isStateLogOpen() {
+        synchronized (stateLock) {
+            return stateLog != null;
+        }
+    }
+
+    // Number of snapshots taken so far, at most one per version
+    public long getSnapshotsTaken() {
+        return snapshotsTaken;
+    }
+
+    // The players of a received game state: the stubs it was sent with, or the ones known
+    // here for its ids. The ids not known here are looked up on the primary
+    private ArrayList<Player> resolvePlayers(GameState gameState) {
+        List<String> unknownIds = new ArrayList<>();
+        for (int i = 0; i < gameState.playerIds.size(); i++) {
+            if (knownPlayer(gameState, i) == null) {
+                unknownIds.add(gameState.playerIds.get(i));
+            }
+        }
+        Player primary = primaryServer;
+        if (!unknownIds.isEmpty() && primary != null && primary != this) {
+            try {
+                ArrayList<Player> found = primary.getPlayers(unknownIds);
+                for (int i = 0; i < unknownIds.size(); i++) {
+                    if (found.get(i) != null) {
+                        members.put(unknownIds.get(i), found.get(i));
                     }
                 }
+            } catch (RemoteException e) {
+                Log.warn("Error getting players from the primary server: " + e.getMessage());
             }
+        }
 
-            // Update player position
-            playerPositions.put(playerId, new int[] {playerX, playerY});
-            System.out.println("Player " + playerId + " moved to " + playerX + "," + playerY);
+        ArrayList<Player> players = new ArrayList<>(gameState.playerIds.size());
+        for (int i = 0; i < gameState.playerIds.size(); i++) {
+            Player player = knownPlayer(gameState, i);
+            if (player != null) {
+                players.add(player);
+            } else {
+                Log.warn("Could not find player with ID " + gameState.playerIds.get(i));
+            }
+        }
+        return players;
+    }
 
-            // Check if player hit a treasure
-            for (int[] treasure : treasurePositions) {
-                if (treasure[0] == playerX && treasure[1] == playerY) {
-                    treasurePositions.remove(treasure);
-                    int currentScore = playerScores.getOrDefault(playerId, 0);
-                    playerScores.put(playerId, currentScore + 1);
-                    System.out.println("Player " + playerId + " collected a treasure at pos " + playerX + "," + playerY + ". New score: " + currentScore + 1);
-                    break;
-                }
+    private Player knownPlayer(GameState gameState, int i) {
+        Player player = gameState.playerList.get(i);
+        if (player != null) {
+            return player;
+        }
+        String id = gameState.playerIds.get(i);
+        player = members.get(id);
+        return player == null && id.equals(playerId) ? this : player;
+    }
+
+    @Override
+    public ArrayList<Player> getPlayers(List<String> playerIds) {
+        ArrayList<Player> players = new ArrayList<>(playerIds.size());
+        for (String id : playerIds) {
+            Player player = members.get(id);
+            players.add(player == null && id.equals(playerId) ? this : player);
+        }
+        return players;
+    }
+
+    @Override
+    public boolean isGameInitialized() {
+        return isGameInitialized;
+    }
+
+    @Override
+    public void updateGameState(GameState gameState) {
+        // Update current player's game state from the server
+        if (Log.DEBUG) {
+            Log.debug("Updating game state: " + gameState.playerList.size() + " players, " + gameState.playerPositions.size()
+                + " positions, " + gameState.treasurePositions.size() + " treasures, " + gameState.playerScores.size()
+                + " scores, initialized " + gameState.isGameInitialized + ", started " + gameState.startTime);
+        }
+        playerList = resolvePlayers(gameState);
+        synchronized (stateLock) {
+            partialState = false;
+            int[] currentPlayerPosition = playerPositions.get(playerId);
+            slots.clear();
+            playerPositions.putAll(gameState.playerPositions);
+            // There is a chance that the current player position is not updated in the shared player positions
+            // So we need to add the current player position to the player positions manually
+            if (currentPlayerPosition != null && !playerPositions.containsKey(playerId)) {
+                Log.info("Add the current player position which is not included in the shared player positions");
+                playerPositions.put(playerId, currentPlayerPosition);
             }
-    
-            // Renew the treasure positions
-            int cnt = treasurePositions.size();
-            if (cnt != K && cnt != K - 1) {
-                System.out.println("ERROR");
-                for (int i = 0; i < 10; i++) {
-                    Toolkit.getDefaultToolkit().beep();
-                }
+            // Copied, the arrays of collected treasures are reused
+            treasurePositions = new ArrayList<>(gameState.treasurePositions.size());
+            for (int[] treasure : gameState.treasurePositions) {
+                treasurePositions.add(new int[] {treasure[0], treasure[1]});
             }
-    
-            if (cnt < K) {
-                // Scan the whole grid to find empty positions
-                ArrayList<Location> empty = new ArrayList<>();
-                for (int i = 0; i < GRID_SIZE; i++) {
-                    for (int j = 0; j < GRID_SIZE; j++) {
-                        if (arr[i][j] == 0) {
-                            empty.add(new Location(i, j));
-                        }
-                    }
+            collectedTreasure = null;
+            playerScores.putAll(gameState.playerScores);
+            occupancy.rebuild(playerPositions, treasurePositions);
+
+            if (serverRole == ServerRole.PRIMARY) {
+                // The state of the primary was replaced as a whole, so the deltas the backup
+                // and the players have seen no longer lead here: move them onto a snapshot
+                stateVersion = DeltaHistory.nextTerm(Math.max(stateVersion, gameState.version));
+            } else {
+                stateVersion = gameState.version;
+            }
+            deltaHistory.reset(stateVersion);
+            stateChanged();
+        }
+        isGameInitialized = gameState.isGameInitialized;
+        startTime = gameState.startTime;
+    }
+
+    @Override
+    public boolean applyGameDeltas(List<GameDelta> deltas) {
+        synchronized (stateLock) {
+            if (partialState) {
+                Log.info("Only the area of interest is known here, a full snapshot is needed");
+                return false;
+            }
+            // With regions, a backup only keeps up with the regions of its primary
+            GameDelta.CellFilter cells = isSharded() && primaryServer != null ? regionFilter(members.getId(primaryServer)) : null;
+            for (GameDelta delta : deltas) {
+                if (delta.getVersion() <= stateVersion) {
+                    // Already applied
+                    continue;
                 }
-                // Randomly select an empty position to add a new treasure
-                Collections.shuffle(empty, new Random());
-                while (treasurePositions.size() < K) {
-                    var loc = empty.remove(0);
-                    var locX = loc.getX();
-                    var locY = loc.getY();
-                    treasurePositions.add(new int[] {locX, locY});
-                    if (empty.isEmpty()) break;
+                if (delta.getVersion() != stateVersion + 1) {
+                    Log.info("Missing game state versions " + (stateVersion + 1) + " to " + (delta.getVersion() - 1));
+                    return false;
                 }
+                delta.applyTo(playerPositions, treasurePositions, playerScores, occupancy, cells);
+                stateVersion = delta.getVersion();
+                deltaHistory.append(delta);
             }
+            return true;
+        }
+    }
 
-            GameState newGameState = new GameState(isGameInitialized, playerList, playerPositions,
-                                                  treasurePositions, playerScores, startTime);
+    @Override
+    public GameState updateGamebyNewMove(Player player, int playerX, int playerY) {
+        // Primary server ONLY can call this method
+        // Update the game state by a new move from a player
+        try {
+            applyMoveAndReplicate(idOf(player), playerX, playerY);
+            return currentSnapshot().toGameState();
+        } catch (RemoteException e) {
+            Log.error("Error applying move", e);
+        }
+        return null;
+    }
 
-            // Update the game state to backup server
-            if (backupServer != null) {
-                try {
-                    backupServer.updateGameState(newGameState);
-                } catch (RemoteException e) {
-                    System.err.println("Error updating backup server: " + e.getMessage());
+    @Override
+    public StateUpdate updateGamebyNewMove(Player player, int playerX, int playerY, long knownVersion) {
+        // Primary server ONLY can call this method
+        // Same as above, but only reply with what changed since the mover last synced
+        try {
+            applyMoveAndReplicate(idOf(player), playerX, playerY);
+            return getStateUpdate(player, knownVersion);
+        } catch (RemoteException e) {
+            Log.error("Error applying move", e);
+        }
+        return null;
+    }
+
+    @Override
+    public StateUpdate updateGamebyNewMoves(Player player, char[] directions, long knownVersion) {
+        // Primary server ONLY can call this method
+        // Apply all the directions of an input line at once and reply with one state update
+        try {
+            String pid = idOf(player);
+            if (Log.DEBUG) Log.debug("Received " + directions.length + " moves from player " + pid + ": " + new String(directions));
+            publishCommitted(applyMoves(pid, directions));
+            return getStateUpdate(player, knownVersion);
+        } catch (RemoteException e) {
+            Log.error("Error applying move", e);
+        }
+        return null;
+    }
+
+    private void applyMoveAndReplicate(String playerId, int playerX, int playerY) {
+        if (Log.DEBUG) Log.debug("Received move from player " + playerId + ": " + playerX + " " + playerY);
+        if (isSharded() && occupancy.isInside(playerX, playerY) && !ownsCell(playerX, playerY)) {
+            publishCommitted(handOff(playerId, playerX, playerY));
+            return;
+        }
+        publishCommitted(applyMove(playerId, playerX, playerY));
+    }
+
+    // Replicate a committed change and show it on the primary's GUI
+    private void publishCommitted(GameDelta delta) {
+        if (delta == null) {
+            return;
+        }
+
+        // Wait for the backup as far as the replication mode requires
+        replication.awaitDurability(delta);
+
+        // Update the GUI on the Event Dispatch Thread
+        requestRender();
+    }
+
+    // Validate and apply a move to the primary's state, in turn with the moves of the other players.
+    // Returns the committed delta of its batch, or null if nothing in the batch changed
+    private GameDelta applyMove(String playerId, int playerX, int playerY) {
+        return sequencer.move(playerId, playerX, playerY);
+    }
+
+    // Apply a sequence of directions from the player's current position as one atomic change.
+    // Steps into a wall or another player are skipped, like a single rejected move.
+    // Returns the committed delta of its batch, or null if nothing changed
+    private GameDelta applyMoves(String playerId, char[] directions) {
+        return sequencer.moves(playerId, directions);
+    }
+
+    // The moves of a batch of the sequencer, with stateLock held
+    private class SequencedMoves implements MoveSequencer.Writer {
+        @Override
+        public void apply(String playerId, int playerX, int playerY, char[] directions, GameDelta delta) {
+            if (directions == null) {
+                applyMoveLocked(playerId, playerX, playerY, delta);
+                return;
+            }
+            for (char direction : directions) {
+                int slot = slots.slotOf(playerId);
+                if (slot < 0 || !slots.hasPosition(slot) || !Direction.isMove(direction)) {
+                    continue;
                 }
+                applyMoveLocked(playerId, slots.getX(slot) + Direction.getDx(direction),
+                                slots.getY(slot) + Direction.getDy(direction), delta);
             }
+        }
 
-            // Update the GUI on the Event Dispatch Thread
-            System.out.println("Render GUI for primary server");
-            SwingUtilities.invokeLater(() -> {
-                renderGUI(GRID_SIZE);
-            });
-            return newGameState;
-        } catch (RemoteException e) {
-            e.printStackTrace();
+        @Override
+        public GameDelta commit(GameDelta delta) {
+            return commitDelta(delta);
+        }
+    }
+
+    // Validate one move and record its events into the delta.
+    // Must be called with stateLock held
+    private boolean applyMoveLocked(String playerId, int playerX, int playerY, GameDelta delta) {
+        // Reject moves outside the maze
+        if (!occupancy.isInside(playerX, playerY)) {
+            if (Log.DEBUG) Log.debug("Player " + playerId + " cannot move to " + playerX + "," + playerY + " as it's outside the maze");
+            return false;
+        }
+
+        // With regions, only moves within the regions of this primary, handOff() deals with the others
+        if (isSharded()) {
+            int slot = slots.slotOf(playerId);
+            boolean placed = slot >= 0 && slots.hasPosition(slot);
+            if ((placed && !ownsCell(slots.getX(slot), slots.getY(slot))) || !ownsCell(playerX, playerY)) {
+                if (Log.DEBUG) Log.debug("Player " + playerId + " cannot move to " + playerX + "," + playerY + " from outside our regions");
+                return false;
+            }
+        }
+
+        // Check if the new position is already occupied by another player
+        String occupant = occupancy.getPlayerAt(playerX, playerY);
+        if (occupant != null && !occupant.equals(playerId)) {
+            if (Log.DEBUG) Log.debug("Player " + playerId + " cannot move to " + playerX + "," + playerY + " as it's occupied by " + occupant);
+            return false;
+        }
+
+        // Update player position, in place in its slot
+        int slot = slots.intern(playerId);
+        if (slots.hasPosition(slot)) {
+            occupancy.removePlayer(playerId, slots.getX(slot), slots.getY(slot));
+        }
+        slots.setPosition(slot, playerX, playerY);
+        occupancy.placePlayer(playerId, playerX, playerY);
+        delta.playerMoved(playerId, playerX, playerY);
+        if (Log.DEBUG) Log.debug("Player " + playerId + " moved to " + playerX + "," + playerY);
+
+        // Check if player hit a treasure
+        boolean collected = occupancy.hasTreasure(playerX, playerY);
+        if (collected) {
+            collectedTreasure = removeTreasureAt(playerX, playerY);
+            occupancy.removeTreasure(playerX, playerY);
+            int newScore = slots.getScore(slot) + 1;
+            slots.setScore(slot, newScore);
+            delta.treasureRemoved(playerX, playerY);
+            delta.scoreChanged(playerId, newScore);
+            if (Log.DEBUG) Log.debug("Player " + playerId + " collected a treasure at pos " + playerX + "," + playerY + ". New score: " + newScore);
+        }
+
+        if (isSharded()) {
+            // Each region renews its own share of the treasures
+            if (collected) {
+                spawnTreasures(regions.regionOf(playerX, playerY), 1, delta);
+            }
+            return true;
+        }
+
+        // Renew the treasure positions
+        int cnt = treasurePositions.size();
+        if (cnt != K && cnt != K - 1) {
+            Log.error("Expected " + K + " treasures but there are " + cnt);
+            view.alert();
+        }
+
+        // Randomly select an empty position to add a new treasure
+        while (treasurePositions.size() < K) {
+            int cell = occupancy.randomFreeCell(random);
+            if (cell < 0) break;
+            var locX = GameUtils.getX(cell, GRID_SIZE);
+            var locY = GameUtils.getY(cell, GRID_SIZE);
+            treasurePositions.add(newTreasure(locX, locY));
+            occupancy.addTreasure(locX, locY);
+            delta.treasureSpawned(locX, locY);
+        }
+        return true;
+    }
+
+    // Take the treasure at (x, y) out of treasurePositions, null if there is none there.
+    // Must be called with stateLock held
+    private int[] removeTreasureAt(int x, int y) {
+        for (int i = treasurePositions.size() - 1; i >= 0; i--) {
+            int[] treasure = treasurePositions.get(i);
+            if (treasure[0] == x && treasure[1] == y) {
+                treasurePositions.remove(i);
+                return treasure;
+            }
         }
         return null;
     }
 
+    // The position of a new treasure, in the array of the last collected one if it hasn't been reused yet.
+    // Must be called with stateLock held
+    private int[] newTreasure(int x, int y) {
+        int[] treasure = collectedTreasure;
+        if (treasure == null) {
+            return new int[] {x, y};
+        }
+        collectedTreasure = null;
+        treasure[0] = x;
+        treasure[1] = y;
+        return treasure;
+    }
+
+    // Stamp the delta with the next state version and keep it for lagging players.
+    // Must be called with stateLock held
+    private GameDelta commitDelta(GameDelta delta) {
+        if (delta.isEmpty()) {
+            return null;
+        }
+        stateVersion++;
+        delta.setVersion(stateVersion);
+        deltaHistory.append(delta);
+        logCommitted(delta);
+        // Queue it for the backup while still under the lock, so the backup sees the versions in order
+        replication.enqueue(delta);
+        return delta;
+    }
+
+
     @Override
     public void removePlayerGameState(Player player) {
         // Remove the player's trait from the game state
         // Remove player position from the player positions
         try {
-            playerPositions.remove(player.getPlayerId());
+            String pid = idOf(player);
+            synchronized (stateLock) {
+                int[] pos = playerPositions.remove(pid);
+                if (pos != null) {
+                    occupancy.removePlayer(pid, pos[0], pos[1]);
+                }
+                // A score without a position is kept for a recovered player, see retainPlayers
+                playerScores.remove(pid);
+                if (interest != null) {
+                    interest.forget(pid);
+                }
+                stateChanged();
+            }
         } catch (RemoteException e) {
-            System.err.println("Error removing player game state: " + e.getMessage());
+            Log.warn("Error removing player game state: " + e.getMessage());
         }
     }
 
     @Override
     public void updatePlayerList() {
-        System.out.println("Updating player list");
-        // Create a list to store active players
-        List<Player> activePlayers = new ArrayList<>();
-
-        // Loop through all the players to collect the active ones
-        for (Player player : playerList) {
-            try {
-                String pid = player.getPlayerId();
-                playerPositions.put(pid, playerPositions.get(pid));
-                activePlayers.add(player);
-            } catch (RemoteException e) {
-                System.err.println("Error getting player ID");
-                // The player is dead, skip it
-            }
-        }
+        Log.info("Updating player list");
+        // Ping all the players at once and drop the ones that don't answer
+        removeDeadPlayers(failureDetector.probe(new ArrayList<>(playerList)));
+    }
+    // ===== Primary Server methods end =====
 
-        // Update the player list with only active players
-        playerList.clear();
-        playerList.addAll(activePlayers);
+    // Remove dead players from the player list, the directory and the game state
+    private void removeDeadPlayers(List<Player> deadPlayers) {
+        members.removeAll(deadPlayers);
+        // Update the player list with only active players.
+        // Replace the list rather than changing it, others may be iterating over it
+        ArrayList<Player> activePlayers = new ArrayList<>(playerList);
+        activePlayers.removeAll(deadPlayers);
+        playerList = activePlayers;
+        failureDetector.retainAll(activePlayers);
 
         // Remove inactive players' positions and scores
         Set<String> activePlayerIds = new HashSet<>();
-        for (Player player : activePlayers) {
-            try {
-                activePlayerIds.add(player.getPlayerId());
-            } catch (RemoteException e) {
-                System.err.println("Error getting player ID: " + e.getMessage());
+        for (Player player : playerList) {
+            String pid = player == this ? playerId : members.getId(player);
+            if (pid != null) {
+                activePlayerIds.add(pid);
             }
         }
+        activePlayerIds.add(playerId);
 
-        playerPositions.keySet().retainAll(activePlayerIds);
-        playerScores.keySet().retainAll(activePlayerIds);
+        retainPlayers(activePlayerIds);
 
-        System.out.println("Updated player list. Current size: " + playerList.size());
+        Log.info("Updated player list. Current size: " + playerList.size());
     }
-    // ===== Primary Server methods end =====
 
-    private synchronized void initializeGameState() {
-        // Only the primary server can initialize the game and add treasures
-        // Get all the empty locations
-        ArrayList<Location> empty = new ArrayList<>();
-        for (int i = 0; i < GRID_SIZE; i++) {
-            for (int j = 0; j < GRID_SIZE; j++) {
-                if (arr[i][j] == 0) {
-                    empty.add(new Location(i, j));
+    // The id of a player, from the local directory unless it has never been seen before
+    private String idOf(Player player) throws RemoteException {
+        if (player == this) {
+            return playerId;
+        }
+        return members.resolveId(player);
+    }
+
+    // Drop the positions and scores of the players that are no longer active
+    // and free the cells they were standing on.
+    // The score of a player without a position is kept: that is a player of a state recovered
+    // from the log that hasn't joined again yet (see recoverGameState), and its slot gives the
+    // score back when it does. Every other way out of the game takes the score along.
+    // On the primary this is a committed change that is replicated like a move
+    private void retainPlayers(Set<String> activePlayerIds) {
+        GameDelta committed = null;
+        synchronized (stateLock) {
+            if (occupancy == null) {
+                return;
+            }
+            GameDelta delta = new GameDelta();
+            Set<String> knownPlayerIds = new HashSet<>(playerPositions.keySet());
+            if (isSharded()) {
+                // Nothing is recovered when split, a score is left behind by a player that moved on
+                knownPlayerIds.addAll(playerScores.keySet());
+            }
+            for (String pid : knownPlayerIds) {
+                if (!activePlayerIds.contains(pid)) {
+                    delta.playerRemoved(pid);
+                    if (interest != null) {
+                        interest.forget(pid);
+                    }
                 }
             }
+            delta.applyTo(playerPositions, treasurePositions, playerScores, occupancy);
+            if (serverRole == ServerRole.PRIMARY) {
+                committed = commitDelta(delta);
+            }
+            stateChanged();
         }
-        // Shuffle the empty locations
-        Collections.shuffle(empty, new Random());
-        // Add K treasures to the game
-        for (int i = 0; i < K; i++) {
-            var loc = empty.get(i);
-            var locX = loc.getX();
-            var locY = loc.getY();
-            arr[locX][locY] = 2;
-            treasurePositions.add(new int[] {locX, locY});
+        if (committed != null) {
+            replication.awaitDurability(committed);
         }
-        isGameInitialized = true;
     }
 
-    private void initializeGUI() {
-        frame = new JFrame("Player: " + playerId);
-        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        frame.setSize(600, 500);
-
-        // Create main panel
-        JPanel mainPanel = new JPanel(new BorderLayout());
-
-        // Create score panel
-        sidePanel = new JPanel();
-        sidePanel.setLayout(new BoxLayout(sidePanel, BoxLayout.Y_AXIS));
-        sidePanel.setBorder(BorderFactory.createTitledBorder("Game Stats"));
-        sidePanel.setPreferredSize(new Dimension(100, 0));  // Set preferred width
+    // Persist a committed delta, or a snapshot of the state when the log can't follow on from the
+    // last one it has or is due for one. Must be called with stateLock held
+    private void logCommitted(GameDelta delta) {
+        if (stateLog != null && (!stateLog.append(delta) || stateLog.isSnapshotDue())) {
+            stateLog.snapshot(takeSnapshot());
+        }
+    }
 
-        gridPanel = new JPanel(new GridLayout(GRID_SIZE, GRID_SIZE));
-        for (int i = 0; i < GRID_SIZE * GRID_SIZE; i++) {
-            JPanel cell = new JPanel();
-            cell.setBorder(BorderFactory.createLineBorder(Color.BLACK));
-            gridPanel.add(cell);
+    // Start from the state in the log of our session, left by a primary that went down along with
+    // everybody else. Returns false if there is none for a maze like ours
+    private boolean recoverGameState() {
+        Path dir;
+        synchronized (stateLock) {
+            if (stateLog == null) {
+                return false;
+            }
+            dir = stateLog.getDir();
+        }
+        StateLog.Recovery recovery;
+        try {
+            recovery = StateLog.recover(dir);
+        } catch (IOException e) {
+            Log.error("Error recovering the game state from " + dir, e);
+            return false;
+        }
+        if (recovery == null || recovery.gridSize != GRID_SIZE) {
+            return false;
         }
-        // Add panels to main panel
-        mainPanel.add(sidePanel, BorderLayout.WEST);
-        mainPanel.add(gridPanel, BorderLayout.CENTER);
-        frame.add(mainPanel);
+        GameState state = recovery.state;
+        // Everybody is placed afresh when joining again, us first. Only the scores are kept,
+        // waiting for their players without a position, see retainPlayers
+        state.playerPositions.clear();
+        synchronized (stateLock) {
+            slots.clear();
+            playerPositions.putAll(state.playerPositions);
+            treasurePositions = new ArrayList<>(state.treasurePositions);
+            playerScores.putAll(state.playerScores);
+            occupancy.rebuild(playerPositions, treasurePositions);
+            // Nobody has seen these versions from us
+            stateVersion = DeltaHistory.nextTerm(state.version);
+            deltaHistory.reset(stateVersion);
+            stateChanged();
+        }
+        startTime = state.startTime;
+        isGameInitialized = true;
+        Log.info("Recovered the game state of version " + state.version + " from " + dir + " in "
+            + recovery.millis + " ms (" + recovery.replayed + " deltas replayed)");
+        return true;
+    }
 
-        System.out.println("Player positions: " + playerPositions.size());
-        for (String playerId : playerPositions.keySet()) {
-            int[] pos = playerPositions.get(playerId);
-            System.out.println("Player " + playerId + " is initialized at position " + pos[0] + " " + pos[1]);
+    private synchronized void initializeGameState() {
+        // Only the primary server can initialize the game and add treasures
+        if (isSharded()) {
+            // Only the share of the treasures of our regions
+            GameDelta committed;
+            synchronized (stateLock) {
+                GameDelta delta = new GameDelta();
+                topUpTreasures(delta);
+                committed = commitDelta(delta);
+            }
+            isGameInitialized = true;
+            publishCommitted(committed);
+            return;
         }
-        var playerPos = playerPositions.get(playerId);
-        var playerX = playerPos[0];
-        var playerY = playerPos[1];
-        for (int i = 0; i < GRID_SIZE * GRID_SIZE; i++) {
-            if (i == playerY * GRID_SIZE + playerX) {
-                arr[playerX][playerY] = BlockStatus.PLAYER; // label the position to be occupied
+        // Add K treasures to the game at random empty locations
+        synchronized (stateLock) {
+            for (int i = 0; i < K; i++) {
+                int cell = occupancy.randomFreeCell(random);
+                if (cell < 0) break;
+                var locX = GameUtils.getX(cell, GRID_SIZE);
+                var locY = GameUtils.getY(cell, GRID_SIZE);
+                treasurePositions.add(new int[] {locX, locY});
+                occupancy.addTreasure(locX, locY);
             }
+            stateChanged();
         }
+        isGameInitialized = true;
+    }
 
-        renderGUI(GRID_SIZE);
-
-        // Handle window close event
-        frame.addWindowListener(new java.awt.event.WindowAdapter() {
-            @Override
-            public void windowClosing(java.awt.event.WindowEvent windowEvent) {
-                // Handle the window close event and gracefully shutdown the game
-                selfCleanupAndDeregister();
-                // Exit the application
-                System.exit(0);
+    private void initializeGUI() {
+        // Handle the window close event and gracefully shutdown the game
+        view.open(playerId, GRID_SIZE, this::leave);
+
+        synchronized (stateLock) {
+            Log.info("Player positions: " + playerPositions.size());
+            if (Log.DEBUG) {
+                for (String playerId : playerPositions.keySet()) {
+                    int[] pos = playerPositions.get(playerId);
+                    Log.debug("Player " + playerId + " is initialized at position " + pos[0] + " " + pos[1]);
+                }
             }
-        });
+        }
 
-        // Disable the default close operation
-        frame.setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
+        renderGUI(GRID_SIZE);
+    }
 
-        // Display the frame
-        frame.setVisible(true);
+    // Leave the game for good. Exits the JVM too, unless the player is hosted along with others
+    // (see setExitOnLeave)
+    public void leave() {
+        selfCleanupAndDeregister();
+        if (exitOnLeave) {
+            // Exit the application
+            System.exit(0);
+        }
+    }
 
-        // Bring the window to the front
-        frame.setAlwaysOnTop(true);
-        frame.toFront();
-        frame.requestFocus();
-        frame.setAlwaysOnTop(false);
+    public void setExitOnLeave(boolean exitOnLeave) {
+        this.exitOnLeave = exitOnLeave;
     }
 
     public void selfCleanupAndDeregister() {
         try {
-            System.out.println("Shutting down the game for: " + playerId);
+            Log.info("Shutting down the game for: " + playerId);
             if (serverRole == ServerRole.PRIMARY) {
                 // Remove the position of the current player
                 // from the backup server who will be promoted to primary
@@ -806,12 +1899,18 @@ public class Game extends UnicastRemoteObject implements Player {
                 }
 
                 // Clean up the player data
-                playerPositions.remove(playerId);
-                playerScores.remove(playerId);
+                synchronized (stateLock) {
+                    int[] pos = playerPositions.remove(playerId);
+                    if (pos != null) {
+                        occupancy.removePlayer(playerId, pos[0], pos[1]);
+                    }
+                    playerScores.remove(playerId);
+                    stateChanged();
+                }
 
                 // broadcast to all players to promote backup to primary
                 for (Player player : playerList) {
-                    if (player.getPlayerId() != this.getPlayerId()) {
+                    if (!idOf(player).equals(playerId)) {
                         player.promoteBackupToPrimary();
                     }
                 }
@@ -823,136 +1922,161 @@ public class Game extends UnicastRemoteObject implements Player {
             // TrackerInterface tracker = getTracker();
             // tracker.deregisterPlayer(Game.this);
             // Remove the current player from the list
-            playerList.removeIf(player -> {
+            ArrayList<Player> otherPlayers = new ArrayList<>(playerList);
+            otherPlayers.removeIf(player -> {
                 try {
-                    return player.getPlayerId().equals(this.getPlayerId());
+                    return idOf(player).equals(playerId);
                 } catch (RemoteException e) {
-                    System.err.println("Error removing player: " + e.getMessage());
+                    Log.warn("Error removing player: " + e.getMessage());
                     return false;
                 }
             });
-            System.out.println("Player " + playerId + " removed from the list. New size: " + playerList.size());
+            playerList = otherPlayers;
+            Log.info("Player " + playerId + " removed from the list. New size: " + playerList.size());
             
             // Trigger election for all remaining players
             if (!playerList.isEmpty()) {
-                System.out.println("Trigger election for all remaining players");
+                Log.info("Trigger election for all remaining players");
                 initiateElection(new ArrayList<>(playerList));
             } else {
-                System.out.println("No players left to initiate election.");
+                Log.info("No players left to initiate election.");
             }
-            System.out.println("Player " + playerId + " deregistered successfully.");
+            Log.info("Player " + playerId + " deregistered successfully.");
         } catch (Exception e) {
-            System.err.println("Error deregistering player: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("Error deregistering player", e);
+        }
+
+        // Stop answering, like the process that exits after this, so the others
+        // (and the Tracker, if the id joins again) see this player as gone
+        stopFailureDetector();
+        replication.close();
+        closeStateLog();
+        transport.unexport(this);
+        try {
+            UnicastRemoteObject.unexportObject(this, true);
+        } catch (NoSuchObjectException e) {
+            // Already gone
+        }
+    }
+
+    // Start persisting our state on becoming the primary. The log of a region primary would only
+    // hold its share of the maze, so there is none when sharded
+    private void openStateLog() {
+        if (isSharded()) {
+            return;
+        }
+        synchronized (stateLock) {
+            if (stateLog == null) {
+                stateLog = StateLog.open(sessionId, GRID_SIZE);
+            }
+        }
+    }
+
+    // Stop persisting, on no longer being the primary or on leaving
+    private void closeStateLog() {
+        StateLog log;
+        synchronized (stateLock) {
+            log = stateLog;
+            stateLog = null;
+        }
+        if (log != null) {
+            log.close();
         }
     }
 
     private void serverDied() {
-        System.out.println("There is a server died, begin to elect");
+        Log.info("There is a server died, begin to elect");
         try {
             initiateElection(playerList);
         } catch (RemoteException e) {
-            e.printStackTrace();
+            Log.error("Error starting election", e);
         }
     }
 
-    private void regularPlayerDied() {
-        System.out.println("There is a regular player died");
-        try {
-            // Update the player list of the primary server
-            primaryServer.updatePlayerList();
-        } catch (RemoteException e) {
-            e.printStackTrace();
-        }
+    private void regularPlayerDied(List<Player> deadPlayers) {
+        Log.info("There is a regular player died");
+        // Only the primary runs the heartbeat, so this updates the primary server's player list
+        removeDeadPlayers(deadPlayers);
     }
 
     private void updateSidePanel() {
-        synchronized (sidePanelLock) {
-            if (isUpdatingSidePanel) {
+        Player primary = primaryServer;
+        Player backup = backupServer;
+        List<Player> players = playerList;
+        synchronized (stateLock) {
+            long scoreChanges = slots.getScoreChanges();
+            if (scoreChanges == drawnScoreChanges && primary == drawnPrimary && backup == drawnBackup
+                && players == drawnPlayers) {
                 return;
             }
-            isUpdatingSidePanel = true;
+            drawnScoreChanges = scoreChanges;
+            drawnPrimary = primary;
+            drawnBackup = backup;
+            drawnPlayers = players;
         }
-
+        if (Log.DEBUG) Log.debug("Player " + playerId + " is update the side panel");
+        String primaryId = null;
+        String backupId = null;
         try {
-            System.out.println("Player " + playerId + " is update the side panel");
-            sidePanel.removeAll();
+            primaryId = primary != null ? idOf(primary) : null;
+            backupId = backup != null ? idOf(backup) : null;
+        } catch (RemoteException e) {
+            Log.error("Error getting server IDs", e);
+        }
 
+        Map<String, Integer> scores = new LinkedHashMap<>();
+        Map<String, Integer> current = currentSnapshot().getScores();
+        for (Player player : players) {
             try {
-                // Display start time
-                JLabel startTimeLabel = new JLabel("Start Time:");
-                startTimeLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
-                sidePanel.add(startTimeLabel);
-                JLabel timeLabel = new JLabel(startTime);
-                timeLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
-                sidePanel.add(timeLabel);
-                sidePanel.add(Box.createVerticalStrut(10));
-
-                // Display primary and backup server information
-                JLabel primaryServerLabel = new JLabel("Primary: " + (primaryServer != null ? primaryServer.getPlayerId() : "N/A"));
-                JLabel backupServerLabel = new JLabel("Backup: " + (backupServer != null ? backupServer.getPlayerId() : "N/A"));
-                primaryServerLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
-                backupServerLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
-                sidePanel.add(primaryServerLabel);
-                sidePanel.add(backupServerLabel);
-                sidePanel.add(Box.createVerticalStrut(10)); // Add some space
+                String pid = idOf(player);
+                scores.put(pid, current.getOrDefault(pid, 0));
             } catch (RemoteException e) {
-                e.printStackTrace();
-            }
-
-            // Add a label for "Score:"
-            JLabel scoreHeaderLabel = new JLabel("Score:");
-            scoreHeaderLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
-            sidePanel.add(scoreHeaderLabel);
-            sidePanel.add(Box.createVerticalStrut(5)); // Add a small space after the header
-
-            // Display player scores
-            for (Player player : playerList) {
-                try {
-                    String pid = player.getPlayerId();
-                    int score = playerScores.getOrDefault(pid, 0);
-                    JLabel scoreLabel = new JLabel(pid + ": " + score);
-                    scoreLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
-                    if (pid.equals(playerId)) {
-                        scoreLabel.setForeground(Color.RED);
-                        scoreLabel.setFont(scoreLabel.getFont().deriveFont(Font.BOLD));
-                    }
-                    sidePanel.add(scoreLabel);
-                } catch (RemoteException e) {
-                    System.err.println("Error getting player ID: " + e.getMessage());
-                }
+                Log.warn("Error getting player ID: " + e.getMessage());
             }
-            sidePanel.revalidate();
-            sidePanel.repaint();
+        }
+        view.drawStats(startTime, primaryId, backupId, scores);
+    }
 
-        } finally {
-            synchronized (sidePanelLock) {
-                isUpdatingSidePanel = false;
-            }
+    // Queue a render on the view's thread unless one is queued already, or nothing is drawn at all
+    private void requestRender() {
+        if (!view.isHeadless() && renderQueued.compareAndSet(false, true)) {
+            if (Log.DEBUG) Log.debug("Render GUI for primary server");
+            view.invokeLater(renderTask);
         }
     }
 
     public static void main(String[] args) {
+        // --headless runs the player without a window, same as -Dgame.headless=true
+        if (args.length == 4 && args[3].equals("--headless")) {
+            System.setProperty("game.headless", "true");
+            args = Arrays.copyOf(args, 3);
+        }
         // check the num of args
         if (args.length != 3) {
             System.out.println("Error: You must provide exactly 3 arguments.");
-            System.out.println("Usage: java Game <IP_address> <port_number> <player_id>");
+            System.out.println("Usage: java Game <IP_address> <port_number> <player_id> [--headless]");
             return;
         }
 
-        SwingUtilities.invokeLater(() -> {
+        final String[] gameArgs = args;
+        GameView view = GameView.create();
+        view.invokeLater(() -> {
             Game game = null;
             try {
-                String IP_address = args[0];
-                int port_number = Integer.parseInt(args[1]);
-                String player_id = args[2];
+                String IP_address = gameArgs[0];
+                int port_number = Integer.parseInt(gameArgs[1]);
+                String player_id = gameArgs[2];
     
-                System.out.println("IP address: " + IP_address);
-                System.out.println("port number: " + port_number);
-                System.out.println("player id: " + player_id);
-                game = new Game(IP_address, port_number, player_id);
+                Log.info("IP address: " + IP_address);
+                Log.info("port number: " + port_number);
+                Log.info("player id: " + player_id);
+                game = new Game(IP_address, port_number, player_id, view);
             } catch (RemoteException e) {
-                e.printStackTrace();
+                Log.error("Error joining the game", e);
+                return;
+            } catch (IllegalStateException e) {
+                Log.error(e.getMessage() + ". Exiting...");
+                System.exit(0);
                 return;
             }
 
@@ -965,26 +2089,13 @@ public class Game extends UnicastRemoteObject implements Player {
                         finalGame.processInput(line);
                     }
                 } catch (Exception e) {
-                    e.printStackTrace();
+                    Log.error("Error reading input", e);
                 }
             });
             inputThread.start();
 
-            // add a new Timer for 500ms
-            Timer timer = new Timer(500, e -> {
-                // System.out.println("Timer task executed - " + System.currentTimeMillis());
-                if(finalGame.heartBeat() != null) {
-                    System.out.println("normal node died, begin to process");
-                    finalGame.regularPlayerDied();
-                }
-                if (!finalGame.serverAlive()) {
-                    System.out.println("primary node died, begin to process");
-                    finalGame.serverDied();
-                }
-            });
-
-            // Start the timer
-            timer.start();
+            // Check the other nodes every 500ms (-Dgame.fd.intervalMs)
+            finalGame.startFailureDetector();
         });
     }
 
@@ -992,32 +2103,76 @@ public class Game extends UnicastRemoteObject implements Player {
         return 1;
     }
 
-    private void processInput(String line) {
-        System.out.println("Received input: " + line);
+    // Handle a line of keys as typed on the console
+    public void processInput(String line) {
+        if (Log.DEBUG) Log.debug("Received input: " + line);
         String result = line.replaceAll("[^012349]", "");
-        // handle input line char by char
+        // handle input line char by char, but send runs of moves to the primary as one batch
+        StringBuilder moves = new StringBuilder();
         for (var i = 0; i < result.length(); i++) {
             char c = result.charAt(i);
-            handleDirectionPressed(c);
+            if (Direction.isMove(c)) {
+                moves.append(c);
+            } else {
+                flushMoves(moves);
+                handleDirectionPressed(c);
+            }
         }
+        flushMoves(moves);
+    }
+
+    private void flushMoves(StringBuilder moves) {
+        if (isSharded()) {
+            // A batch could cross into the region of another primary, send the steps one by one
+            for (int i = 0; i < moves.length(); i++) {
+                handleDirectionPressed(moves.charAt(i));
+            }
+        } else if (moves.length() == 1) {
+            handleDirectionPressed(moves.charAt(0));
+        } else if (moves.length() > 1) {
+            handleDirectionsPressed(moves.toString().toCharArray());
+        }
+        moves.setLength(0);
+    }
 
+    // Send several moves in one round trip, the primary checks the boundaries for each step
+    private void handleDirectionsPressed(char[] directions) {
+        if (Log.DEBUG) Log.debug("Received directions: " + new String(directions));
+        try {
+            Player primaryServer = getPrimaryServer();
+            StateUpdate update = primaryServer.updateGamebyNewMoves(this, directions, stateVersion);
+            applyStateUpdate(primaryServer, update);
+        } catch (Exception e) {
+            Log.error("Client exception", e);
+        }
+        renderGUI(GRID_SIZE);
     }
 
     private void handleDirectionPressed(char direction) {
-        System.out.println("Received direction: " + direction);
+        if (Log.DEBUG) Log.debug("Received direction: " + direction);
         if (direction != Direction.UP && direction != Direction.DOWN && 
             direction != Direction.LEFT && direction != Direction.RIGHT &
             direction != '0' && direction != '9') {
             return;
         }
 
-        var playerPos = playerPositions.get(playerId);
-        for (String playerId : playerPositions.keySet()) {
-            int[] pos = playerPositions.get(playerId);
-            System.out.println("Player " + playerId + " move from position " + pos[0] + " " + pos[1] + " to direction " + direction);
+        int[] playerPos;
+        synchronized (stateLock) {
+            playerPos = playerPositions.get(playerId);
+            if (playerPos == null && Direction.isMove(direction)) {
+                // Not placed yet, or between two region primaries
+                Log.warn("Player " + playerId + " has no position, ignoring " + direction);
+                return;
+            }
+            if (Log.DEBUG) {
+                for (String playerId : playerPositions.keySet()) {
+                    int[] pos = playerPositions.get(playerId);
+                    Log.debug("Player " + playerId + " move from position " + pos[0] + " " + pos[1] + " to direction " + direction);
+                }
+            }
         }
-        var playerX = playerPos[0];
-        var playerY = playerPos[1];
+        var playerX = playerPos != null ? playerPos[0] : -1;
+        var playerY = playerPos != null ? playerPos[1] : -1;
         // Check if the move is valid (boundary check)
         if (direction == Direction.UP && playerY == 0) {
             return;
@@ -1030,20 +2185,21 @@ public class Game extends UnicastRemoteObject implements Player {
         } else if (direction == '0') {
             // Refresh the game state
             try {
-                GameState currentGameState = getPrimaryServer().getGameState(this);
-                updateGameState(currentGameState);
+                if (isSharded()) {
+                    syncRegions();
+                } else {
+                    Player primaryServer = getPrimaryServer();
+                    applyStateUpdate(primaryServer, primaryServer.getStateUpdate(this, stateVersion));
+                }
                 renderGUI(GRID_SIZE);
                 return;
             } catch (RemoteException e) {
-                e.printStackTrace();
+                Log.error("Error refreshing the game state", e);
             }
         } else if (direction == '9') {
             // Graceful shutdown
-            selfCleanupAndDeregister();
-            // Exit the application
-            System.exit(0);
+            leave();
             return;
-
         }
         // Note: No need to check if there is other player blocking the path here but on the server side
 
@@ -1063,95 +2219,30 @@ public class Game extends UnicastRemoteObject implements Player {
         renderGUI(GRID_SIZE);
     }
 
+    // Redraw the cells that changed since the last render, as tracked by the occupancy grid
     private void renderGUI(int grid_size) {
-        System.out.println("Render GUI");
-        if (gridPanel == null) {
-            System.err.println("Error: gridPanel is null in renderGUI");
+        if (view.isHeadless()) {
             return;
         }
-        // Initialize the arr to all 0
-        for (int i = 0; i < grid_size; i++) {
-            for (int j = 0; j < grid_size; j++) {
-                arr[i][j] = 0;
+        if (Log.DEBUG) Log.debug("Render GUI");
+        int[] cells;
+        int[] statuses;
+        String[] occupants;
+        synchronized (stateLock) {
+            cells = occupancy.takeDirtyCells();
+            statuses = new int[cells.length];
+            occupants = new String[cells.length];
+            for (int i = 0; i < cells.length; i++) {
+                int x = GameUtils.getX(cells[i], grid_size);
+                int y = GameUtils.getY(cells[i], grid_size);
+                statuses[i] = occupancy.getBlockStatus(x, y);
+                occupants[i] = occupancy.getPlayerAt(x, y);
             }
         }
-        // Calculate player positions
-        for (String playerId : playerPositions.keySet()) {
-            int[] pos = playerPositions.get(playerId);
-            int x = pos[0];
-            int y = pos[1];
-            arr[x][y] = BlockStatus.PLAYER; // Mark player position
-        }
-
-        // Calculate treasure positions
-        for (int[] pos : treasurePositions) {
-            int x = pos[0];
-            int y = pos[1];
-            arr[x][y] = BlockStatus.TREASURE;
+        for (int i = 0; i < cells.length; i++) {
+            view.drawCell(cells[i], statuses[i], occupants[i]);
         }
 
-        for (int i = 0; i < grid_size; i++) {
-            for (int j = 0; j < grid_size; j++) {
-                var idx = GameUtils.getIdx(i, j, grid_size);
-                var cell = gridPanel.getComponent(idx);
-                if (arr[i][j] == 1) {
-                    cell.setBackground(Color.MAGENTA);
-                } else if (arr[i][j] == 2) {
-                    cell.setBackground(Color.BLUE);
-                }
-            }
-
-        } 
-        // Render the GUI
-        renderColor(grid_size);
-
         updateSidePanel();
-
-        frame.repaint();
-    }
-
-    private void renderColor(int grid_size) {
-        for (int i = 0; i < grid_size; i++) {
-            for (int j = 0; j < grid_size; j++) {
-                var idx = GameUtils.getIdx(i, j, grid_size);
-                if (arr[i][j] == BlockStatus.PLAYER) {
-                    // The player is here
-                    var cell = (JPanel) gridPanel.getComponent(idx);
-                    cell.setBackground(Color.MAGENTA);
-                    cell.removeAll(); // Clear any existing components
-                    JLabel label = new JLabel();
-                    for (String playerId : playerPositions.keySet()) {
-                        int[] position = playerPositions.get(playerId);
-                        if (position[0] == i && position[1] == j) {
-                            label.setText(playerId);
-                            if (playerId.equals(this.playerId)) {
-                                cell.setBackground(Color.RED);
-                            }
-                            break;
-                        }
-                    }
-                    label.setForeground(Color.WHITE);
-                    label.setFont(new Font(label.getFont().getName(), Font.BOLD, 16));
-                    label.setHorizontalAlignment(JLabel.CENTER);
-                    cell.add(label);
-                    cell.revalidate();
-                } else if (arr[i][j] == BlockStatus.TREASURE) {
-                    // The treasure is here
-                    var cell = (JPanel) gridPanel.getComponent(idx);
-                    cell.setBackground(Color.BLUE);
-                    cell.removeAll(); // Clear any existing components
-                    JLabel label = new JLabel("*");
-                    label.setForeground(Color.WHITE);
-                    label.setFont(new Font(label.getFont().getName(), Font.BOLD, 23));
-                    label.setHorizontalAlignment(JLabel.CENTER);
-                    cell.add(label);
-                    cell.revalidate();
-                } else if (arr[i][j] == BlockStatus.EMPTY) {
-                    // The cell is empty
-                    var cell = gridPanel.getComponent(idx);
-                    cell.setBackground(Color.WHITE);
-                }
-            }
-        }
     }
 }
\ No newline at end of file
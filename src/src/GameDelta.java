@@ -0,0 +1,256 @@
+package src;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+// The changes one committed operation made to the game state, e.g.
+// "player X moved to (a, b)", "treasure removed at (a, b)", "score of X is now 3".
+// The primary stamps every delta with the next state version so the backup and the
+// players can apply them in order and detect a gap, in which case they fall back to a full snapshot.
+// Its size depends on the events of the one move, not on the number of players in the game.
+public class GameDelta implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final byte PLAYER_MOVED = 1;
+    public static final byte PLAYER_REMOVED = 2;
+    public static final byte TREASURE_SPAWNED = 3;
+    public static final byte TREASURE_REMOVED = 4;
+    // The new score is carried in x so replaying a delta twice is harmless.
+    // Scores only go up while a player is in the game, so a lower one is a stale one and is ignored:
+    // with several region primaries, a player's score may reach a node from two of their streams
+    public static final byte SCORE_CHANGED = 5;
+    // The player may still be in the game but is out of the receiver's area of interest
+    // (see AreaOfInterest), so the receiver drops it like a removed player
+    public static final byte PLAYER_LEFT_VIEW = 6;
+    // The player moved on from (x, y) into the region of another primary (see RegionMap), which
+    // sends where it went. The receiver drops it unless it already knows it somewhere else
+    public static final byte PLAYER_HANDED_OFF = 7;
+
+    // The state version this delta produces, it applies on top of version - 1
+    private long version;
+
+    // The events, stored column-wise and written out by hand to keep the delta compact
+    private transient int count;
+    private transient byte[] types;
+    private transient String[] playerIds;
+    private transient int[] xs;
+    private transient int[] ys;
+
+    public GameDelta() {
+        types = new byte[4];
+        playerIds = new String[4];
+        xs = new int[4];
+        ys = new int[4];
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public byte getType(int i) {
+        return types[i];
+    }
+
+    public String getPlayerId(int i) {
+        return playerIds[i];
+    }
+
+    public int getX(int i) {
+        return xs[i];
+    }
+
+    public int getY(int i) {
+        return ys[i];
+    }
+
+    public void playerMoved(String playerId, int x, int y) {
+        add(PLAYER_MOVED, playerId, x, y);
+    }
+
+    public void playerRemoved(String playerId) {
+        add(PLAYER_REMOVED, playerId, 0, 0);
+    }
+
+    public void playerLeftView(String playerId) {
+        add(PLAYER_LEFT_VIEW, playerId, 0, 0);
+    }
+
+    public void playerHandedOff(String playerId, int fromX, int fromY) {
+        add(PLAYER_HANDED_OFF, playerId, fromX, fromY);
+    }
+
+    public void treasureSpawned(int x, int y) {
+        add(TREASURE_SPAWNED, null, x, y);
+    }
+
+    public void treasureRemoved(int x, int y) {
+        add(TREASURE_REMOVED, null, x, y);
+    }
+
+    public void scoreChanged(String playerId, int score) {
+        add(SCORE_CHANGED, playerId, score, 0);
+    }
+
+    private void add(byte type, String playerId, int x, int y) {
+        if (count == types.length) {
+            int capacity = count * 2;
+            types = Arrays.copyOf(types, capacity);
+            playerIds = Arrays.copyOf(playerIds, capacity);
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+        }
+        types[count] = type;
+        playerIds[count] = playerId;
+        xs[count] = x;
+        ys[count] = y;
+        count++;
+    }
+
+    // Decides which of the events at a cell to replay, see applyTo
+    public interface CellFilter {
+        boolean accept(String playerId, int x, int y);
+    }
+
+    // Replay the events on a copy of the game state, keeping the cell index in sync
+    public void applyTo(Map<String, int[]> playerPositions,
+                        List<int[]> treasurePositions,
+                        Map<String, Integer> playerScores,
+                        OccupancyGrid occupancy) {
+        applyTo(playerPositions, treasurePositions, playerScores, occupancy, null);
+    }
+
+    // Same, but skip the moves, hand-offs and treasure events the filter rejects (null accepts all).
+    // Removals and score changes don't depend on a cell and always apply
+    public void applyTo(Map<String, int[]> playerPositions,
+                        List<int[]> treasurePositions,
+                        Map<String, Integer> playerScores,
+                        OccupancyGrid occupancy,
+                        CellFilter cells) {
+        for (int i = 0; i < count; i++) {
+            String pid = playerIds[i];
+            int x = xs[i];
+            int y = ys[i];
+            if (cells != null && hasCell(types[i]) && !cells.accept(pid, x, y)) {
+                continue;
+            }
+            switch (types[i]) {
+                case PLAYER_MOVED: {
+                    int[] oldPos = playerPositions.put(pid, new int[] {x, y});
+                    occupancy.movePlayer(pid, oldPos, x, y);
+                    break;
+                }
+                case PLAYER_REMOVED:
+                case PLAYER_LEFT_VIEW: {
+                    int[] oldPos = playerPositions.remove(pid);
+                    if (oldPos != null) {
+                        occupancy.removePlayer(pid, oldPos[0], oldPos[1]);
+                    }
+                    playerScores.remove(pid);
+                    break;
+                }
+                case PLAYER_HANDED_OFF: {
+                    int[] pos = playerPositions.get(pid);
+                    if (pos != null && pos[0] == x && pos[1] == y) {
+                        playerPositions.remove(pid);
+                        occupancy.removePlayer(pid, x, y);
+                    }
+                    break;
+                }
+                case TREASURE_SPAWNED:
+                    if (!occupancy.hasTreasure(x, y)) {
+                        treasurePositions.add(new int[] {x, y});
+                        occupancy.addTreasure(x, y);
+                    }
+                    break;
+                case TREASURE_REMOVED:
+                    treasurePositions.removeIf(treasure -> treasure[0] == x && treasure[1] == y);
+                    occupancy.removeTreasure(x, y);
+                    break;
+                case SCORE_CHANGED:
+                    playerScores.merge(pid, x, Math::max);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown delta event type: " + types[i]);
+            }
+        }
+    }
+
+    // The delta without the overhead of Java serialization, e.g. for NioTransport
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeLong(version);
+        writeEvents(out);
+    }
+
+    public static GameDelta readFrom(DataInput in) throws IOException {
+        GameDelta delta = new GameDelta();
+        delta.version = in.readLong();
+        delta.readEvents(in);
+        return delta;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        writeEvents(out);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        readEvents(in);
+    }
+
+    private void writeEvents(DataOutput out) throws IOException {
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            out.writeByte(types[i]);
+            out.writeBoolean(playerIds[i] != null);
+            if (playerIds[i] != null) {
+                out.writeUTF(playerIds[i]);
+            }
+            out.writeInt(xs[i]);
+            out.writeInt(ys[i]);
+        }
+    }
+
+    private void readEvents(DataInput in) throws IOException {
+        count = in.readInt();
+        int capacity = Math.max(count, 1);
+        types = new byte[capacity];
+        playerIds = new String[capacity];
+        xs = new int[capacity];
+        ys = new int[capacity];
+        for (int i = 0; i < count; i++) {
+            types[i] = in.readByte();
+            playerIds[i] = in.readBoolean() ? in.readUTF() : null;
+            xs[i] = in.readInt();
+            ys[i] = in.readInt();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "GameDelta(v" + version + ", " + count + " events)";
+    }
+
+    private static boolean hasCell(byte type) {
+        return type == PLAYER_MOVED || type == PLAYER_HANDED_OFF || type == TREASURE_SPAWNED || type == TREASURE_REMOVED;
+    }
+}
@@ -0,0 +1,270 @@
+package src;
+
+import java.io.Serializable;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// One independent game hosted by the Tracker: its own maze size, treasures, players and
+// elections. A session only locks itself, so a burst of joins or a slow election in one
+// session doesn't hold up registrations in the others.
+// A session that has been empty for a while is closed by the Tracker, see closeIfIdle.
+public class GameSession {
+    private final String id;
+    private final int n;
+    private final int k;
+    // Most players the session admits, never more than the free cells of its maze
+    private final int capacity;
+    private final ArrayList<Player> playerList = new ArrayList<>();
+    // Player id -> stub of every registered player
+    private final MemberDirectory members = new MemberDirectory();
+    // Elections triggered by registrations run here, one at a time, outside the lock.
+    // The thread goes away while the session is idle, so quiet sessions cost nothing
+    private final ThreadPoolExecutor elections;
+    private final AtomicBoolean electionPending = new AtomicBoolean();
+    private final AtomicLong electionsRun = new AtomicLong();
+    private Player latestJoiner;
+    // The primary of every region and the election that chose them
+    private ArrayList<String> regionOwnerIds = new ArrayList<>();
+    private long regionOwnersEpoch;
+    // Pings the players of a full session and a player whose id is taken, each ping with a deadline
+    private final FailureDetector detector;
+    // When a player last joined or left, or the session started
+    private long lastActiveMillis = System.currentTimeMillis();
+    private boolean closed;
+    private String regionOwnersInitiatorId;
+
+    // What a player needs to know about a session before joining it
+    public static class Info implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        public final String id;
+        public final int n;
+        public final int k;
+        public final int players;
+        public final int capacity;
+
+        public Info(String id, int n, int k, int players, int capacity) {
+            this.id = id;
+            this.n = n;
+            this.k = k;
+            this.players = players;
+            this.capacity = capacity;
+        }
+
+        public boolean isFull() {
+            return players >= capacity;
+        }
+
+        @Override
+        public String toString() {
+            return id + " (N=" + n + ", K=" + k + ", " + players + "/" + capacity + " players)";
+        }
+    }
+
+    public GameSession(String id, int n, int k, int maxPlayers) {
+        this.id = id;
+        this.n = n;
+        this.k = k;
+        this.capacity = Math.max(1, Math.min(maxPlayers, n * n - k));
+        this.elections = new ThreadPoolExecutor(0, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "tracker-election-" + id);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.detector = new FailureDetector("tracker-" + id);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public int getN() {
+        return n;
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    public synchronized Info getInfo() {
+        return new Info(id, n, k, playerList.size(), capacity);
+    }
+
+    public synchronized boolean isFull() {
+        return playerList.size() >= capacity;
+    }
+
+    public synchronized ArrayList<Player> getPlayerList() {
+        // A copy, so a registration can't change the list while it is being sent
+        return new ArrayList<>(playerList);
+    }
+
+    // Admit the player against the local directory and return right away.
+    // The election that gives it a role runs later on the election thread, so a burst of
+    // joins doesn't queue up behind whole elections
+    public boolean register(Player player) throws RemoteException {
+        // The only remote id lookup: every registered player is kept in the directory
+        String newPlayerId = player.getPlayerId();
+        Log.info("New player is trying to join " + id + ": " + newPlayerId);
+        Player existing;
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+            existing = members.get(newPlayerId);
+            if (existing == null && playerList.size() < capacity) {
+                admit(newPlayerId, player);
+                return true;
+            }
+        }
+        if (existing == null) {
+            if (!prune()) {
+                Log.info("Session " + id + " is full, turning away " + newPlayerId);
+                return false;
+            }
+            synchronized (this) {
+                if (closed || members.get(newPlayerId) != null || playerList.size() >= capacity) {
+                    // Someone else took the id or the room meanwhile
+                    return false;
+                }
+                admit(newPlayerId, player);
+                return true;
+            }
+        }
+        // Check if the player ID already exists
+        // There is a chance the player is already killed, ping it without holding the lock
+        if (detector.isAlive(existing)) {
+            Log.info("Player with ID " + newPlayerId + " already exists in " + id + ". Ignoring registration.");
+            return false;
+        }
+        Log.info("Player " + newPlayerId + " is no longer available, replacing it");
+        synchronized (this) {
+            if (closed || members.get(newPlayerId) != existing) {
+                // Someone else took the id meanwhile
+                return false;
+            }
+            playerList.remove(existing);
+            members.remove(existing);
+            admit(newPlayerId, player);
+            return true;
+        }
+    }
+
+    // A full session may still count players that crashed since they joined: players aren't
+    // deregistered when they die. Drop the ones the failure detector finds dead, all pinged at
+    // once without holding the lock, so a hung player holds the joiner up for one ping deadline
+    // at most. Tells whether that made room
+    private boolean prune() {
+        ArrayList<Player> players = getPlayerList();
+        List<Player> gone = detector.probe(players);
+        synchronized (this) {
+            playerList.removeAll(gone);
+            members.removeAll(gone);
+            detector.retainAll(playerList);
+            if (!gone.isEmpty()) {
+                Log.info("Dropped " + gone.size() + " unreachable players from " + id);
+            }
+            return playerList.size() < capacity;
+        }
+    }
+
+    // Must be called while holding the lock
+    private void admit(String playerId, Player player) {
+        lastActiveMillis = System.currentTimeMillis();
+        playerList.add(player);
+        members.put(playerId, player);
+        latestJoiner = player;
+        Log.info("New player registered in " + id + ": " + playerId);
+        Log.info("Current number of players in " + id + ": " + (playerList.size()));
+        scheduleElection();
+    }
+
+    // Queue an election unless one is already queued: that one will read the player list
+    // when it starts, so it covers every player admitted until then
+    private void scheduleElection() {
+        if (electionPending.compareAndSet(false, true)) {
+            elections.execute(this::runElection);
+        }
+    }
+
+    private void runElection() {
+        // Clear the flag before reading the list, a join from now on queues another election
+        electionPending.set(false);
+        ArrayList<Player> players;
+        Player initiator;
+        synchronized (this) {
+            players = new ArrayList<>(playerList);
+            initiator = latestJoiner;
+        }
+        // Trigger server election by the newest player, or by the next newest if it is gone
+        ArrayList<Player> initiators = new ArrayList<>(players);
+        Collections.reverse(initiators);
+        if (initiator != null && initiators.remove(initiator)) {
+            initiators.add(0, initiator);
+        }
+        for (Player candidate : initiators) {
+            try {
+                candidate.initiateElection(new ArrayList<>(players));
+                electionsRun.incrementAndGet();
+                return;
+            } catch (RemoteException e) {
+                Log.warn("Error triggering election: " + e.getMessage());
+            }
+        }
+    }
+
+    // Number of elections the registrations have triggered so far
+    public long getElectionsRun() {
+        return electionsRun.get();
+    }
+
+    public synchronized void deregister(Player player) {
+        Log.info("Player deregistered from " + id + ": " + members.getId(player));
+        members.remove(player);
+        playerList.remove(player);
+        detector.forget(player);
+        lastActiveMillis = System.currentTimeMillis();
+    }
+
+    // Close the session if nobody has been in it for idleMillis. A closed session turns every
+    // registration away, the Tracker drops it and a later join routes elsewhere
+    public synchronized boolean closeIfIdle(long idleMillis) {
+        if (closed) {
+            return true;
+        }
+        if (!playerList.isEmpty() || System.currentTimeMillis() - lastActiveMillis < idleMillis) {
+            return false;
+        }
+        closed = true;
+        elections.shutdown();
+        detector.shutdown();
+        Log.info("Closed idle session " + id);
+        return true;
+    }
+
+    // The primary of every region as of the given election, ignored if a newer one was reported
+    public synchronized void updateRegionOwners(long epoch, String initiatorId, ArrayList<String> ownerIds) {
+        if (!Election.isNewer(epoch, initiatorId, regionOwnersEpoch, regionOwnersInitiatorId)) {
+            return;
+        }
+        regionOwnersEpoch = epoch;
+        regionOwnersInitiatorId = initiatorId;
+        regionOwnerIds = new ArrayList<>(ownerIds);
+        Log.info("Region owners of election " + epoch + " in " + id + ": " + regionOwnerIds);
+    }
+
+    public synchronized ArrayList<Player> getRegionOwners() {
+        ArrayList<Player> owners = new ArrayList<>(regionOwnerIds.size());
+        for (String ownerId : regionOwnerIds) {
+            owners.add(members.get(ownerId));
+        }
+        return owners;
+    }
+}
@@ -1,7 +1,28 @@
 package src;
 
+import java.util.Random;
+
 public class GameUtils {
     public static int getIdx(int x, int y, int gridSize) {
         return y * gridSize + x;
     }
+
+    public static int getX(int idx, int gridSize) {
+        return idx % gridSize;
+    }
+
+    public static int getY(int idx, int gridSize) {
+        return idx / gridSize;
+    }
+
+    // Random source for spawns and treasure respawns.
+    // Set -Dgame.seed=<long> to make runs reproducible, e.g. for benchmarks;
+    // the salt keeps several players seeded from the same value apart.
+    public static Random newRandom(String salt) {
+        String seed = System.getProperty("game.seed");
+        if (seed == null) {
+            return new Random();
+        }
+        return new Random(Long.parseLong(seed) ^ salt.hashCode());
+    }
 }
@@ -0,0 +1,31 @@
+package src;
+
+import java.util.Map;
+
+// What a player sees of the game. Game only talks to this interface, so a node nobody
+// watches (a bot, a dedicated primary) can run with a view that draws nothing.
+// Select the headless view with -Dgame.headless=true, or --headless on the Game command line.
+public interface GameView {
+
+    static GameView create() {
+        return Boolean.getBoolean("game.headless") ? new HeadlessGameView() : new SwingGameView();
+    }
+
+    // A headless view draws nothing, so Game doesn't even collect what to draw
+    boolean isHeadless();
+
+    // Show the maze of the given player; onClose runs when the user closes the view
+    void open(String playerId, int gridSize, Runnable onClose);
+
+    // Run the task on the thread that owns the view
+    void invokeLater(Runnable task);
+
+    // Redraw one cell. status is one of the BlockStatus constants, playerId the player on it, if any
+    void drawCell(int idx, int status, String playerId);
+
+    // Redraw the game stats; scores are in display order
+    void drawStats(String startTime, String primaryId, String backupId, Map<String, Integer> scores);
+
+    // Draw attention to an inconsistent game state
+    void alert();
+}
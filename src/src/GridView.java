@@ -0,0 +1,68 @@
+package src;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.GridLayout;
+import javax.swing.BorderFactory;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+
+// The maze panel: one cell panel per maze cell, each with its own label created once.
+// Cells are redrawn one at a time, so a frame only costs as much as the cells that changed.
+public class GridView {
+    private static final Font PLAYER_FONT = new Font(Font.DIALOG, Font.BOLD, 16);
+    private static final Font TREASURE_FONT = new Font(Font.DIALOG, Font.BOLD, 23);
+
+    private final int gridSize;
+    // The id of the player of this game, drawn in red
+    private final String ownPlayerId;
+    private final JPanel panel;
+    private final JPanel[] cells;
+    private final JLabel[] labels;
+
+    public GridView(int gridSize, String ownPlayerId) {
+        this.gridSize = gridSize;
+        this.ownPlayerId = ownPlayerId;
+        this.panel = new JPanel(new GridLayout(gridSize, gridSize));
+        this.cells = new JPanel[gridSize * gridSize];
+        this.labels = new JLabel[gridSize * gridSize];
+        for (int i = 0; i < cells.length; i++) {
+            JPanel cell = new JPanel();
+            cell.setBorder(BorderFactory.createLineBorder(Color.BLACK));
+            cell.setBackground(Color.WHITE);
+            JLabel label = new JLabel();
+            label.setForeground(Color.WHITE);
+            label.setHorizontalAlignment(JLabel.CENTER);
+            cell.add(label);
+            cells[i] = cell;
+            labels[i] = label;
+            panel.add(cell);
+        }
+    }
+
+    public JPanel getPanel() {
+        return panel;
+    }
+
+    public int getGridSize() {
+        return gridSize;
+    }
+
+    // Redraw one cell. status is one of the BlockStatus constants, playerId the player on it, if any
+    public void drawCell(int idx, int status, String playerId) {
+        JPanel cell = cells[idx];
+        JLabel label = labels[idx];
+        if (status == BlockStatus.PLAYER) {
+            cell.setBackground(ownPlayerId.equals(playerId) ? Color.RED : Color.MAGENTA);
+            label.setFont(PLAYER_FONT);
+            label.setText(playerId);
+        } else if (status == BlockStatus.TREASURE) {
+            cell.setBackground(Color.BLUE);
+            label.setFont(TREASURE_FONT);
+            label.setText("*");
+        } else {
+            cell.setBackground(Color.WHITE);
+            label.setText("");
+        }
+    }
+}
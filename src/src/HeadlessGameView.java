@@ -0,0 +1,34 @@
+package src;
+
+import java.util.Map;
+
+// The view of a node nobody watches: draws nothing, so no AWT is loaded at all
+public class HeadlessGameView implements GameView {
+
+    @Override
+    public boolean isHeadless() {
+        return true;
+    }
+
+    @Override
+    public void open(String playerId, int gridSize, Runnable onClose) {
+    }
+
+    @Override
+    public void invokeLater(Runnable task) {
+        task.run();
+    }
+
+    @Override
+    public void drawCell(int idx, int status, String playerId) {
+    }
+
+    @Override
+    public void drawStats(String startTime, String primaryId, String backupId, Map<String, Integer> scores) {
+    }
+
+    @Override
+    public void alert() {
+        Log.warn("Inconsistent game state");
+    }
+}
@@ -0,0 +1,195 @@
+package src;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Leveled logging with an asynchronous appender.
+// A caller only queues its message; one background thread writes the queued messages in batches,
+// to stdout (DEBUG, INFO) or stderr (WARN, ERROR). So a move never waits on the synchronized
+// System.out. The queue is a bounded ring: when it is full, messages are dropped and counted
+// instead of blocking the caller.
+//
+// The level is fixed at startup with -Dgame.log.level=DEBUG|INFO|WARN|ERROR (INFO by default).
+// DEBUG is a constant, so on hot paths `if (Log.DEBUG) Log.debug(...)` costs nothing when it is
+// off: the JIT drops the whole statement, building the message included.
+public final class Log {
+    public enum Level {
+        DEBUG,
+        INFO,
+        WARN,
+        ERROR
+    }
+
+    public static final Level LEVEL = parseLevel(System.getProperty("game.log.level"));
+    public static final boolean DEBUG = LEVEL == Level.DEBUG;
+
+    private static final int CAPACITY = Integer.getInteger("game.log.bufferSize", 8192);
+    // Messages written per batch
+    private static final int BATCH_SIZE = 256;
+    private static final DateTimeFormatter TIME_FORMAT =
+        DateTimeFormatter.ofPattern("HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    private static final ArrayBlockingQueue<Entry> queue = new ArrayBlockingQueue<>(CAPACITY);
+    private static final AtomicLong dropped = new AtomicLong();
+    private static final AtomicLong queued = new AtomicLong();
+    // Held while writing, so a flush and the writer thread never interleave their batches
+    private static final Object writeLock = new Object();
+    // Guarded by writeLock
+    private static long written;
+
+    private static class Entry {
+        final long time = System.currentTimeMillis();
+        final String thread = Thread.currentThread().getName();
+        final Level level;
+        final String message;
+        final Throwable error;
+
+        Entry(Level level, String message, Throwable error) {
+            this.level = level;
+            this.message = message;
+            this.error = error;
+        }
+    }
+
+    static {
+        Thread writer = new Thread(Log::writeLoop, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        // Don't lose the last messages when the game exits
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::flush, "log-flush"));
+    }
+
+    private Log() {
+    }
+
+    private static Level parseLevel(String name) {
+        if (name != null) {
+            for (Level level : Level.values()) {
+                if (level.name().equalsIgnoreCase(name.trim())) {
+                    return level;
+                }
+            }
+        }
+        return Level.INFO;
+    }
+
+    public static boolean isEnabled(Level level) {
+        return level.ordinal() >= LEVEL.ordinal();
+    }
+
+    // Guard calls on hot paths with `if (Log.DEBUG)`
+    public static void debug(String message) {
+        log(Level.DEBUG, message, null);
+    }
+
+    public static void info(String message) {
+        log(Level.INFO, message, null);
+    }
+
+    public static void warn(String message) {
+        log(Level.WARN, message, null);
+    }
+
+    public static void error(String message) {
+        log(Level.ERROR, message, null);
+    }
+
+    public static void error(String message, Throwable error) {
+        log(Level.ERROR, message, error);
+    }
+
+    private static void log(Level level, String message, Throwable error) {
+        if (!isEnabled(level)) {
+            return;
+        }
+        if (queue.offer(new Entry(level, message, error))) {
+            queued.incrementAndGet();
+        } else {
+            dropped.incrementAndGet();
+        }
+    }
+
+    // Number of messages dropped so far because the queue was full
+    public static long getDropped() {
+        return dropped.get();
+    }
+
+    // Write out everything queued so far, e.g. before exiting
+    public static void flush() {
+        long target = queued.get();
+        List<Entry> batch = new ArrayList<>(BATCH_SIZE);
+        synchronized (writeLock) {
+            while (queue.drainTo(batch, BATCH_SIZE) > 0) {
+                write(batch);
+                batch.clear();
+            }
+            // The writer thread may have taken the last messages but not written them yet
+            long deadline = System.currentTimeMillis() + 1000;
+            while (written < target && System.currentTimeMillis() < deadline) {
+                try {
+                    writeLock.wait(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private static void writeLoop() {
+        List<Entry> batch = new ArrayList<>(BATCH_SIZE);
+        while (true) {
+            try {
+                Entry first = queue.take();
+                synchronized (writeLock) {
+                    batch.add(first);
+                    queue.drainTo(batch, BATCH_SIZE - 1);
+                    write(batch);
+                }
+                batch.clear();
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    // Must be called with writeLock held
+    private static void write(List<Entry> batch) {
+        StringBuilder out = new StringBuilder();
+        StringBuilder err = new StringBuilder();
+        for (Entry entry : batch) {
+            StringBuilder line = entry.level.ordinal() >= Level.WARN.ordinal() ? err : out;
+            line.append(TIME_FORMAT.format(Instant.ofEpochMilli(entry.time)))
+                .append(' ').append(entry.level)
+                .append(" [").append(entry.thread).append("] ")
+                .append(entry.message).append(System.lineSeparator());
+            if (entry.error != null) {
+                StringWriter trace = new StringWriter();
+                entry.error.printStackTrace(new PrintWriter(trace));
+                line.append(trace);
+            }
+        }
+        written += batch.size();
+        writeLock.notifyAll();
+        long lost = dropped.getAndSet(0);
+        if (lost > 0) {
+            err.append(lost).append(" log messages dropped, the log queue was full").append(System.lineSeparator());
+        }
+        // Read the streams every time, they may have been redirected meanwhile
+        if (out.length() > 0) {
+            System.out.print(out);
+            System.out.flush();
+        }
+        if (err.length() > 0) {
+            System.err.print(err);
+            System.err.flush();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package src;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Local directory of the players in the game, keyed by player id.
+// A player's id never changes, so it is learnt once (at join or election) and looked up
+// here afterwards instead of calling getPlayerId() remotely on the stub every time.
+// RMI stubs of the same remote object are equal, so a stub can be used as a key too.
+public class MemberDirectory {
+    private final Map<String, Player> playersById = new LinkedHashMap<>();
+    private final Map<Player, String> idsByPlayer = new HashMap<>();
+
+    public synchronized void put(String playerId, Player player) {
+        Player old = playersById.put(playerId, player);
+        if (old != null && !old.equals(player)) {
+            idsByPlayer.remove(old);
+        }
+        idsByPlayer.put(player, playerId);
+    }
+
+    // Replace the whole membership, e.g. with the players of an election result
+    public synchronized void replaceAll(List<String> playerIds, List<Player> players) {
+        playersById.clear();
+        idsByPlayer.clear();
+        for (int i = 0; i < playerIds.size(); i++) {
+            put(playerIds.get(i), players.get(i));
+        }
+    }
+
+    public synchronized Player get(String playerId) {
+        return playersById.get(playerId);
+    }
+
+    // The id of a known player, null if it isn't in the directory
+    public synchronized String getId(Player player) {
+        return idsByPlayer.get(player);
+    }
+
+    public synchronized boolean contains(String playerId) {
+        return playersById.containsKey(playerId);
+    }
+
+    // The id of the player, asking the player itself only if it isn't known yet
+    public String resolveId(Player player) throws RemoteException {
+        String playerId = getId(player);
+        if (playerId == null) {
+            playerId = player.getPlayerId();
+            put(playerId, player);
+        }
+        return playerId;
+    }
+
+    // Forget a player that has been declared dead or has left
+    public synchronized void remove(Player player) {
+        String playerId = idsByPlayer.remove(player);
+        if (playerId != null) {
+            playersById.remove(playerId);
+        }
+    }
+
+    public synchronized void removeAll(Collection<Player> players) {
+        for (Player player : players) {
+            remove(player);
+        }
+    }
+
+    public synchronized Player removeId(String playerId) {
+        Player player = playersById.remove(playerId);
+        if (player != null) {
+            idsByPlayer.remove(player);
+        }
+        return player;
+    }
+
+    public synchronized List<String> getIds() {
+        return new ArrayList<>(playersById.keySet());
+    }
+
+    public synchronized int size() {
+        return playersById.size();
+    }
+}
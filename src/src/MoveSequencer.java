@@ -0,0 +1,204 @@
+package src;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Funnels the moves the primary receives through a single writer.
+// The RMI threads claim a slot of a pre-allocated ring, fill it in and wait. Whichever waiting
+// thread finds the writer role free takes it and drains the ring in claim order, applying every
+// move published so far as one batch: a single acquisition of the state lock and a single
+// committed delta. Moves are totally ordered by the sequence number of their slot, and under load
+// the lock is taken once per batch instead of once per move. The writer role moves between the
+// waiting threads rather than living on a thread of its own, so an uncontended move doesn't pay
+// for waking another thread and being woken up again.
+// Configure the ring with -Dgame.sequencer.capacity (rounded up to a power of two).
+public class MoveSequencer {
+    public static final int DEFAULT_CAPACITY = Integer.getInteger("game.sequencer.capacity", 1024);
+    // How long a thread spins, yielding, before it parks
+    private static final int SPINS = 64;
+
+    // What the writer does with the moves, called with the lock held
+    public interface Writer {
+        // Apply one move into the batch's delta: to (x, y), or the directions from where the player stands
+        void apply(String playerId, int x, int y, char[] directions, GameDelta delta);
+
+        // Commit the batch's delta, null if nothing changed
+        GameDelta commit(GameDelta delta);
+    }
+
+    private static final class Slot {
+        // The sequence a producer may claim the slot for next, once the previous owner has its result
+        volatile long free;
+        // The sequence whose move the slot holds, set once the move is filled in
+        volatile long published = -1;
+        // The sequence whose move has been applied
+        volatile long done = -1;
+        volatile Thread waiter;
+        String playerId;
+        int x;
+        int y;
+        char[] directions;
+        GameDelta result;
+    }
+
+    private final Object lock;
+    private final Writer writer;
+    private final Slot[] ring;
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong();
+    // Held by the thread acting as the writer
+    private final AtomicBoolean writing = new AtomicBoolean();
+    // Only written by the writer
+    private long next;
+    private volatile long batches;
+    private volatile long applied;
+
+    public MoveSequencer(Object lock, Writer writer) {
+        this(lock, writer, DEFAULT_CAPACITY);
+    }
+
+    public MoveSequencer(Object lock, Writer writer, int capacity) {
+        this.lock = lock;
+        this.writer = writer;
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.ring = new Slot[size];
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            ring[i] = new Slot();
+            ring[i].free = i;
+        }
+    }
+
+    public int getCapacity() {
+        return ring.length;
+    }
+
+    // Number of moves applied so far
+    public long getApplied() {
+        return applied;
+    }
+
+    // Number of batches the writer has applied them in
+    public long getBatches() {
+        return batches;
+    }
+
+    // Apply a move to (x, y) and wait for it. Returns the committed delta of its batch,
+    // null if nothing in the batch changed the state
+    public GameDelta move(String playerId, int x, int y) {
+        return submit(playerId, x, y, null);
+    }
+
+    // Apply the directions, one step at a time from where the player stands, and wait for them
+    public GameDelta moves(String playerId, char[] directions) {
+        return submit(playerId, 0, 0, directions);
+    }
+
+    private GameDelta submit(String playerId, int x, int y, char[] directions) {
+        long sequence = claimed.getAndIncrement();
+        Slot slot = ring[(int) sequence & mask];
+        // The ring is full until the owner a lap ago has taken its result
+        for (int spins = 0; slot.free != sequence; spins++) {
+            if (spins < SPINS) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(this, 1_000L);
+            }
+        }
+        slot.playerId = playerId;
+        slot.x = x;
+        slot.y = y;
+        slot.directions = directions;
+        slot.published = sequence;
+
+        for (int spins = 0; slot.done != sequence; spins++) {
+            // A move claimed before ours but not filled in yet holds the batch up, wait for it
+            if (writing.compareAndSet(false, true) && write()) {
+                continue;
+            }
+            if (spins < SPINS) {
+                Thread.yield();
+                continue;
+            }
+            slot.waiter = Thread.currentThread();
+            // Whoever writes now will wake us up, and if nobody does the role is ours to take
+            if (slot.done != sequence && writing.get()) {
+                LockSupport.parkNanos(this, 1_000_000L);
+            }
+        }
+        slot.waiter = null;
+        GameDelta result = slot.result;
+        slot.result = null;
+        slot.playerId = null;
+        slot.directions = null;
+        slot.free = sequence + ring.length;
+        return result;
+    }
+
+    // Act as the writer for one batch, then give the role up. False if there was nothing to write.
+    // Must be called holding the writer role
+    private boolean write() {
+        long pending;
+        boolean wrote;
+        try {
+            wrote = writeBatch();
+        } finally {
+            pending = next;
+            writing.set(false);
+        }
+        // A move published while we were writing may have found the role taken and parked,
+        // hand the role over to it
+        Slot slot = ring[(int) pending & mask];
+        if (slot.published == pending) {
+            Thread waiter = slot.waiter;
+            if (waiter != null) {
+                LockSupport.unpark(waiter);
+            }
+        }
+        return wrote;
+    }
+
+    // Apply every move published in a row from next on as one batch, false if there is none
+    private boolean writeBatch() {
+        if (ring[(int) next & mask].published != next) {
+            return false;
+        }
+        long first = next;
+        long end = first;
+        GameDelta committed = null;
+        try {
+            synchronized (lock) {
+                GameDelta delta = new GameDelta();
+                // Bounded by the ring, a producer can't lap the writer
+                while (end - first < ring.length && ring[(int) end & mask].published == end) {
+                    Slot slot = ring[(int) end & mask];
+                    end++;
+                    try {
+                        writer.apply(slot.playerId, slot.x, slot.y, slot.directions, delta);
+                    } catch (RuntimeException e) {
+                        // Only this move is lost, the rest of the batch still goes in
+                        Log.error("Error applying the move of " + slot.playerId, e);
+                    }
+                }
+                committed = writer.commit(delta);
+            }
+        } catch (RuntimeException e) {
+            // The movers of the batch still get an answer, with nothing committed
+            Log.error("Error committing moves " + first + " to " + (end - 1), e);
+        }
+        for (long sequence = first; sequence < end; sequence++) {
+            Slot slot = ring[(int) sequence & mask];
+            slot.result = committed;
+            slot.done = sequence;
+            Thread waiter = slot.waiter;
+            if (waiter != null) {
+                LockSupport.unpark(waiter);
+            }
+        }
+        next = end;
+        applied = end;
+        batches++;
+        return true;
+    }
+}
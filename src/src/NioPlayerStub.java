@@ -0,0 +1,396 @@
+package src;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import src.Game.ServerRole;
+
+// A reference to a player exported on NioTransport, what an RMI stub is for RMI.
+// It only holds the address of the player's JVM and the player's object id there, so it can be
+// handed to the Tracker and sent to the other players like a stub. Its calls go through the
+// NioTransport of the JVM it is used in.
+// dispatch() is the other end: it decodes a call and runs it on the local player.
+public class NioPlayerStub implements Player, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // The calls, one per method of Player
+    static final byte GET_PLAYER_ID = 1;
+    static final byte SET_PLAYER_ID = 2;
+    static final byte GET_PRIMARY_SERVER = 3;
+    static final byte CLEAR_RECEIVED_PLAYER_IDS = 4;
+    static final byte SET_PLAYER_LIST = 5;
+    static final byte BROADCAST_ID = 6;
+    static final byte PING = 7;
+    static final byte RECEIVE_ID = 8;
+    static final byte ELECT_SERVERS = 9;
+    static final byte PROMOTE_BACKUP_TO_PRIMARY = 10;
+    static final byte GET_SERVER_ROLE = 11;
+    static final byte SELF_CLEANUP_AND_DEREGISTER = 12;
+    static final byte INITIATE_ELECTION = 13;
+    static final byte PROBE_FOR_ELECTION = 14;
+    static final byte APPLY_ELECTION_RESULT = 15;
+    static final byte UPDATE_BY_NEW_MOVE_FULL = 16;
+    static final byte UPDATE_BY_NEW_MOVE = 17;
+    static final byte UPDATE_BY_NEW_MOVES = 18;
+    static final byte GET_GAME_STATE = 19;
+    static final byte GET_STATE_UPDATE = 20;
+    static final byte APPLY_GAME_DELTAS = 21;
+    static final byte IS_GAME_INITIALIZED = 22;
+    static final byte UPDATE_GAME_STATE = 23;
+    static final byte DEMOTE_TO_BACKUP = 24;
+    static final byte DEMOTE_TO_PLAYER = 25;
+    static final byte REMOVE_PLAYER_GAME_STATE = 26;
+    static final byte UPDATE_PLAYER_LIST = 27;
+    static final byte GET_PLAYERS = 28;
+    static final byte ACCEPT_HAND_OFF = 29;
+
+    final String host;
+    final int port;
+    final long objectId;
+
+    NioPlayerStub(String host, int port, long objectId) {
+        this.host = host;
+        this.port = port;
+        this.objectId = objectId;
+    }
+
+    private interface Arguments {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private interface Result<T> {
+        T read(DataInputStream in) throws IOException;
+    }
+
+    private static final Arguments NONE = out -> { };
+
+    private <T> T invoke(byte op, Arguments arguments, Result<T> result) throws RemoteException {
+        try {
+            NioTransport.Frame request = NioTransport.request(op, objectId);
+            arguments.write(request.out);
+            DataInputStream in = NioTransport.getInstance().call(this, request);
+            return result == null ? null : result.read(in);
+        } catch (RemoteException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new RemoteException("Error encoding a call to " + this, e);
+        }
+    }
+
+    @Override
+    public String getPlayerId() throws RemoteException {
+        return invoke(GET_PLAYER_ID, NONE, in -> in.readUTF());
+    }
+
+    @Override
+    public void setPlayerId(String playerId) throws RemoteException {
+        invoke(SET_PLAYER_ID, out -> out.writeUTF(playerId), null);
+    }
+
+    @Override
+    public Player getPrimaryServer() throws RemoteException {
+        return invoke(GET_PRIMARY_SERVER, NONE, NioTransport::readPlayer);
+    }
+
+    @Override
+    public void clearReceivedPlayerIds() throws RemoteException {
+        invoke(CLEAR_RECEIVED_PLAYER_IDS, NONE, null);
+    }
+
+    @Override
+    public void setPlayerList(ArrayList<Player> playerList) throws RemoteException {
+        invoke(SET_PLAYER_LIST, out -> NioTransport.writePlayers(out, playerList), null);
+    }
+
+    @Override
+    public void broadcastId() throws RemoteException {
+        invoke(BROADCAST_ID, NONE, null);
+    }
+
+    @Override
+    public String ping() throws RemoteException {
+        return invoke(PING, NONE, in -> in.readUTF());
+    }
+
+    @Override
+    public void receiveId(String playerId) throws RemoteException {
+        invoke(RECEIVE_ID, out -> out.writeUTF(playerId), null);
+    }
+
+    @Override
+    public void electServers() throws RemoteException {
+        invoke(ELECT_SERVERS, NONE, null);
+    }
+
+    @Override
+    public void promoteBackupToPrimary() throws RemoteException {
+        invoke(PROMOTE_BACKUP_TO_PRIMARY, NONE, null);
+    }
+
+    @Override
+    public ServerRole getServerRole() throws RemoteException {
+        return invoke(GET_SERVER_ROLE, NONE, NioTransport::readRole);
+    }
+
+    @Override
+    public void selfCleanupAndDeregister() throws RemoteException {
+        invoke(SELF_CLEANUP_AND_DEREGISTER, NONE, null);
+    }
+
+    @Override
+    public void initiateElection(ArrayList<Player> players) throws RemoteException {
+        invoke(INITIATE_ELECTION, out -> NioTransport.writePlayers(out, players), null);
+    }
+
+    @Override
+    public Election.Probe probeForElection() throws RemoteException {
+        return invoke(PROBE_FOR_ELECTION, NONE,
+            in -> {
+                String playerId = in.readUTF();
+                ServerRole role = NioTransport.readRole(in);
+                long epoch = in.readLong();
+                int[] regions = new int[in.readInt()];
+                for (int i = 0; i < regions.length; i++) {
+                    regions[i] = in.readInt();
+                }
+                return new Election.Probe(playerId, role, epoch, regions);
+            });
+    }
+
+    @Override
+    public void applyElectionResult(Election.Result result) throws RemoteException {
+        invoke(APPLY_ELECTION_RESULT, out -> NioTransport.writeObject(out, result), null);
+    }
+
+    @Override
+    public GameState updateGamebyNewMove(Player player, int x, int y) throws RemoteException {
+        return invoke(UPDATE_BY_NEW_MOVE_FULL, out -> {
+            NioTransport.writePlayer(out, player);
+            out.writeInt(x);
+            out.writeInt(y);
+        }, in -> (GameState) NioTransport.readObject(in));
+    }
+
+    @Override
+    public StateUpdate updateGamebyNewMove(Player player, int x, int y, long knownVersion) throws RemoteException {
+        return invoke(UPDATE_BY_NEW_MOVE, out -> {
+            NioTransport.writePlayer(out, player);
+            out.writeInt(x);
+            out.writeInt(y);
+            out.writeLong(knownVersion);
+        }, NioTransport::readStateUpdate);
+    }
+
+    @Override
+    public StateUpdate updateGamebyNewMoves(Player player, char[] directions, long knownVersion) throws RemoteException {
+        return invoke(UPDATE_BY_NEW_MOVES, out -> {
+            NioTransport.writePlayer(out, player);
+            out.writeUTF(new String(directions));
+            out.writeLong(knownVersion);
+        }, NioTransport::readStateUpdate);
+    }
+
+    @Override
+    public GameState getGameState(Player requester) throws RemoteException {
+        return invoke(GET_GAME_STATE, out -> NioTransport.writePlayer(out, requester),
+            in -> (GameState) NioTransport.readObject(in));
+    }
+
+    @Override
+    public StateUpdate getStateUpdate(Player requester, long knownVersion) throws RemoteException {
+        return invoke(GET_STATE_UPDATE, out -> {
+            NioTransport.writePlayer(out, requester);
+            out.writeLong(knownVersion);
+        }, NioTransport::readStateUpdate);
+    }
+
+    @Override
+    public boolean applyGameDeltas(List<GameDelta> deltas) throws RemoteException {
+        return invoke(APPLY_GAME_DELTAS, out -> NioTransport.writeDeltas(out, deltas), DataInputStream::readBoolean);
+    }
+
+    @Override
+    public boolean isGameInitialized() throws RemoteException {
+        return invoke(IS_GAME_INITIALIZED, NONE, DataInputStream::readBoolean);
+    }
+
+    @Override
+    public void updateGameState(GameState gameState) throws RemoteException {
+        invoke(UPDATE_GAME_STATE, out -> NioTransport.writeObject(out, gameState), null);
+    }
+
+    @Override
+    public void demoteToBackup() throws RemoteException {
+        invoke(DEMOTE_TO_BACKUP, NONE, null);
+    }
+
+    @Override
+    public void demoteToPlayer() throws RemoteException {
+        invoke(DEMOTE_TO_PLAYER, NONE, null);
+    }
+
+    @Override
+    public void removePlayerGameState(Player player) throws RemoteException {
+        invoke(REMOVE_PLAYER_GAME_STATE, out -> NioTransport.writePlayer(out, player), null);
+    }
+
+    @Override
+    public void updatePlayerList() throws RemoteException {
+        invoke(UPDATE_PLAYER_LIST, NONE, null);
+    }
+
+    @Override
+    public ArrayList<Player> getPlayers(List<String> playerIds) throws RemoteException {
+        return invoke(GET_PLAYERS, out -> {
+            Varint.write(out, playerIds.size());
+            for (String id : playerIds) {
+                out.writeUTF(id);
+            }
+        }, NioTransport::readPlayers);
+    }
+
+    @Override
+    public boolean acceptHandOff(String playerId, int x, int y, int score) throws RemoteException {
+        return invoke(ACCEPT_HAND_OFF, out -> {
+            out.writeUTF(playerId);
+            out.writeInt(x);
+            out.writeInt(y);
+            out.writeInt(score);
+        }, in -> in.readBoolean());
+    }
+
+    // Run a call on the local player and write its result
+    static void dispatch(Player player, byte op, DataInputStream in, DataOutputStream out) throws Exception {
+        switch (op) {
+            case GET_PLAYER_ID:
+                out.writeUTF(player.getPlayerId());
+                break;
+            case SET_PLAYER_ID:
+                player.setPlayerId(in.readUTF());
+                break;
+            case GET_PRIMARY_SERVER:
+                NioTransport.writePlayer(out, player.getPrimaryServer());
+                break;
+            case CLEAR_RECEIVED_PLAYER_IDS:
+                player.clearReceivedPlayerIds();
+                break;
+            case SET_PLAYER_LIST:
+                player.setPlayerList(NioTransport.readPlayers(in));
+                break;
+            case BROADCAST_ID:
+                player.broadcastId();
+                break;
+            case PING:
+                out.writeUTF(player.ping());
+                break;
+            case RECEIVE_ID:
+                player.receiveId(in.readUTF());
+                break;
+            case ELECT_SERVERS:
+                player.electServers();
+                break;
+            case PROMOTE_BACKUP_TO_PRIMARY:
+                player.promoteBackupToPrimary();
+                break;
+            case GET_SERVER_ROLE:
+                NioTransport.writeRole(out, player.getServerRole());
+                break;
+            case SELF_CLEANUP_AND_DEREGISTER:
+                player.selfCleanupAndDeregister();
+                break;
+            case INITIATE_ELECTION:
+                player.initiateElection(NioTransport.readPlayers(in));
+                break;
+            case PROBE_FOR_ELECTION: {
+                Election.Probe probe = player.probeForElection();
+                out.writeUTF(probe.playerId);
+                NioTransport.writeRole(out, probe.role);
+                out.writeLong(probe.epoch);
+                out.writeInt(probe.regions.length);
+                for (int region : probe.regions) {
+                    out.writeInt(region);
+                }
+                break;
+            }
+            case APPLY_ELECTION_RESULT:
+                player.applyElectionResult((Election.Result) NioTransport.readObject(in));
+                break;
+            case UPDATE_BY_NEW_MOVE_FULL:
+                NioTransport.writeObject(out, player.updateGamebyNewMove(NioTransport.readPlayer(in), in.readInt(), in.readInt()));
+                break;
+            case UPDATE_BY_NEW_MOVE:
+                NioTransport.writeStateUpdate(out, player.updateGamebyNewMove(NioTransport.readPlayer(in), in.readInt(),
+                                                                              in.readInt(), in.readLong()));
+                break;
+            case UPDATE_BY_NEW_MOVES:
+                NioTransport.writeStateUpdate(out, player.updateGamebyNewMoves(NioTransport.readPlayer(in),
+                                                                               in.readUTF().toCharArray(), in.readLong()));
+                break;
+            case GET_GAME_STATE:
+                NioTransport.writeObject(out, player.getGameState(NioTransport.readPlayer(in)));
+                break;
+            case GET_STATE_UPDATE:
+                NioTransport.writeStateUpdate(out, player.getStateUpdate(NioTransport.readPlayer(in), in.readLong()));
+                break;
+            case APPLY_GAME_DELTAS:
+                out.writeBoolean(player.applyGameDeltas(NioTransport.readDeltas(in)));
+                break;
+            case IS_GAME_INITIALIZED:
+                out.writeBoolean(player.isGameInitialized());
+                break;
+            case UPDATE_GAME_STATE:
+                player.updateGameState((GameState) NioTransport.readObject(in));
+                break;
+            case DEMOTE_TO_BACKUP:
+                player.demoteToBackup();
+                break;
+            case DEMOTE_TO_PLAYER:
+                player.demoteToPlayer();
+                break;
+            case REMOVE_PLAYER_GAME_STATE:
+                player.removePlayerGameState(NioTransport.readPlayer(in));
+                break;
+            case UPDATE_PLAYER_LIST:
+                player.updatePlayerList();
+                break;
+            case GET_PLAYERS: {
+                int count = Varint.read(in);
+                List<String> ids = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    ids.add(in.readUTF());
+                }
+                NioTransport.writePlayers(out, player.getPlayers(ids));
+                break;
+            }
+            case ACCEPT_HAND_OFF:
+                out.writeBoolean(player.acceptHandOff(in.readUTF(), in.readInt(), in.readInt(), in.readInt()));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown call: " + op);
+        }
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof NioPlayerStub)) {
+            return false;
+        }
+        NioPlayerStub stub = (NioPlayerStub) other;
+        return objectId == stub.objectId && port == stub.port && host.equals(stub.host);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(host, port, objectId);
+    }
+
+    @Override
+    public String toString() {
+        return "NioPlayerStub[" + host + ":" + port + "#" + objectId + "]";
+    }
+}
@@ -0,0 +1,732 @@
+package src;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.rmi.ConnectException;
+import java.rmi.NoSuchObjectException;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.rmi.ServerException;
+import java.rmi.server.RemoteObject;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import src.Game.ServerRole;
+import src.Player.GameState;
+import src.Player.StateUpdate;
+
+// Non-blocking transport for the Player calls, as an alternative to RMI (-Dgame.transport=nio).
+// The calls go as length-prefixed binary frames over persistent TCP connections, one per remote
+// JVM, shared by all the players of this JVM. Calls are pipelined: any number of them can be in
+// flight on a connection, each request carries a call id that its response echoes.
+// One selector thread reads all the sockets and writes what a caller couldn't write at once.
+// The incoming calls run on a pool of worker threads, because a call may block or call other
+// players back.
+//
+// Frames start with an int, the length of the rest of the frame:
+//   request:  int call id, byte op (see NioPlayerStub), long object id, arguments
+//   response: int call id, byte status, result or error message
+// The arguments and results of the calls on the move path are written by hand. The rarer
+// ones (election results, full game states) use Java serialization, with the local players
+// replaced by their references.
+//
+// -Dgame.nio.host     address the other nodes reach this JVM at (the local host address)
+// -Dgame.nio.port     port to accept calls on (any free port)
+// -Dgame.nio.timeoutMs how long a call waits for its response (30000)
+public class NioTransport implements Transport {
+    static final byte STATUS_OK = 0;
+    static final byte STATUS_ERROR = 1;
+    static final byte STATUS_NO_SUCH_OBJECT = 2;
+
+    // Header sizes, the length included
+    private static final int REQUEST_HEADER = 4 + 4 + 1 + 8;
+    private static final int RESPONSE_HEADER = 4 + 4 + 1;
+    private static final int MAX_FRAME = 64 * 1024 * 1024;
+    // Buffers written at once by a gathering write
+    private static final int WRITE_BATCH = 64;
+
+    // Tags of a player argument
+    private static final byte PLAYER_NULL = 0;
+    private static final byte PLAYER_REFERENCE = 1;
+    private static final byte PLAYER_SERIALIZED = 2;
+
+    private static volatile NioTransport instance;
+
+    private final String host;
+    private final int requestedPort;
+    private final long timeoutMillis;
+    private final Selector selector;
+    private final Thread loop;
+    // Work for the selector thread, e.g. registering a channel
+    private final Queue<Runnable> loopTasks = new ConcurrentLinkedQueue<>();
+    private final ExecutorService workers;
+
+    // Guarded by this
+    private ServerSocketChannel server;
+    private int port;
+
+    // The local players, by object id, and their references
+    private final Map<Long, Player> exported = new ConcurrentHashMap<>();
+    private final Map<Player, NioPlayerStub> references = Collections.synchronizedMap(new IdentityHashMap<>());
+    private final AtomicLong nextObjectId = new AtomicLong(1);
+
+    // Outgoing connections by "host:port"
+    private final Map<String, Connection> connections = new ConcurrentHashMap<>();
+    private final Map<String, Object> connectLocks = new ConcurrentHashMap<>();
+
+    public static synchronized NioTransport getInstance() {
+        if (instance == null) {
+            instance = new NioTransport(System.getProperty("game.nio.host", localHost()),
+                                        Integer.getInteger("game.nio.port", 0),
+                                        Long.getLong("game.nio.timeoutMs", 30000L));
+        }
+        return instance;
+    }
+
+    private static String localHost() {
+        try {
+            return InetAddress.getLocalHost().getHostAddress();
+        } catch (UnknownHostException e) {
+            return InetAddress.getLoopbackAddress().getHostAddress();
+        }
+    }
+
+    private NioTransport(String host, int port, long timeoutMillis) {
+        this.host = host;
+        this.requestedPort = port;
+        this.timeoutMillis = timeoutMillis;
+        try {
+            this.selector = Selector.open();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not open a selector for the NIO transport", e);
+        }
+        this.workers = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "nio-call");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.loop = new Thread(this::runLoop, "nio-transport");
+        loop.setDaemon(true);
+        loop.start();
+    }
+
+    @Override
+    public synchronized Player export(Player player) throws RemoteException {
+        NioPlayerStub reference = references.get(player);
+        if (reference != null) {
+            return reference;
+        }
+        startServer();
+        reference = new NioPlayerStub(host, port, nextObjectId.getAndIncrement());
+        exported.put(reference.objectId, player);
+        references.put(player, reference);
+        return reference;
+    }
+
+    @Override
+    public synchronized void unexport(Player player) {
+        NioPlayerStub reference = references.remove(player);
+        if (reference != null) {
+            exported.remove(reference.objectId);
+        }
+    }
+
+    // Must be called with the lock held
+    private void startServer() throws RemoteException {
+        if (server != null) {
+            return;
+        }
+        try {
+            server = ServerSocketChannel.open();
+            server.bind(new InetSocketAddress(requestedPort));
+            server.configureBlocking(false);
+            port = server.socket().getLocalPort();
+        } catch (IOException e) {
+            server = null;
+            throw new RemoteException("Could not accept calls on port " + requestedPort, e);
+        }
+        ServerSocketChannel channel = server;
+        runOnLoop(() -> {
+            try {
+                channel.register(selector, SelectionKey.OP_ACCEPT);
+            } catch (IOException e) {
+                Log.error("Could not accept calls on port " + port, e);
+            }
+        });
+        Log.info("NIO transport accepting calls on " + host + ":" + port);
+    }
+
+    // ===== Selector thread =====
+
+    private void runOnLoop(Runnable task) {
+        loopTasks.add(task);
+        selector.wakeup();
+    }
+
+    private void runLoop() {
+        while (true) {
+            try {
+                selector.select();
+                Runnable task;
+                while ((task = loopTasks.poll()) != null) {
+                    task.run();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept((ServerSocketChannel) key.channel());
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            connection.onReadable();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.onWritable();
+                        }
+                    } catch (IOException e) {
+                        connection.close(e);
+                    }
+                }
+            } catch (Exception e) {
+                // Keep serving the other connections
+                Log.error("NIO transport error", e);
+            }
+        }
+    }
+
+    private void accept(ServerSocketChannel channel) throws IOException {
+        SocketChannel socket = channel.accept();
+        if (socket == null) {
+            return;
+        }
+        socket.configureBlocking(false);
+        socket.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        Connection connection = new Connection(socket, null);
+        connection.key = socket.register(selector, SelectionKey.OP_READ, connection);
+    }
+
+    // ===== Calls =====
+
+    // A new request frame, the arguments are written to its stream
+    static Frame request(byte op, long objectId) {
+        Frame frame = new Frame();
+        try {
+            frame.out.writeInt(0);
+            frame.out.writeInt(0);
+            frame.out.writeByte(op);
+            frame.out.writeLong(objectId);
+        } catch (IOException e) {
+            // Not thrown by an in-memory stream
+            throw new IllegalStateException(e);
+        }
+        return frame;
+    }
+
+    // Send the request to the player and wait for its response. Returns the stream of the result
+    DataInputStream call(NioPlayerStub target, Frame request) throws RemoteException {
+        Connection connection = connect(target.host, target.port);
+        int callId = connection.nextCallId.incrementAndGet();
+        request.setInt(4, callId);
+        CompletableFuture<byte[]> reply = new CompletableFuture<>();
+        connection.calls.put(callId, reply);
+        byte[] frame;
+        try {
+            if (connection.closed) {
+                throw new IOException("Connection closed");
+            }
+            connection.send(request.toBuffer());
+            frame = reply.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new RemoteException("Call to " + target + " timed out after " + timeoutMillis + "ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted while calling " + target, e);
+        } catch (ExecutionException e) {
+            throw new ConnectException("Connection to " + target + " lost", (Exception) e.getCause());
+        } catch (IOException e) {
+            throw new ConnectException("Connection to " + target + " lost", e);
+        } finally {
+            connection.calls.remove(callId);
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame, RESPONSE_HEADER - 4,
+                                                                          frame.length - (RESPONSE_HEADER - 4)));
+        byte status = frame[4];
+        if (status == STATUS_OK) {
+            return in;
+        }
+        if (status == STATUS_NO_SUCH_OBJECT) {
+            throw new NoSuchObjectException("No such object: " + target);
+        }
+        String message;
+        try {
+            message = in.readUTF();
+        } catch (IOException e) {
+            message = "unknown error";
+        }
+        throw new ServerException("Error in call to " + target + ": " + message);
+    }
+
+    private Connection connect(String host, int port) throws RemoteException {
+        String remote = host + ":" + port;
+        Connection connection = connections.get(remote);
+        if (connection != null && !connection.closed) {
+            return connection;
+        }
+        synchronized (connectLocks.computeIfAbsent(remote, key -> new Object())) {
+            connection = connections.get(remote);
+            if (connection != null && !connection.closed) {
+                return connection;
+            }
+            SocketChannel socket = null;
+            try {
+                socket = SocketChannel.open();
+                socket.socket().connect(new InetSocketAddress(host, port), (int) Math.min(timeoutMillis, Integer.MAX_VALUE));
+                socket.configureBlocking(false);
+                socket.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            } catch (IOException e) {
+                if (socket != null) {
+                    try {
+                        socket.close();
+                    } catch (IOException closeError) {
+                        // Failed anyway
+                    }
+                }
+                throw new ConnectException("Connection refused to " + remote, e);
+            }
+            Connection opened = new Connection(socket, remote);
+            // Queued before any write of the connection, so it is registered first
+            runOnLoop(() -> {
+                try {
+                    opened.key = opened.channel.register(selector, SelectionKey.OP_READ, opened);
+                } catch (IOException e) {
+                    opened.close(e);
+                }
+            });
+            connections.put(remote, opened);
+            return opened;
+        }
+    }
+
+    private void handleRequest(Connection connection, byte[] frame) {
+        ByteBuffer header = ByteBuffer.wrap(frame);
+        int callId = header.getInt();
+        byte op = header.get();
+        long objectId = header.getLong();
+        Frame response = response(callId, STATUS_OK);
+        Player player = exported.get(objectId);
+        if (player == null) {
+            response = response(callId, STATUS_NO_SUCH_OBJECT);
+        } else {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame, REQUEST_HEADER - 4,
+                                                                              frame.length - (REQUEST_HEADER - 4)));
+            try {
+                NioPlayerStub.dispatch(player, op, in, response.out);
+            } catch (Exception e) {
+                response = response(callId, STATUS_ERROR);
+                try {
+                    response.out.writeUTF(String.valueOf(e));
+                } catch (IOException writeError) {
+                    // Not thrown by an in-memory stream
+                }
+            }
+        }
+        try {
+            connection.send(response.toBuffer());
+        } catch (IOException e) {
+            // The caller is gone
+        }
+    }
+
+    private static Frame response(int callId, byte status) {
+        Frame frame = new Frame();
+        try {
+            frame.out.writeInt(0);
+            frame.out.writeInt(callId);
+            frame.out.writeByte(status);
+        } catch (IOException e) {
+            // Not thrown by an in-memory stream
+            throw new IllegalStateException(e);
+        }
+        return frame;
+    }
+
+    // ===== Encoding of the arguments and results =====
+
+    // The reference of a local player, null if it isn't exported here
+    private static NioPlayerStub referenceOf(Player player) {
+        NioTransport transport = instance;
+        return transport == null ? null : transport.references.get(player);
+    }
+
+    static void writePlayer(DataOutput out, Player player) throws IOException {
+        NioPlayerStub reference = player instanceof NioPlayerStub ? (NioPlayerStub) player : referenceOf(player);
+        if (player == null) {
+            out.writeByte(PLAYER_NULL);
+        } else if (reference != null) {
+            out.writeByte(PLAYER_REFERENCE);
+            out.writeUTF(reference.host);
+            out.writeInt(reference.port);
+            out.writeLong(reference.objectId);
+        } else {
+            // Not reachable over this transport, e.g. an RMI stub
+            out.writeByte(PLAYER_SERIALIZED);
+            writeObject(out, player);
+        }
+    }
+
+    static Player readPlayer(DataInput in) throws IOException {
+        byte tag = in.readByte();
+        if (tag == PLAYER_NULL) {
+            return null;
+        } else if (tag == PLAYER_REFERENCE) {
+            return new NioPlayerStub(in.readUTF(), in.readInt(), in.readLong());
+        }
+        return (Player) readObject(in);
+    }
+
+    static void writePlayers(DataOutput out, List<Player> players) throws IOException {
+        Varint.write(out, players.size());
+        for (Player player : players) {
+            writePlayer(out, player);
+        }
+    }
+
+    static ArrayList<Player> readPlayers(DataInput in) throws IOException {
+        int count = Varint.read(in);
+        ArrayList<Player> players = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            players.add(readPlayer(in));
+        }
+        return players;
+    }
+
+    static void writeString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    static void writeRole(DataOutput out, ServerRole role) throws IOException {
+        out.writeByte(role == null ? -1 : role.ordinal());
+    }
+
+    static ServerRole readRole(DataInput in) throws IOException {
+        byte ordinal = in.readByte();
+        return ordinal < 0 ? null : ServerRole.values()[ordinal];
+    }
+
+    static void writeDeltas(DataOutput out, List<GameDelta> deltas) throws IOException {
+        Varint.write(out, deltas.size());
+        for (GameDelta delta : deltas) {
+            delta.writeTo(out);
+        }
+    }
+
+    static List<GameDelta> readDeltas(DataInput in) throws IOException {
+        int count = Varint.read(in);
+        List<GameDelta> deltas = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            deltas.add(GameDelta.readFrom(in));
+        }
+        return deltas;
+    }
+
+    static void writeStateUpdate(DataOutput out, StateUpdate update) throws IOException {
+        out.writeBoolean(update != null);
+        if (update == null) {
+            return;
+        }
+        out.writeLong(update.version);
+        out.writeBoolean(update.view);
+        out.writeBoolean(update.deltas != null);
+        if (update.deltas != null) {
+            writeDeltas(out, update.deltas);
+        }
+        out.writeBoolean(update.snapshot != null);
+        if (update.snapshot != null) {
+            writeObject(out, update.snapshot);
+        }
+    }
+
+    static StateUpdate readStateUpdate(DataInput in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        long version = in.readLong();
+        boolean view = in.readBoolean();
+        List<GameDelta> deltas = in.readBoolean() ? readDeltas(in) : null;
+        GameState snapshot = in.readBoolean() ? (GameState) readObject(in) : null;
+        StateUpdate update = new StateUpdate(version, deltas, snapshot);
+        update.view = view;
+        return update;
+    }
+
+    // Java serialization, for the rarer calls. Local players are written as their references
+    static void writeObject(DataOutput out, Object object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream objects = new ReferenceOutputStream(bytes)) {
+            objects.writeObject(object);
+        }
+        out.writeInt(bytes.size());
+        out.write(bytes.toByteArray());
+    }
+
+    static Object readObject(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        try (ObjectInputStream objects = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return objects.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unknown class in a call", e);
+        }
+    }
+
+    private static class ReferenceOutputStream extends ObjectOutputStream {
+        ReferenceOutputStream(ByteArrayOutputStream bytes) throws IOException {
+            super(bytes);
+            enableReplaceObject(true);
+        }
+
+        @Override
+        protected Object replaceObject(Object object) throws IOException {
+            if (object instanceof Player && !(object instanceof NioPlayerStub)) {
+                NioPlayerStub reference = referenceOf((Player) object);
+                if (reference != null) {
+                    return reference;
+                }
+                if (object instanceof UnicastRemoteObject) {
+                    // A player on RMI only, send its RMI stub as RMI would
+                    return RemoteObject.toStub((Remote) object);
+                }
+            }
+            return object;
+        }
+    }
+
+    // A frame being written, with its length filled in when it is sent
+    static final class Frame extends ByteArrayOutputStream {
+        final DataOutputStream out = new DataOutputStream(this);
+
+        Frame() {
+            super(64);
+        }
+
+        void setInt(int offset, int value) {
+            buf[offset] = (byte) (value >>> 24);
+            buf[offset + 1] = (byte) (value >>> 16);
+            buf[offset + 2] = (byte) (value >>> 8);
+            buf[offset + 3] = (byte) value;
+        }
+
+        ByteBuffer toBuffer() {
+            setInt(0, count - 4);
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+
+    // ===== Connections =====
+
+    private final class Connection {
+        private final SocketChannel channel;
+        // "host:port" of a connection this JVM opened to make calls, null for one it accepted
+        private final String remote;
+        // The calls waiting for their response, by call id
+        private final Map<Integer, CompletableFuture<byte[]>> calls = new ConcurrentHashMap<>();
+        private final AtomicInteger nextCallId = new AtomicInteger();
+        // Frames queued by any thread, and the write token (see send)
+        private final Queue<ByteBuffer> outbox = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean writing = new AtomicBoolean();
+        // Only used by the holder of the write token
+        private final ArrayDeque<ByteBuffer> pending = new ArrayDeque<>();
+        private final ByteBuffer[] batch = new ByteBuffer[WRITE_BATCH];
+        private ByteBuffer readBuffer = ByteBuffer.allocate(16 * 1024);
+        private volatile SelectionKey key;
+        private volatile boolean closed;
+
+        Connection(SocketChannel channel, String remote) {
+            this.channel = channel;
+            this.remote = remote;
+        }
+
+        // Whoever holds the write token writes the queued frames: the thread that sends first,
+        // right away, or the selector thread when the socket buffer was full. So a call is
+        // usually written by its own thread, without waking the selector up, and the frames
+        // queued meanwhile by other threads go out with it in one gathering write
+        void send(ByteBuffer frame) throws IOException {
+            if (closed) {
+                throw new IOException("Connection closed");
+            }
+            outbox.add(frame);
+            if (writing.compareAndSet(false, true)) {
+                try {
+                    flush();
+                } catch (IOException e) {
+                    close(e);
+                    throw e;
+                }
+            }
+        }
+
+        void onWritable() throws IOException {
+            key.interestOps(SelectionKey.OP_READ);
+            flush();
+        }
+
+        // Must be called with the write token. Keeps it if the socket buffer is full
+        private void flush() throws IOException {
+            while (true) {
+                if (!writeQueued()) {
+                    SelectionKey current = key;
+                    if (Thread.currentThread() == loop && current != null) {
+                        current.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    } else {
+                        // Registered by then, its registration was queued first
+                        runOnLoop(() -> key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE));
+                    }
+                    return;
+                }
+                writing.set(false);
+                if (outbox.isEmpty() || !writing.compareAndSet(false, true)) {
+                    return;
+                }
+            }
+        }
+
+        // Write as much as the socket takes, false if some is left
+        private boolean writeQueued() throws IOException {
+            ByteBuffer frame;
+            while ((frame = outbox.poll()) != null) {
+                pending.add(frame);
+            }
+            while (!pending.isEmpty()) {
+                int count = 0;
+                for (ByteBuffer buffer : pending) {
+                    if (count == batch.length) {
+                        break;
+                    }
+                    batch[count++] = buffer;
+                }
+                channel.write(batch, 0, count);
+                boolean full = batch[count - 1].hasRemaining();
+                Arrays.fill(batch, 0, count, null);
+                while (!pending.isEmpty() && !pending.peekFirst().hasRemaining()) {
+                    pending.pollFirst();
+                }
+                if (full) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void onReadable() throws IOException {
+            if (channel.read(readBuffer) < 0) {
+                close(new EOFException("Connection closed by the other side"));
+                return;
+            }
+            readBuffer.flip();
+            int needed = 0;
+            while (readBuffer.remaining() >= 4) {
+                int length = readBuffer.getInt(readBuffer.position());
+                if (length < 0 || length > MAX_FRAME) {
+                    throw new IOException("Bad frame length: " + length);
+                }
+                if (readBuffer.remaining() < 4 + length) {
+                    needed = 4 + length;
+                    break;
+                }
+                readBuffer.position(readBuffer.position() + 4);
+                byte[] frame = new byte[length];
+                readBuffer.get(frame);
+                onFrame(frame);
+            }
+            readBuffer.compact();
+            if (needed > readBuffer.capacity()) {
+                ByteBuffer bigger = ByteBuffer.allocate(needed);
+                readBuffer.flip();
+                bigger.put(readBuffer);
+                readBuffer = bigger;
+            }
+        }
+
+        private void onFrame(byte[] frame) {
+            if (remote != null) {
+                CompletableFuture<byte[]> reply = calls.remove(ByteBuffer.wrap(frame).getInt());
+                if (reply != null) {
+                    reply.complete(frame);
+                }
+            } else {
+                workers.execute(() -> handleRequest(this, frame));
+            }
+        }
+
+        void close(IOException cause) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Closing anyway
+            }
+            if (remote != null) {
+                connections.remove(remote, this);
+            }
+            for (CompletableFuture<byte[]> reply : calls.values()) {
+                reply.completeExceptionally(cause);
+            }
+        }
+    }
+}
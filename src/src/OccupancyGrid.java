@@ -0,0 +1,236 @@
+package src;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.IntConsumer;
+
+// Cell-indexed view of the maze: which player stands on each cell and which cells hold a treasure.
+// The primary keeps it in sync with playerPositions/treasurePositions so a move can be validated
+// in O(1) instead of scanning every player and every treasure.
+public class OccupancyGrid {
+    private final int gridSize;
+    // The id of the player standing on each cell, null if there is none
+    private final String[] playerAt;
+    // Whether each cell holds a treasure
+    private final BitSet treasureAt;
+    // The cells that hold neither a player nor a treasure
+    private final FreeCellPool freeCells;
+    // The cells that changed since the GUI last drew them, in the order they changed.
+    // The bitset only keeps a cell from being queued twice, so a frame costs the changed cells
+    // rather than the whole maze
+    private final BitSet dirtyCells;
+    private int[] dirtyQueue = new int[16];
+    private int dirtyCount;
+    // Every cell is to be drawn, at first and after a clear, without queuing them all
+    private boolean allDirty = true;
+    // Buckets of the players by region for the area of interest queries, null if not needed
+    private final SpatialIndex spatialIndex;
+
+    public OccupancyGrid(int gridSize) {
+        this(gridSize, 0);
+    }
+
+    // With a bucketSize above 0 the players are also indexed by region, see forEachPlayerNear
+    public OccupancyGrid(int gridSize, int bucketSize) {
+        this.gridSize = gridSize;
+        this.playerAt = new String[gridSize * gridSize];
+        this.treasureAt = new BitSet(gridSize * gridSize);
+        this.freeCells = new FreeCellPool(gridSize * gridSize);
+        this.dirtyCells = new BitSet(gridSize * gridSize);
+        this.spatialIndex = bucketSize > 0 ? new SpatialIndex(gridSize, bucketSize) : null;
+    }
+
+    public int getGridSize() {
+        return gridSize;
+    }
+
+    public boolean isInside(int x, int y) {
+        return x >= 0 && x < gridSize && y >= 0 && y < gridSize;
+    }
+
+    public String getPlayerAt(int x, int y) {
+        return playerAt[GameUtils.getIdx(x, y, gridSize)];
+    }
+
+    public boolean hasPlayer(int x, int y) {
+        return playerAt[GameUtils.getIdx(x, y, gridSize)] != null;
+    }
+
+    public boolean hasTreasure(int x, int y) {
+        return treasureAt.get(GameUtils.getIdx(x, y, gridSize));
+    }
+
+    public boolean isEmpty(int x, int y) {
+        int idx = GameUtils.getIdx(x, y, gridSize);
+        return playerAt[idx] == null && !treasureAt.get(idx);
+    }
+
+    // One of the BlockStatus constants for the cell
+    public int getBlockStatus(int x, int y) {
+        int idx = GameUtils.getIdx(x, y, gridSize);
+        if (playerAt[idx] != null) {
+            return BlockStatus.PLAYER;
+        } else if (treasureAt.get(idx)) {
+            return BlockStatus.TREASURE;
+        }
+        return BlockStatus.EMPTY;
+    }
+
+    public void placePlayer(String playerId, int x, int y) {
+        int idx = GameUtils.getIdx(x, y, gridSize);
+        if (spatialIndex != null && !playerId.equals(playerAt[idx])) {
+            if (playerAt[idx] != null) {
+                spatialIndex.remove(playerAt[idx], idx);
+            }
+            spatialIndex.add(playerId, idx);
+        }
+        playerAt[idx] = playerId;
+        freeCells.remove(idx);
+        markDirty(idx);
+    }
+
+    // Only clear the cell if it is still owned by the given player,
+    // so a stale position never wipes out somebody else
+    public void removePlayer(String playerId, int x, int y) {
+        int idx = GameUtils.getIdx(x, y, gridSize);
+        if (playerId.equals(playerAt[idx])) {
+            playerAt[idx] = null;
+            if (spatialIndex != null) {
+                spatialIndex.remove(playerId, idx);
+            }
+            if (!treasureAt.get(idx)) {
+                freeCells.add(idx);
+            }
+            markDirty(idx);
+        }
+    }
+
+    public void movePlayer(String playerId, int[] from, int toX, int toY) {
+        if (from != null) {
+            removePlayer(playerId, from[0], from[1]);
+        }
+        placePlayer(playerId, toX, toY);
+    }
+
+    public void addTreasure(int x, int y) {
+        int idx = GameUtils.getIdx(x, y, gridSize);
+        treasureAt.set(idx);
+        freeCells.remove(idx);
+        markDirty(idx);
+    }
+
+    public void removeTreasure(int x, int y) {
+        int idx = GameUtils.getIdx(x, y, gridSize);
+        treasureAt.clear(idx);
+        if (playerAt[idx] == null) {
+            freeCells.add(idx);
+        }
+        markDirty(idx);
+    }
+
+    private void markDirty(int idx) {
+        if (allDirty || dirtyCells.get(idx)) {
+            return;
+        }
+        dirtyCells.set(idx);
+        if (dirtyCount == dirtyQueue.length) {
+            dirtyQueue = Arrays.copyOf(dirtyQueue, dirtyCount * 2);
+        }
+        dirtyQueue[dirtyCount++] = idx;
+    }
+
+    public int getFreeCellCount() {
+        return freeCells.size();
+    }
+
+    // A uniformly random cell holding neither a player nor a treasure, or -1 if there is none
+    public int randomFreeCell(Random random) {
+        return freeCells.randomCell(random);
+    }
+
+    public void clear() {
+        Arrays.fill(playerAt, null);
+        if (spatialIndex != null) {
+            spatialIndex.clear();
+        }
+        treasureAt.clear();
+        freeCells.fill();
+        dropDirtyCells();
+        allDirty = true;
+    }
+
+    // The cells that changed since the last call, each once, for the GUI to redraw only those.
+    // Every cell is dirty at first and after a clear/rebuild
+    public int[] takeDirtyCells() {
+        int[] changed;
+        if (allDirty) {
+            changed = new int[gridSize * gridSize];
+            for (int idx = 0; idx < changed.length; idx++) {
+                changed[idx] = idx;
+            }
+            allDirty = false;
+        } else {
+            changed = Arrays.copyOf(dirtyQueue, dirtyCount);
+            dropDirtyCells();
+        }
+        return changed;
+    }
+
+    // Clear the queued cells one by one, not the whole bitset
+    private void dropDirtyCells() {
+        for (int i = 0; i < dirtyCount; i++) {
+            dirtyCells.clear(dirtyQueue[i]);
+        }
+        dirtyCount = 0;
+    }
+
+    // Every player at most radius cells away from (x, y) along both axes.
+    // Looks at the buckets of the spatial index if there is one, else at every cell around
+    public void forEachPlayerNear(int x, int y, int radius, SpatialIndex.PlayerVisitor visitor) {
+        if (spatialIndex != null) {
+            spatialIndex.forEachPlayerNear(x, y, radius, visitor);
+            return;
+        }
+        for (int py = Math.max(0, y - radius); py <= Math.min(gridSize - 1, y + radius); py++) {
+            for (int px = Math.max(0, x - radius); px <= Math.min(gridSize - 1, x + radius); px++) {
+                String playerId = playerAt[GameUtils.getIdx(px, py, gridSize)];
+                if (playerId != null) {
+                    visitor.visit(playerId, px, py);
+                }
+            }
+        }
+    }
+
+    // The cells of every treasure at most radius cells away from (x, y) along both axes.
+    // The treasure bits of a row are contiguous, so each row of the window is one skip through them
+    public void forEachTreasureNear(int x, int y, int radius, IntConsumer visitor) {
+        int minX = Math.max(0, x - radius);
+        int maxX = Math.min(gridSize - 1, x + radius);
+        for (int py = Math.max(0, y - radius); py <= Math.min(gridSize - 1, y + radius); py++) {
+            int end = GameUtils.getIdx(maxX, py, gridSize);
+            for (int idx = treasureAt.nextSetBit(GameUtils.getIdx(minX, py, gridSize)); idx >= 0 && idx <= end;
+                 idx = treasureAt.nextSetBit(idx + 1)) {
+                visitor.accept(idx);
+            }
+        }
+    }
+
+    // Re-index everything from the shared game state, e.g. after a full state transfer
+    public void rebuild(Map<String, int[]> playerPositions, List<int[]> treasurePositions) {
+        clear();
+        for (Map.Entry<String, int[]> entry : playerPositions.entrySet()) {
+            int[] pos = entry.getValue();
+            if (pos != null && isInside(pos[0], pos[1])) {
+                placePlayer(entry.getKey(), pos[0], pos[1]);
+            }
+        }
+        for (int[] treasure : treasurePositions) {
+            if (isInside(treasure[0], treasure[1])) {
+                addTreasure(treasure[0], treasure[1]);
+            }
+        }
+    }
+}
@@ -3,6 +3,12 @@ package src;
 import java.rmi.Remote;
 import java.rmi.RemoteException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.io.Serializable;
 import src.Game.ServerRole;
 import java.util.Map;
@@ -22,11 +28,24 @@ public interface Player extends Remote {
     ServerRole getServerRole() throws RemoteException;
     void selfCleanupAndDeregister() throws RemoteException;
     void initiateElection(ArrayList<Player> players) throws RemoteException;
+    // Single-round election: report my id, role and epoch to the initiator
+    Election.Probe probeForElection() throws RemoteException;
+    // Single-round election: take the role decided by the initiator
+    void applyElectionResult(Election.Result result) throws RemoteException;
     
     // ===== Start of Primary server methods =====
     GameState updateGamebyNewMove(Player player, int x, int y) throws RemoteException;
+    // Apply a move and reply with only what changed since the caller's state version
+    StateUpdate updateGamebyNewMove(Player player, int x, int y, long knownVersion) throws RemoteException;
+    // Apply an ordered list of directions (see Direction) atomically and reply with one state update
+    StateUpdate updateGamebyNewMoves(Player player, char[] directions, long knownVersion) throws RemoteException;
     // Request the game state from primary server by other players
     GameState getGameState(Player requester) throws RemoteException;
+    // Request what changed since the caller's state version, a full snapshot if it is too far behind
+    StateUpdate getStateUpdate(Player requester, long knownVersion) throws RemoteException;
+    // Apply the deltas committed by the primary, in order.
+    // Returns false if there is a version gap and a full snapshot is needed
+    boolean applyGameDeltas(List<GameDelta> deltas) throws RemoteException;
     boolean isGameInitialized() throws RemoteException;
     // Update the game state to new primary server from old primary server
     void updateGameState(GameState gameState) throws RemoteException;
@@ -34,28 +53,176 @@ public interface Player extends Remote {
     void demoteToPlayer() throws RemoteException;
     void removePlayerGameState(Player player) throws RemoteException;
     void updatePlayerList() throws RemoteException;
+    // The stubs of the given players, null for the ones this node doesn't know.
+    // Lets a node resolve the ids of a received game state it has no stub for
+    ArrayList<Player> getPlayers(List<String> playerIds) throws RemoteException;
+    // Take over a player moving into a region this primary owns, with its score.
+    // Returns false if the cell isn't ours or is taken
+    boolean acceptHandOff(String playerId, int x, int y, int score) throws RemoteException;
     // ===== End of Primary server methods =====
 
-    public static class GameState implements Serializable{
+    // The full game state. It is written with a compact hand-written encoding instead of
+    // default serialization: player ids go once into a string table that the positions and
+    // scores refer to by index, and coordinates, counts and scores are varints (see Varint).
+    // The RMI stubs of playerList are not sent, only their ids: the receiver already has the
+    // stubs from the elections and resolves the ids itself (see Game.updateGameState).
+    // A stub is only sent for a player the sender couldn't name.
+    public static class GameState implements Externalizable {
+        private static final long serialVersionUID = 1L;
+
         // Flag to indicate whether the game is initialized
         public boolean isGameInitialized;
+        // The players. After decoding, only the ones that were sent as stubs are set, the others are null
         public ArrayList<Player> playerList;
+        // The ids of playerList, in the same order, null for a player whose id isn't known
+        public ArrayList<String> playerIds;
         public Map<String, int[]> playerPositions;
         public List<int[]> treasurePositions;
         public Map<String, Integer> playerScores;
         public String startTime;
+        // The version of the primary's state this snapshot was taken at
+        public long version;
+
+        // For Externalizable only
+        public GameState() {
+        }
+
         GameState(boolean isGameInitialized,
                   ArrayList<Player> playerList,
+                  ArrayList<String> playerIds,
                   Map<String, int[]> playerPositions,
                   List<int[]> treasurePositions,
                   Map<String, Integer> playerScores,
-                  String startTime) {
+                  String startTime,
+                  long version) {
             this.isGameInitialized = isGameInitialized;
             this.playerList = playerList;
+            this.playerIds = playerIds;
             this.playerPositions = playerPositions;
             this.treasurePositions = treasurePositions;
             this.playerScores = playerScores;
             this.startTime = startTime;
+            this.version = version;
+        }
+
+        @Override
+        public void writeExternal(ObjectOutput out) throws IOException {
+            out.writeBoolean(isGameInitialized);
+            out.writeLong(version);
+            out.writeBoolean(startTime != null);
+            if (startTime != null) {
+                out.writeUTF(startTime);
+            }
+
+            // The string table: the named players first, then any other id of the positions and scores
+            Map<String, Integer> table = new LinkedHashMap<>();
+            for (String id : playerIds) {
+                if (id != null) {
+                    table.putIfAbsent(id, table.size());
+                }
+            }
+            for (String id : playerPositions.keySet()) {
+                table.putIfAbsent(id, table.size());
+            }
+            for (String id : playerScores.keySet()) {
+                table.putIfAbsent(id, table.size());
+            }
+            Varint.write(out, table.size());
+            for (String id : table.keySet()) {
+                out.writeUTF(id);
+            }
+
+            // Each player is its index in the table plus one, or 0 and the stub if it has no id
+            Varint.write(out, playerIds.size());
+            for (int i = 0; i < playerIds.size(); i++) {
+                String id = playerIds.get(i);
+                if (id != null) {
+                    Varint.write(out, table.get(id) + 1);
+                } else {
+                    Varint.write(out, 0);
+                    out.writeObject(playerList.get(i));
+                }
+            }
+
+            Varint.write(out, playerPositions.size());
+            for (Map.Entry<String, int[]> entry : playerPositions.entrySet()) {
+                Varint.write(out, table.get(entry.getKey()));
+                Varint.write(out, entry.getValue()[0]);
+                Varint.write(out, entry.getValue()[1]);
+            }
+            Varint.write(out, treasurePositions.size());
+            for (int[] treasure : treasurePositions) {
+                Varint.write(out, treasure[0]);
+                Varint.write(out, treasure[1]);
+            }
+            Varint.write(out, playerScores.size());
+            for (Map.Entry<String, Integer> entry : playerScores.entrySet()) {
+                Varint.write(out, table.get(entry.getKey()));
+                Varint.write(out, entry.getValue());
+            }
+        }
+
+        @Override
+        public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+            isGameInitialized = in.readBoolean();
+            version = in.readLong();
+            startTime = in.readBoolean() ? in.readUTF() : null;
+
+            String[] table = new String[Varint.read(in)];
+            for (int i = 0; i < table.length; i++) {
+                table[i] = in.readUTF();
+            }
+
+            int players = Varint.read(in);
+            playerIds = new ArrayList<>(players);
+            playerList = new ArrayList<>(players);
+            for (int i = 0; i < players; i++) {
+                int idx = Varint.read(in);
+                if (idx > 0) {
+                    playerIds.add(table[idx - 1]);
+                    playerList.add(null);
+                } else {
+                    playerIds.add(null);
+                    playerList.add((Player) in.readObject());
+                }
+            }
+
+            int positions = Varint.read(in);
+            playerPositions = new HashMap<>(positions * 2);
+            for (int i = 0; i < positions; i++) {
+                String id = table[Varint.read(in)];
+                playerPositions.put(id, new int[] {Varint.read(in), Varint.read(in)});
+            }
+            int treasures = Varint.read(in);
+            treasurePositions = new ArrayList<>(treasures);
+            for (int i = 0; i < treasures; i++) {
+                treasurePositions.add(new int[] {Varint.read(in), Varint.read(in)});
+            }
+            int scores = Varint.read(in);
+            playerScores = new HashMap<>(scores * 2);
+            for (int i = 0; i < scores; i++) {
+                String id = table[Varint.read(in)];
+                playerScores.put(id, Varint.read(in));
+            }
+        }
+    }
+
+    public static class StateUpdate implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        // The version of the primary's state the update brings the caller to
+        public long version;
+        // The deltas to apply on top of the caller's version, null if a snapshot is sent instead
+        public List<GameDelta> deltas;
+        // The full game state, only sent when the caller is too far behind for the deltas
+        public GameState snapshot;
+        // Whether the deltas or snapshot only cover the caller's area of interest (see AreaOfInterest).
+        // The deltas then apply on top of what the caller was last sent, not on top of a whole state
+        public boolean view;
+        StateUpdate(long version, List<GameDelta> deltas, GameState snapshot) {
+            this.version = version;
+            this.deltas = deltas;
+            this.snapshot = snapshot;
         }
     }
 }
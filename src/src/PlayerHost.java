@@ -0,0 +1,159 @@
+package src;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.rmi.NoSuchObjectException;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+
+// Hosts many players in one JVM, e.g. to load test with hundreds of players without
+// starting one JVM per player. All the players are exported on the same RMI runtime,
+// run headless and share a small pool of failure detector threads.
+public class PlayerHost {
+    private final String IP_address;
+    private final int port_number;
+    // Runs the failure detector of every hosted player
+    private final ScheduledExecutorService failureDetectorTimer;
+    private final Map<String, Game> players = new ConcurrentHashMap<>();
+
+    public PlayerHost(String IP_address, int port_number, int timerThreads) {
+        this.IP_address = IP_address;
+        this.port_number = port_number;
+        this.failureDetectorTimer = Executors.newScheduledThreadPool(timerThreads, runnable -> {
+            Thread thread = new Thread(runnable, "failure-detector");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Join the game with a new headless player.
+    // Throws IllegalStateException if the Tracker or the game doesn't take the player
+    public Game join(String playerId) throws RemoteException {
+        return join(playerId, new HeadlessGameView());
+    }
+
+    public Game join(String playerId, GameView view) throws RemoteException {
+        Game game = new Game(IP_address, port_number, playerId, view);
+        game.setExitOnLeave(false);
+        game.startFailureDetector(failureDetectorTimer);
+        players.put(playerId, game);
+        return game;
+    }
+
+    // Join with all the players, parallelism at a time. Returns the players that made it
+    public List<Game> joinAll(List<String> playerIds, int parallelism) {
+        ExecutorService joiners = Executors.newFixedThreadPool(Math.max(1, parallelism));
+        List<Future<Game>> joins = new ArrayList<>();
+        for (String playerId : playerIds) {
+            joins.add(joiners.submit(() -> join(playerId)));
+        }
+        List<Game> joined = new ArrayList<>();
+        for (int i = 0; i < joins.size(); i++) {
+            try {
+                joined.add(joins.get(i).get());
+            } catch (Exception e) {
+                Log.warn("Player " + playerIds.get(i) + " could not join: " + e.getMessage());
+            }
+        }
+        joiners.shutdown();
+        return joined;
+    }
+
+    public Game getPlayer(String playerId) {
+        return players.get(playerId);
+    }
+
+    public List<Game> getPlayers() {
+        return new ArrayList<>(players.values());
+    }
+
+    // The player leaves gracefully, as if it pressed 9
+    public void leave(String playerId) {
+        Game game = players.remove(playerId);
+        if (game != null) {
+            game.leave();
+        }
+    }
+
+    // The player stops answering without telling anyone, as if its process was killed
+    public void crash(String playerId) {
+        Game game = players.remove(playerId);
+        if (game != null) {
+            game.stopFailureDetector();
+            Transport.get().unexport(game);
+            try {
+                UnicastRemoteObject.unexportObject(game, true);
+            } catch (NoSuchObjectException e) {
+                // Already gone
+            }
+        }
+    }
+
+    // Crash every hosted player, e.g. at the end of a load test
+    public void shutdown() {
+        for (String playerId : new ArrayList<>(players.keySet())) {
+            crash(playerId);
+        }
+        failureDetectorTimer.shutdownNow();
+    }
+
+    public static void main(String[] args) {
+        // check the num of args
+        if (args.length != 3 && args.length != 4) {
+            System.out.println("Error: You must provide 3 or 4 arguments.");
+            System.out.println("Usage: java PlayerHost <IP_address> <port_number> <player_count> [id_prefix]");
+            System.out.println("Then type \"<player_id> <keys>\" to move a player, e.g. \"h0001 3332\"");
+            return;
+        }
+        try {
+            String IP_address = args[0];
+            int port_number = Integer.parseInt(args[1]);
+            int count = Integer.parseInt(args[2]);
+            String prefix = args.length == 4 ? args[3] : "h";
+
+            PlayerHost host = new PlayerHost(IP_address, port_number, Math.max(1, Runtime.getRuntime().availableProcessors()));
+            List<String> playerIds = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                playerIds.add(String.format("%s%04d", prefix, i));
+            }
+            long start = System.currentTimeMillis();
+            List<Game> joined = host.joinAll(playerIds, Math.min(count, 32));
+            System.out.println(joined.size() + " of " + count + " players joined in " + (System.currentTimeMillis() - start) + "ms");
+
+            // Drive the hosted players from the console
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(System.in))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] parts = line.trim().split("\\s+", 2);
+                    if (parts.length < 2) {
+                        continue;
+                    }
+                    Game game = host.getPlayer(parts[0]);
+                    if (game == null) {
+                        System.out.println("No such player: " + parts[0]);
+                    } else if (parts[1].equals("9")) {
+                        host.leave(parts[0]);
+                    } else {
+                        game.processInput(parts[1]);
+                    }
+                }
+            }
+            host.shutdown();
+            System.exit(0);
+        } catch (NumberFormatException e) {
+            System.out.println("Error: port_number and player_count must be valid integers.");
+        } catch (Exception e) {
+            Log.error("Player host failed", e);
+            Log.flush();
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,451 @@
+package src;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+// The positions and scores of the players as a struct of arrays. Each player id is interned
+// to a dense slot the first time it is seen, and its x, y and score are ints at that slot, so
+// a move or a score change writes two or three array elements instead of allocating an int[2]
+// or boxing an Integer into a HashMap. A slot is freed for reuse once the player has neither
+// a position nor a score. The id -> slot table is open addressing over plain arrays.
+// positions() and scores() are Map views for the code that isn't on the move path.
+// Not thread safe: Game only touches it with its stateLock held.
+public class PlayerSlots {
+    private static final byte HAS_POSITION = 1;
+    private static final byte HAS_SCORE = 2;
+
+    // Slot -> id, null for a free slot
+    private String[] ids;
+    private int[] xs;
+    private int[] ys;
+    private int[] scoreOf;
+    private byte[] flags;
+    // Slots given up, reused before the high-water mark grows
+    private int[] freeSlots;
+    private int freeCount;
+    // Every slot below it has been handed out at least once
+    private int slotCount;
+    private int positionCount;
+    private int scoreCount;
+    // See getScoreChanges
+    private long scoreChanges;
+
+    // Open addressing: id -> slot + 1 at the same index, 0 for an empty bucket
+    private String[] keys;
+    private int[] values;
+    private int keyCount;
+
+    private final Map<String, int[]> positions = new Positions();
+    private final Map<String, Integer> scores = new Scores();
+
+    public PlayerSlots() {
+        this(16);
+    }
+
+    public PlayerSlots(int expectedPlayers) {
+        int capacity = Math.max(4, expectedPlayers);
+        ids = new String[capacity];
+        xs = new int[capacity];
+        ys = new int[capacity];
+        scoreOf = new int[capacity];
+        flags = new byte[capacity];
+        freeSlots = new int[capacity];
+        int buckets = Integer.highestOneBit(capacity * 2 - 1) << 1;
+        keys = new String[buckets];
+        values = new int[buckets];
+    }
+
+    // The slot of the id, -1 if it has none
+    public int slotOf(String id) {
+        int mask = keys.length - 1;
+        for (int i = id.hashCode() & mask; keys[i] != null; i = (i + 1) & mask) {
+            if (keys[i].equals(id)) {
+                return values[i] - 1;
+            }
+        }
+        return -1;
+    }
+
+    // The slot of the id, given one if it has none
+    public int intern(String id) {
+        int slot = slotOf(id);
+        if (slot >= 0) {
+            return slot;
+        }
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (slotCount == ids.length) {
+                grow();
+            }
+            slot = slotCount++;
+        }
+        ids[slot] = id;
+        if ((keyCount + 1) * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+        insert(id, slot);
+        keyCount++;
+        return slot;
+    }
+
+    public String idAt(int slot) {
+        return ids[slot];
+    }
+
+    // Slots are below this, some of them free
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    public boolean hasPosition(int slot) {
+        return (flags[slot] & HAS_POSITION) != 0;
+    }
+
+    public int getX(int slot) {
+        return xs[slot];
+    }
+
+    public int getY(int slot) {
+        return ys[slot];
+    }
+
+    public void setPosition(int slot, int x, int y) {
+        if (!hasPosition(slot)) {
+            flags[slot] |= HAS_POSITION;
+            positionCount++;
+        }
+        xs[slot] = x;
+        ys[slot] = y;
+    }
+
+    public void clearPosition(int slot) {
+        if (hasPosition(slot)) {
+            flags[slot] &= ~HAS_POSITION;
+            positionCount--;
+            releaseIfUnused(slot);
+        }
+    }
+
+    public boolean hasScore(int slot) {
+        return (flags[slot] & HAS_SCORE) != 0;
+    }
+
+    // 0 if it has none
+    public int getScore(int slot) {
+        return scoreOf[slot];
+    }
+
+    public void setScore(int slot, int score) {
+        if (!hasScore(slot)) {
+            flags[slot] |= HAS_SCORE;
+            scoreCount++;
+        } else if (scoreOf[slot] == score) {
+            return;
+        }
+        scoreOf[slot] = score;
+        scoreChanges++;
+    }
+
+    public void clearScore(int slot) {
+        if (hasScore(slot)) {
+            flags[slot] &= ~HAS_SCORE;
+            scoreOf[slot] = 0;
+            scoreCount--;
+            scoreChanges++;
+            releaseIfUnused(slot);
+        }
+    }
+
+    public int getPositionCount() {
+        return positionCount;
+    }
+
+    public int getScoreCount() {
+        return scoreCount;
+    }
+
+    // Bumped by every change of a score, so a reader can tell whether any changed since it last looked
+    public long getScoreChanges() {
+        return scoreChanges;
+    }
+
+    // Number of ids holding a slot
+    public int size() {
+        return keyCount;
+    }
+
+    public void clear() {
+        Arrays.fill(ids, 0, slotCount, null);
+        Arrays.fill(flags, 0, slotCount, (byte) 0);
+        Arrays.fill(scoreOf, 0, slotCount, 0);
+        Arrays.fill(keys, null);
+        slotCount = 0;
+        freeCount = 0;
+        keyCount = 0;
+        positionCount = 0;
+        scoreCount = 0;
+        scoreChanges++;
+    }
+
+    // Player id -> {x, y}. get and the entries hand out copies, changing them changes nothing
+    public Map<String, int[]> positions() {
+        return positions;
+    }
+
+    // Player id -> score
+    public Map<String, Integer> scores() {
+        return scores;
+    }
+
+    private void releaseIfUnused(int slot) {
+        if (flags[slot] != 0) {
+            return;
+        }
+        remove(ids[slot]);
+        ids[slot] = null;
+        freeSlots[freeCount++] = slot;
+    }
+
+    private void grow() {
+        int capacity = ids.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        xs = Arrays.copyOf(xs, capacity);
+        ys = Arrays.copyOf(ys, capacity);
+        scoreOf = Arrays.copyOf(scoreOf, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        freeSlots = Arrays.copyOf(freeSlots, capacity);
+    }
+
+    private void insert(String id, int slot) {
+        int mask = keys.length - 1;
+        int i = id.hashCode() & mask;
+        while (keys[i] != null) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = id;
+        values[i] = slot + 1;
+    }
+
+    private void rehash(int buckets) {
+        String[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new String[buckets];
+        values = new int[buckets];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                insert(oldKeys[i], oldValues[i] - 1);
+            }
+        }
+    }
+
+    // Linear probing without tombstones: the entries after the removed one that would no
+    // longer be found are moved back into the gap
+    private void remove(String id) {
+        int mask = keys.length - 1;
+        int i = id.hashCode() & mask;
+        while (keys[i] != null && !keys[i].equals(id)) {
+            i = (i + 1) & mask;
+        }
+        if (keys[i] == null) {
+            return;
+        }
+        keys[i] = null;
+        keyCount--;
+        for (int j = (i + 1) & mask; keys[j] != null; j = (j + 1) & mask) {
+            int home = keys[j].hashCode() & mask;
+            // Whether home lies cyclically in (i, j], then the entry can stay
+            boolean stays = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+            if (!stays) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                keys[j] = null;
+                i = j;
+            }
+        }
+    }
+
+    // Iterates the slots with the given flag
+    private abstract class SlotIterator<T> implements Iterator<T> {
+        private final byte flag;
+        private int next = -1;
+        int last = -1;
+
+        SlotIterator(byte flag) {
+            this.flag = flag;
+            advance();
+        }
+
+        private void advance() {
+            do {
+                next++;
+            } while (next < slotCount && (flags[next] & flag) == 0);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < slotCount;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            last = next;
+            advance();
+            return valueAt(last);
+        }
+
+        abstract T valueAt(int slot);
+    }
+
+    private class Positions extends AbstractMap<String, int[]> {
+        private final Set<Map.Entry<String, int[]>> entries = new AbstractSet<Map.Entry<String, int[]>>() {
+            @Override
+            public Iterator<Map.Entry<String, int[]>> iterator() {
+                return new SlotIterator<Map.Entry<String, int[]>>(HAS_POSITION) {
+                    @Override
+                    Map.Entry<String, int[]> valueAt(int slot) {
+                        return new SimpleImmutableEntry<>(ids[slot], new int[] {xs[slot], ys[slot]});
+                    }
+
+                    @Override
+                    public void remove() {
+                        clearPosition(last);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return positionCount;
+            }
+        };
+
+        @Override
+        public Set<Map.Entry<String, int[]>> entrySet() {
+            return entries;
+        }
+
+        @Override
+        public int size() {
+            return positionCount;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            int slot = key instanceof String ? slotOf((String) key) : -1;
+            return slot >= 0 && hasPosition(slot);
+        }
+
+        @Override
+        public int[] get(Object key) {
+            int slot = key instanceof String ? slotOf((String) key) : -1;
+            return slot >= 0 && hasPosition(slot) ? new int[] {xs[slot], ys[slot]} : null;
+        }
+
+        @Override
+        public int[] put(String key, int[] value) {
+            int slot = intern(key);
+            int[] old = hasPosition(slot) ? new int[] {xs[slot], ys[slot]} : null;
+            setPosition(slot, value[0], value[1]);
+            return old;
+        }
+
+        @Override
+        public int[] remove(Object key) {
+            int slot = key instanceof String ? slotOf((String) key) : -1;
+            if (slot < 0 || !hasPosition(slot)) {
+                return null;
+            }
+            int[] old = {xs[slot], ys[slot]};
+            clearPosition(slot);
+            return old;
+        }
+
+        @Override
+        public void clear() {
+            for (int slot = 0; slot < slotCount; slot++) {
+                clearPosition(slot);
+            }
+        }
+    }
+
+    private class Scores extends AbstractMap<String, Integer> {
+        private final Set<Map.Entry<String, Integer>> entries = new AbstractSet<Map.Entry<String, Integer>>() {
+            @Override
+            public Iterator<Map.Entry<String, Integer>> iterator() {
+                return new SlotIterator<Map.Entry<String, Integer>>(HAS_SCORE) {
+                    @Override
+                    Map.Entry<String, Integer> valueAt(int slot) {
+                        return new SimpleImmutableEntry<>(ids[slot], scoreOf[slot]);
+                    }
+
+                    @Override
+                    public void remove() {
+                        clearScore(last);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return scoreCount;
+            }
+        };
+
+        @Override
+        public Set<Map.Entry<String, Integer>> entrySet() {
+            return entries;
+        }
+
+        @Override
+        public int size() {
+            return scoreCount;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            int slot = key instanceof String ? slotOf((String) key) : -1;
+            return slot >= 0 && hasScore(slot);
+        }
+
+        @Override
+        public Integer get(Object key) {
+            int slot = key instanceof String ? slotOf((String) key) : -1;
+            return slot >= 0 && hasScore(slot) ? scoreOf[slot] : null;
+        }
+
+        @Override
+        public Integer put(String key, Integer value) {
+            int slot = intern(key);
+            Integer old = hasScore(slot) ? scoreOf[slot] : null;
+            setScore(slot, value);
+            return old;
+        }
+
+        @Override
+        public Integer remove(Object key) {
+            int slot = key instanceof String ? slotOf((String) key) : -1;
+            if (slot < 0 || !hasScore(slot)) {
+                return null;
+            }
+            int old = scoreOf[slot];
+            clearScore(slot);
+            return old;
+        }
+
+        @Override
+        public void clear() {
+            for (int slot = 0; slot < slotCount; slot++) {
+                clearScore(slot);
+            }
+        }
+    }
+}
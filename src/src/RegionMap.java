@@ -0,0 +1,90 @@
+package src;
+
+import java.util.Random;
+
+// How the maze is split into rectangular regions, each with its own primary/backup pair
+// (-Dgame.regions=<rows>x<cols>, e.g. 2x2). The default 1x1 keeps the whole maze on one primary.
+// Columns split x and rows split y, as evenly as the grid size allows.
+public class RegionMap {
+    private final int gridSize;
+    private final int rows;
+    private final int cols;
+
+    public RegionMap(int gridSize, int rows, int cols) {
+        this.gridSize = gridSize;
+        // Never more regions than cells along a side, so none is empty
+        this.rows = Math.max(1, Math.min(rows, gridSize));
+        this.cols = Math.max(1, Math.min(cols, gridSize));
+    }
+
+    // The regions of -Dgame.regions for a maze of the given size
+    public static RegionMap create(int gridSize) {
+        int[] spec = parse(System.getProperty("game.regions", "1x1"));
+        return new RegionMap(gridSize, spec[0], spec[1]);
+    }
+
+    // The number of regions -Dgame.regions asks for, before the grid size is known
+    public static int configuredCount() {
+        int[] spec = parse(System.getProperty("game.regions", "1x1"));
+        return spec[0] * spec[1];
+    }
+
+    // "<rows>x<cols>" -> {rows, cols}, 1x1 if it can't be read
+    static int[] parse(String spec) {
+        String[] parts = spec.toLowerCase().split("x");
+        try {
+            if (parts.length == 2) {
+                return new int[] {Math.max(1, Integer.parseInt(parts[0].trim())), Math.max(1, Integer.parseInt(parts[1].trim()))};
+            }
+        } catch (NumberFormatException e) {
+            // Fall through
+        }
+        Log.warn("Ignoring -Dgame.regions=" + spec + ", expected <rows>x<cols>");
+        return new int[] {1, 1};
+    }
+
+    public int size() {
+        return rows * cols;
+    }
+
+    // Whether there is more than one region, and so more than one primary
+    public boolean isSharded() {
+        return size() > 1;
+    }
+
+    public int regionOf(int x, int y) {
+        return (y * rows / gridSize) * cols + x * cols / gridSize;
+    }
+
+    // The first x of a column of regions, regionOf rounds the same way
+    private int startX(int col) {
+        return (col * gridSize + cols - 1) / cols;
+    }
+
+    private int startY(int row) {
+        return (row * gridSize + rows - 1) / rows;
+    }
+
+    public boolean contains(int region, int x, int y) {
+        return x >= 0 && x < gridSize && y >= 0 && y < gridSize && regionOf(x, y) == region;
+    }
+
+    // {minX, minY, maxX, maxY} of a region, inclusive
+    public int[] bounds(int region) {
+        int row = region / cols;
+        int col = region % cols;
+        return new int[] {startX(col), startY(row), startX(col + 1) - 1, startY(row + 1) - 1};
+    }
+
+    public int randomCell(int region, Random random) {
+        int[] bounds = bounds(region);
+        int x = bounds[0] + random.nextInt(bounds[2] - bounds[0] + 1);
+        int y = bounds[1] + random.nextInt(bounds[3] - bounds[1] + 1);
+        return GameUtils.getIdx(x, y, gridSize);
+    }
+
+    // The share of the K treasures a region keeps, the first K % regions get one more
+    public int treasuresOf(int region, int k) {
+        return k / size() + (region < k % size() ? 1 : 0);
+    }
+}
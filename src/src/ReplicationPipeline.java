@@ -0,0 +1,222 @@
+package src;
+
+import java.rmi.RemoteException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import src.Player.GameState;
+
+// Outbound queue of committed deltas from the primary to the backup.
+// A single sender thread drains it in version order and ships the deltas in batches,
+// so the backup round trip is no longer a serial step of every move.
+//
+// The durability mode picks the latency/safety trade-off:
+//   SYNC  - a move is only answered once the backup has acknowledged it (the old behaviour)
+//   ASYNC - a move is answered right away, the mover only waits if the backup is more
+//           than maxLag deltas behind
+// Configure with -Dgame.replication=sync|async, -Dgame.replication.maxLag,
+// -Dgame.replication.batchSize and -Dgame.replication.timeoutMs.
+//
+// A batch the backup can't be reached for is given up and counted as failed, not retried:
+// the failure detector elects a new backup meanwhile, which is resynced with a snapshot.
+// Until then even SYNC answers the movers without a backup, getFailedBatches tells how often.
+public class ReplicationPipeline {
+    public enum DurabilityMode {
+        SYNC,
+        ASYNC
+    }
+
+    private final DurabilityMode mode;
+    private final int maxLag;
+    private final int batchSize;
+    private final long timeoutMillis;
+    private final String name;
+    // Where to send the deltas, read again for every batch since elections change it
+    private final Supplier<Player> backupSupplier;
+    // Full state to resync the backup with when it reports a version gap
+    private final Supplier<GameState> snapshotSupplier;
+
+    private final ArrayDeque<GameDelta> queue = new ArrayDeque<>();
+    // Number of deltas enqueued and acknowledged (or dropped) so far
+    private long enqueuedCount;
+    private long ackedCount;
+    private long enqueuedVersion;
+    // The newest version the backup has acknowledged
+    private long ackedVersion;
+    private long maxObservedLag;
+    private long batchesSent;
+    private long snapshotsSent;
+    private long failedBatches;
+    // The thread sending the queue, started by the first enqueue and stopped by stop or close
+    private Thread sender;
+    private boolean closed;
+
+    public ReplicationPipeline(String name, Supplier<Player> backupSupplier, Supplier<GameState> snapshotSupplier) {
+        this(name, backupSupplier, snapshotSupplier,
+             "async".equalsIgnoreCase(System.getProperty("game.replication")) ? DurabilityMode.ASYNC : DurabilityMode.SYNC,
+             Integer.getInteger("game.replication.maxLag", 256),
+             Integer.getInteger("game.replication.batchSize", 64),
+             Long.getLong("game.replication.timeoutMs", 2000L));
+    }
+
+    public ReplicationPipeline(String name, Supplier<Player> backupSupplier, Supplier<GameState> snapshotSupplier,
+                               DurabilityMode mode, int maxLag, int batchSize, long timeoutMillis) {
+        this.name = name;
+        this.backupSupplier = backupSupplier;
+        this.snapshotSupplier = snapshotSupplier;
+        this.mode = mode;
+        this.maxLag = Math.max(1, maxLag);
+        this.batchSize = Math.max(1, batchSize);
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public DurabilityMode getMode() {
+        return mode;
+    }
+
+    // Queue a committed delta. Never blocks, so it is safe to call while holding the state lock,
+    // which also keeps the queue in version order
+    public synchronized void enqueue(GameDelta delta) {
+        enqueuedCount++;
+        enqueuedVersion = delta.getVersion();
+        if (closed || backupSupplier.get() == null) {
+            // Nobody to replicate to
+            acknowledge(1, delta.getVersion());
+            return;
+        }
+        queue.addLast(delta);
+        maxObservedLag = Math.max(maxObservedLag, getLag());
+        if (sender == null) {
+            sender = new Thread(this::sendLoop, "replication-" + name);
+            sender.setDaemon(true);
+            sender.start();
+        }
+        notifyAll();
+    }
+
+    // Block the caller as the durability mode requires before it replies to the mover:
+    // until the delta is acknowledged (SYNC) or the backlog is small enough (ASYNC)
+    public synchronized void awaitDurability(GameDelta delta) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        try {
+            while (mode == DurabilityMode.SYNC ? ackedVersion < delta.getVersion() : getLag() > maxLag) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    Log.warn("Replication of version " + delta.getVersion() + " to the backup timed out, lag: " + getLag());
+                    return;
+                }
+                wait(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Number of committed deltas the backup has not acknowledged yet
+    public synchronized long getLag() {
+        return enqueuedCount - ackedCount;
+    }
+
+    public synchronized long getMaxObservedLag() {
+        return maxObservedLag;
+    }
+
+    public synchronized long getAckedVersion() {
+        return ackedVersion;
+    }
+
+    public synchronized long getBatchesSent() {
+        return batchesSent;
+    }
+
+    public synchronized long getSnapshotsSent() {
+        return snapshotsSent;
+    }
+
+    // Batches given up because the backup couldn't be reached
+    public synchronized long getFailedBatches() {
+        return failedBatches;
+    }
+
+    // Stop the sender thread and let go of the queued deltas, e.g. once this node is no longer
+    // the primary. The next enqueue starts a new sender
+    public synchronized void stop() {
+        if (sender != null) {
+            sender.interrupt();
+            sender = null;
+        }
+        // Release whoever waits for the queued deltas or the batch in flight, nobody sends them now
+        acknowledge(enqueuedCount - ackedCount, enqueuedVersion);
+        queue.clear();
+    }
+
+    // Stop for good when the player leaves, later deltas are not sent anywhere
+    public synchronized void close() {
+        closed = true;
+        stop();
+    }
+
+    private void acknowledge(long count, long version) {
+        ackedCount += count;
+        ackedVersion = Math.max(ackedVersion, version);
+        notifyAll();
+    }
+
+    private void sendLoop() {
+        List<GameDelta> batch = new ArrayList<>(batchSize);
+        while (true) {
+            synchronized (this) {
+                try {
+                    while (queue.isEmpty() && sender == Thread.currentThread()) {
+                        wait();
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (sender != Thread.currentThread()) {
+                    // Stopped, and maybe replaced by a newer sender
+                    return;
+                }
+                while (!queue.isEmpty() && batch.size() < batchSize) {
+                    batch.add(queue.pollFirst());
+                }
+            }
+
+            long ackVersion = batch.get(batch.size() - 1).getVersion();
+            Player backup = backupSupplier.get();
+            boolean failed = false;
+            if (backup != null) {
+                try {
+                    if (!backup.applyGameDeltas(batch)) {
+                        // The backup missed some versions, resync it with a full snapshot
+                        GameState snapshot = snapshotSupplier.get();
+                        backup.updateGameState(snapshot);
+                        ackVersion = Math.max(ackVersion, snapshot.version);
+                        synchronized (this) {
+                            snapshotsSent++;
+                        }
+                    }
+                } catch (RemoteException e) {
+                    // The failure detector will elect a new backup, don't hold the movers up meanwhile
+                    Log.warn("Error updating backup server: " + e.getMessage());
+                    failed = true;
+                }
+            }
+
+            synchronized (this) {
+                if (sender != Thread.currentThread()) {
+                    // stop already let go of this batch
+                    return;
+                }
+                if (failed) {
+                    failedBatches++;
+                } else {
+                    batchesSent++;
+                }
+                acknowledge(batch.size(), ackVersion);
+            }
+            batch.clear();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package src;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.rmi.server.RemoteObject;
+
+// Java RMI, the default transport. A Game is a UnicastRemoteObject, so it is exported on RMI
+// when it is created and unexports itself when it leaves; this only hands out its stub.
+public class RmiTransport implements Transport {
+    static final RmiTransport INSTANCE = new RmiTransport();
+
+    private RmiTransport() {
+    }
+
+    @Override
+    public Player export(Player player) throws RemoteException {
+        return (Player) RemoteObject.toStub((Remote) player);
+    }
+
+    @Override
+    public void unexport(Player player) {
+        // Nothing to do, see above
+    }
+}
@@ -0,0 +1,101 @@
+package src;
+
+import java.util.Arrays;
+
+// Uniform grid of square buckets over the maze, each listing the players standing in it.
+// The players near a cell are found by looking at the few buckets around it instead of
+// at every player of the game, so a query costs the same on a crowded 2000x2000 maze as on
+// an empty one. OccupancyGrid keeps it in sync with its playerAt cells.
+public class SpatialIndex {
+    private final int gridSize;
+    private final int bucketSize;
+    private final int bucketsPerSide;
+    // Per bucket, the ids of the players in it and the cells they stand on, unordered
+    private final String[][] ids;
+    private final int[][] cells;
+    private final int[] counts;
+
+    public interface PlayerVisitor {
+        void visit(String playerId, int x, int y);
+    }
+
+    public SpatialIndex(int gridSize, int bucketSize) {
+        this.gridSize = gridSize;
+        this.bucketSize = Math.max(1, bucketSize);
+        this.bucketsPerSide = (gridSize + this.bucketSize - 1) / this.bucketSize;
+        int buckets = bucketsPerSide * bucketsPerSide;
+        this.ids = new String[buckets][];
+        this.cells = new int[buckets][];
+        this.counts = new int[buckets];
+    }
+
+    public int getBucketSize() {
+        return bucketSize;
+    }
+
+    private int bucketOf(int cell) {
+        int x = GameUtils.getX(cell, gridSize);
+        int y = GameUtils.getY(cell, gridSize);
+        return (y / bucketSize) * bucketsPerSide + x / bucketSize;
+    }
+
+    public void add(String playerId, int cell) {
+        int bucket = bucketOf(cell);
+        int count = counts[bucket];
+        if (ids[bucket] == null) {
+            ids[bucket] = new String[4];
+            cells[bucket] = new int[4];
+        } else if (count == ids[bucket].length) {
+            ids[bucket] = Arrays.copyOf(ids[bucket], count * 2);
+            cells[bucket] = Arrays.copyOf(cells[bucket], count * 2);
+        }
+        ids[bucket][count] = playerId;
+        cells[bucket][count] = cell;
+        counts[bucket] = count + 1;
+    }
+
+    public void remove(String playerId, int cell) {
+        int bucket = bucketOf(cell);
+        int last = counts[bucket] - 1;
+        for (int i = 0; i <= last; i++) {
+            if (cells[bucket][i] == cell && playerId.equals(ids[bucket][i])) {
+                // The order doesn't matter, the last entry takes its place
+                ids[bucket][i] = ids[bucket][last];
+                cells[bucket][i] = cells[bucket][last];
+                ids[bucket][last] = null;
+                counts[bucket] = last;
+                return;
+            }
+        }
+    }
+
+    public void clear() {
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            if (counts[bucket] > 0) {
+                Arrays.fill(ids[bucket], 0, counts[bucket], null);
+                counts[bucket] = 0;
+            }
+        }
+    }
+
+    // Every player at most radius cells away from (x, y) along both axes
+    public void forEachPlayerNear(int x, int y, int radius, PlayerVisitor visitor) {
+        int minX = Math.max(0, x - radius);
+        int maxX = Math.min(gridSize - 1, x + radius);
+        int minY = Math.max(0, y - radius);
+        int maxY = Math.min(gridSize - 1, y + radius);
+        for (int by = minY / bucketSize; by <= maxY / bucketSize; by++) {
+            for (int bx = minX / bucketSize; bx <= maxX / bucketSize; bx++) {
+                int bucket = by * bucketsPerSide + bx;
+                for (int i = 0; i < counts[bucket]; i++) {
+                    int cell = cells[bucket][i];
+                    int px = GameUtils.getX(cell, gridSize);
+                    int py = GameUtils.getY(cell, gridSize);
+                    if (px >= minX && px <= maxX && py >= minY && py <= maxY) {
+                        visitor.visit(ids[bucket][i], px, py);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,459 @@
+package src;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import src.Player.GameState;
+
+// Local persistence of the primary's state, so the game survives the primary and the backup
+// dying together. Every committed delta is appended to a memory-mapped log segment, which costs
+// a copy into the page cache and no system call, and outlives a crash of the process (not of the
+// machine, see force). Every so often the state is written out as a compact snapshot and a new
+// segment is started from its version, after which the older files are deleted. recover() loads
+// the newest snapshot that is complete and replays the segments after it, up to the last record
+// that is whole and follows on the one before.
+//
+// In the directory: snapshot-<version>.snap and log-<version>.wal, the version in hex.
+// A log record is <length> <crc32> <GameDelta.writeTo>, a length of 0 ends the segment.
+// Not thread safe: Game calls it with its stateLock held. Snapshots are written on a thread of
+// their own, from an immutable StateSnapshot.
+// Enable with -Dgame.wal.dir, snapshot every -Dgame.wal.snapshotEvery deltas.
+public class StateLog implements AutoCloseable {
+    public static final long SNAPSHOT_EVERY = Long.getLong("game.wal.snapshotEvery", 100_000L);
+    // The log is mapped this many bytes at a time
+    static final int CHUNK = Integer.getInteger("game.wal.chunk", 16 << 20);
+    private static final int SNAPSHOT_MAGIC = 0x534e4150;
+
+    private final Path dir;
+    private final int gridSize;
+    private final long snapshotEvery;
+    private final ExecutorService writer;
+
+    private FileChannel segment;
+    private MappedByteBuffer chunk;
+    // File offset of the chunk
+    private long chunkStart;
+    // The version of the last delta appended, -1 until there is a snapshot to append after
+    private long lastVersion = -1;
+    private long sinceSnapshot;
+    private long appended;
+    private long appendedBytes;
+    private volatile long snapshotsWritten;
+
+    // Reused for every record
+    private final Record record = new Record();
+    private final DataOutputStream recordOut = new DataOutputStream(record);
+    private final CRC32 crc = new CRC32();
+
+    // The exposed buffer of a ByteArrayOutputStream
+    private static final class Record extends ByteArrayOutputStream {
+        byte[] bytes() {
+            return buf;
+        }
+    }
+
+    // What recover() found
+    public static final class Recovery {
+        public final GameState state;
+        public final int gridSize;
+        // Deltas replayed on top of the snapshot
+        public final long replayed;
+        public final long millis;
+
+        Recovery(GameState state, int gridSize, long replayed, long millis) {
+            this.state = state;
+            this.gridSize = gridSize;
+            this.replayed = replayed;
+            this.millis = millis;
+        }
+    }
+
+    public StateLog(Path dir, int gridSize) throws IOException {
+        this(dir, gridSize, SNAPSHOT_EVERY);
+    }
+
+    public StateLog(Path dir, int gridSize, long snapshotEvery) throws IOException {
+        this.dir = Files.createDirectories(dir);
+        this.gridSize = gridSize;
+        this.snapshotEvery = Math.max(1, snapshotEvery);
+        // One at a time and in order, so a newer snapshot never loses to an older one
+        this.writer = new ThreadPoolExecutor(0, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "state-log-" + dir.getFileName());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // The log of the given session under -Dgame.wal.dir, null if persistence is off.
+    // The property is read on every open, so a player started later can turn it on
+    public static StateLog open(String sessionId, int gridSize) {
+        String root = System.getProperty("game.wal.dir");
+        if (root == null) {
+            return null;
+        }
+        try {
+            return new StateLog(Paths.get(root, sessionId), gridSize);
+        } catch (IOException e) {
+            Log.error("Cannot open the state log in " + root, e);
+            return null;
+        }
+    }
+
+    public Path getDir() {
+        return dir;
+    }
+
+    public long getAppended() {
+        return appended;
+    }
+
+    // Bytes of the records appended, without the mapped space after them
+    public long getAppendedBytes() {
+        return appendedBytes;
+    }
+
+    public long getSnapshotsWritten() {
+        return snapshotsWritten;
+    }
+
+    // Whether the next delta should be followed by a snapshot, to keep the replay short
+    public boolean isSnapshotDue() {
+        return lastVersion < 0 || sinceSnapshot >= snapshotEvery;
+    }
+
+    // Append a committed delta. False if it doesn't follow on the last one, e.g. in a new term or
+    // after the state was replaced: then only a snapshot of the state with it applied can follow
+    public boolean append(GameDelta delta) {
+        if (lastVersion < 0 || delta.getVersion() != lastVersion + 1) {
+            return false;
+        }
+        try {
+            record.reset();
+            recordOut.writeInt(0);
+            recordOut.writeInt(0);
+            delta.writeTo(recordOut);
+            byte[] bytes = record.bytes();
+            int length = record.size() - 8;
+            crc.reset();
+            crc.update(bytes, 8, length);
+            putInt(bytes, 0, length);
+            putInt(bytes, 4, (int) crc.getValue());
+            write(bytes, record.size());
+        } catch (IOException e) {
+            // Not appending any more, the next snapshot starts over
+            Log.error("Error appending version " + delta.getVersion() + " to the state log", e);
+            lastVersion = -1;
+            return false;
+        }
+        lastVersion = delta.getVersion();
+        sinceSnapshot++;
+        appended++;
+        appendedBytes += record.size();
+        return true;
+    }
+
+    // Start a new segment after the state as of the snapshot, and write the snapshot out in the
+    // background. The older files are deleted once it is on disk
+    public void snapshot(StateSnapshot snapshot) {
+        long version = snapshot.getVersion();
+        try {
+            startSegment(version);
+        } catch (IOException e) {
+            Log.error("Error starting a state log segment at version " + version, e);
+            lastVersion = -1;
+            return;
+        }
+        lastVersion = version;
+        sinceSnapshot = 0;
+        writer.execute(() -> {
+            try {
+                writeSnapshot(snapshot.toGameState());
+                deleteBefore(version);
+                snapshotsWritten++;
+            } catch (IOException e) {
+                Log.error("Error writing the snapshot of version " + version, e);
+            }
+        });
+    }
+
+    // Write the appended records through to the disk, so they also survive the machine
+    public void force() {
+        if (chunk != null) {
+            chunk.force();
+        }
+    }
+
+    // Wait for the snapshots under way and let go of the segment
+    @Override
+    public void close() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closeSegment();
+        lastVersion = -1;
+    }
+
+    private void startSegment(long version) throws IOException {
+        closeSegment();
+        segment = FileChannel.open(dir.resolve(segmentName(version)), StandardOpenOption.CREATE,
+                                   StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        chunkStart = 0;
+        chunk = segment.map(FileChannel.MapMode.READ_WRITE, 0, CHUNK);
+    }
+
+    private void closeSegment() {
+        if (segment == null) {
+            return;
+        }
+        force();
+        try {
+            segment.close();
+        } catch (IOException e) {
+            Log.warn("Error closing the state log segment: " + e.getMessage());
+        }
+        segment = null;
+        chunk = null;
+    }
+
+    // Copy a record in, mapping the next chunk when it runs over. A record may straddle two chunks,
+    // the segment is read back as one stream
+    private void write(byte[] bytes, int length) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            if (!chunk.hasRemaining()) {
+                chunkStart += chunk.capacity();
+                chunk = segment.map(FileChannel.MapMode.READ_WRITE, chunkStart, CHUNK);
+            }
+            int part = Math.min(chunk.remaining(), length - offset);
+            chunk.put(bytes, offset, part);
+            offset += part;
+        }
+    }
+
+    private void writeSnapshot(GameState state) throws IOException {
+        Path tmp = dir.resolve(snapshotName(state.version) + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(tmp.toFile())) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(file), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(gridSize);
+            out.writeLong(state.version);
+            out.writeBoolean(state.isGameInitialized);
+            out.writeBoolean(state.startTime != null);
+            if (state.startTime != null) {
+                out.writeUTF(state.startTime);
+            }
+            out.writeInt(state.playerPositions.size());
+            for (Map.Entry<String, int[]> entry : state.playerPositions.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue()[0]);
+                out.writeInt(entry.getValue()[1]);
+            }
+            out.writeInt(state.treasurePositions.size());
+            for (int[] treasure : state.treasurePositions) {
+                out.writeInt(treasure[0]);
+                out.writeInt(treasure[1]);
+            }
+            out.writeInt(state.playerScores.size());
+            for (Map.Entry<String, Integer> entry : state.playerScores.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue());
+            }
+            out.flush();
+            // The checksum itself isn't part of what it covers
+            new DataOutputStream(file).writeLong(checked.getChecksum().getValue());
+            file.getFD().sync();
+        }
+        Files.move(tmp, dir.resolve(snapshotName(state.version)), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Drop the snapshots and segments the snapshot of the version makes unnecessary
+    private void deleteBefore(long version) throws IOException {
+        for (Path file : list(dir, "snapshot-", ".snap")) {
+            if (versionOf(file) < version) {
+                Files.deleteIfExists(file);
+            }
+        }
+        for (Path file : list(dir, "log-", ".wal")) {
+            if (versionOf(file) < version) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    // The last consistent state logged in the directory, null if there is none
+    public static Recovery recover(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return null;
+        }
+        long start = System.nanoTime();
+        List<Path> snapshots = list(dir, "snapshot-", ".snap");
+        for (int i = snapshots.size() - 1; i >= 0; i--) {
+            byte[] bytes = Files.readAllBytes(snapshots.get(i));
+            CRC32 checksum = new CRC32();
+            checksum.update(bytes, 0, Math.max(0, bytes.length - 8));
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            if (bytes.length < 8 + 8 || in.readInt() != SNAPSHOT_MAGIC
+                    || getLong(bytes, bytes.length - 8) != checksum.getValue()) {
+                // Not written out completely
+                Log.warn("Skipping the snapshot " + snapshots.get(i).getFileName());
+                continue;
+            }
+            int gridSize = in.readInt();
+            GameState state = readSnapshot(in);
+            long replayed = replay(dir, state, gridSize);
+            return new Recovery(state, gridSize, replayed, (System.nanoTime() - start) / 1_000_000);
+        }
+        return null;
+    }
+
+    // The state in a snapshot, after its magic and grid size
+    private static GameState readSnapshot(DataInputStream in) throws IOException {
+        GameState state = new GameState();
+        state.playerList = new ArrayList<>();
+        state.playerIds = new ArrayList<>();
+        state.version = in.readLong();
+        state.isGameInitialized = in.readBoolean();
+        state.startTime = in.readBoolean() ? in.readUTF() : null;
+        int positions = in.readInt();
+        state.playerPositions = new HashMap<>(positions * 2);
+        for (int i = 0; i < positions; i++) {
+            state.playerPositions.put(in.readUTF(), new int[] {in.readInt(), in.readInt()});
+        }
+        int treasures = in.readInt();
+        state.treasurePositions = new ArrayList<>(treasures);
+        for (int i = 0; i < treasures; i++) {
+            state.treasurePositions.add(new int[] {in.readInt(), in.readInt()});
+        }
+        int scores = in.readInt();
+        state.playerScores = new HashMap<>(scores * 2);
+        for (int i = 0; i < scores; i++) {
+            state.playerScores.put(in.readUTF(), in.readInt());
+        }
+        return state;
+    }
+
+    // Apply the segments from the snapshot's version on, as far as they follow on each other
+    private static long replay(Path dir, GameState state, int gridSize) throws IOException {
+        OccupancyGrid occupancy = new OccupancyGrid(gridSize);
+        occupancy.rebuild(state.playerPositions, state.treasurePositions);
+        long replayed = 0;
+        for (Path file : list(dir, "log-", ".wal")) {
+            if (versionOf(file) != state.version) {
+                // Older than the snapshot, or after a break in the versions
+                continue;
+            }
+            replayed += replaySegment(file, state, occupancy);
+        }
+        return replayed;
+    }
+
+    private static long replaySegment(Path file, GameState state, OccupancyGrid occupancy) throws IOException {
+        long replayed = 0;
+        CRC32 checksum = new CRC32();
+        byte[] payload = new byte[256];
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            while (true) {
+                int length;
+                int expected;
+                try {
+                    length = in.readInt();
+                    expected = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length <= 0) {
+                    // The end of what was written
+                    break;
+                }
+                if (length > payload.length) {
+                    payload = new byte[Math.max(length, payload.length * 2)];
+                }
+                try {
+                    in.readFully(payload, 0, length);
+                } catch (EOFException e) {
+                    break;
+                }
+                checksum.reset();
+                checksum.update(payload, 0, length);
+                if ((int) checksum.getValue() != expected) {
+                    Log.warn("Torn record after version " + state.version + " in " + file.getFileName());
+                    break;
+                }
+                GameDelta delta = GameDelta.readFrom(new DataInputStream(new ByteArrayInputStream(payload, 0, length)));
+                if (delta.getVersion() != state.version + 1) {
+                    break;
+                }
+                delta.applyTo(state.playerPositions, state.treasurePositions, state.playerScores, occupancy);
+                state.version = delta.getVersion();
+                replayed++;
+            }
+        }
+        return replayed;
+    }
+
+    private static List<Path> list(Path dir, String prefix, String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> {
+                String name = file.getFileName().toString();
+                return name.startsWith(prefix) && name.endsWith(suffix);
+            }).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static long versionOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseUnsignedLong(name.substring(name.indexOf('-') + 1, name.lastIndexOf('.')), 16);
+    }
+
+    private static String segmentName(long version) {
+        return String.format("log-%016x.wal", version);
+    }
+
+    private static String snapshotName(long version) {
+        return String.format("snapshot-%016x.snap", version);
+    }
+
+    private static long getLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = value << 8 | (bytes[offset + i] & 0xff);
+        }
+        return value;
+    }
+
+    private static void putInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,137 @@
+package src;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import src.Player.GameState;
+
+// The game state as of one version, copied into packed arrays and never changed afterwards.
+// Game publishes the one of its current version through a volatile field, so the state pulls,
+// backup resyncs and the side panel read a consistent state without taking the state lock,
+// while moves go on changing the live collections. A snapshot is only taken when the state is
+// read, at most once per version, so the moves nobody reads in between cost nothing.
+public final class StateSnapshot {
+    private final long version;
+    private final boolean gameInitialized;
+    private final String startTime;
+    // The player list it was taken with, Game replaces the list rather than changing it
+    private final List<Player> playerList;
+    private final List<Player> players;
+    private final List<String> playerIds;
+    // x, y of the player of positionIds[i] at 2 * i
+    private final String[] positionIds;
+    private final int[] positions;
+    // x, y of each treasure
+    private final int[] treasures;
+    private final String[] scoreIds;
+    private final int[] scores;
+
+    // Must be called while nothing changes the collections
+    StateSnapshot(boolean gameInitialized, List<Player> players, List<String> playerIds,
+                  Map<String, int[]> playerPositions, List<int[]> treasurePositions,
+                  Map<String, Integer> playerScores, String startTime, long version) {
+        this(gameInitialized, players, playerIds, treasurePositions, startTime, version,
+             playerPositions.size(), playerScores.size());
+        int i = 0;
+        for (Map.Entry<String, int[]> entry : playerPositions.entrySet()) {
+            positionIds[i] = entry.getKey();
+            positions[2 * i] = entry.getValue()[0];
+            positions[2 * i + 1] = entry.getValue()[1];
+            i++;
+        }
+        i = 0;
+        for (Map.Entry<String, Integer> entry : playerScores.entrySet()) {
+            scoreIds[i] = entry.getKey();
+            scores[i] = entry.getValue();
+            i++;
+        }
+    }
+
+    // Same, copying the positions and scores straight out of the slots
+    StateSnapshot(boolean gameInitialized, List<Player> players, List<String> playerIds, PlayerSlots slots,
+                  List<int[]> treasurePositions, String startTime, long version) {
+        this(gameInitialized, players, playerIds, treasurePositions, startTime, version,
+             slots.getPositionCount(), slots.getScoreCount());
+        int p = 0;
+        int s = 0;
+        for (int slot = 0; slot < slots.getSlotCount(); slot++) {
+            if (slots.hasPosition(slot)) {
+                positionIds[p] = slots.idAt(slot);
+                positions[2 * p] = slots.getX(slot);
+                positions[2 * p + 1] = slots.getY(slot);
+                p++;
+            }
+            if (slots.hasScore(slot)) {
+                scoreIds[s] = slots.idAt(slot);
+                scores[s] = slots.getScore(slot);
+                s++;
+            }
+        }
+    }
+
+    private StateSnapshot(boolean gameInitialized, List<Player> players, List<String> playerIds,
+                          List<int[]> treasurePositions, String startTime, long version,
+                          int positionCount, int scoreCount) {
+        this.version = version;
+        this.gameInitialized = gameInitialized;
+        this.startTime = startTime;
+        this.playerList = players;
+        this.players = Collections.unmodifiableList(new ArrayList<>(players));
+        this.playerIds = Collections.unmodifiableList(new ArrayList<>(playerIds));
+        positionIds = new String[positionCount];
+        positions = new int[positionCount * 2];
+        treasures = new int[treasurePositions.size() * 2];
+        int i = 0;
+        for (int[] treasure : treasurePositions) {
+            treasures[i++] = treasure[0];
+            treasures[i++] = treasure[1];
+        }
+        scoreIds = new String[scoreCount];
+        scores = new int[scoreCount];
+    }
+
+    // A snapshot of a state built or received elsewhere
+    public static StateSnapshot of(GameState state) {
+        return new StateSnapshot(state.isGameInitialized, state.playerList, state.playerIds, state.playerPositions,
+                                 state.treasurePositions, state.playerScores, state.startTime, state.version);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    // Whether this is still the state of a game at that version with that player list
+    boolean isOf(long version, List<Player> players, boolean gameInitialized, String startTime) {
+        return this.version == version && playerList == players && this.gameInitialized == gameInitialized
+            && this.startTime == startTime;
+    }
+
+    public int getPlayerCount() {
+        return positionIds.length;
+    }
+
+    // Player id -> score, in no particular order
+    public Map<String, Integer> getScores() {
+        Map<String, Integer> map = new HashMap<>(scoreIds.length * 2);
+        for (int i = 0; i < scoreIds.length; i++) {
+            map.put(scoreIds[i], scores[i]);
+        }
+        return map;
+    }
+
+    // A GameState of its own for the caller, which may change it freely
+    public GameState toGameState() {
+        Map<String, int[]> playerPositions = new HashMap<>(positionIds.length * 2);
+        for (int i = 0; i < positionIds.length; i++) {
+            playerPositions.put(positionIds[i], new int[] {positions[2 * i], positions[2 * i + 1]});
+        }
+        List<int[]> treasurePositions = new ArrayList<>(treasures.length / 2);
+        for (int i = 0; i < treasures.length; i += 2) {
+            treasurePositions.add(new int[] {treasures[i], treasures[i + 1]});
+        }
+        return new GameState(gameInitialized, new ArrayList<>(players), new ArrayList<>(playerIds), playerPositions,
+                             treasurePositions, getScores(), startTime, version);
+    }
+}
@@ -0,0 +1,158 @@
+package src;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.Toolkit;
+import java.util.Map;
+import javax.swing.BorderFactory;
+import javax.swing.Box;
+import javax.swing.BoxLayout;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+
+// The window of a player: the maze on the right, the game stats on the left
+public class SwingGameView implements GameView {
+    private JFrame frame;
+    private GridView gridView;
+    // The panel to display the current score of all the players
+    private JPanel sidePanel;
+    private String playerId;
+
+    private final Object sidePanelLock = new Object();
+    private volatile boolean isUpdatingSidePanel = false;
+
+    @Override
+    public boolean isHeadless() {
+        return false;
+    }
+
+    @Override
+    public void open(String playerId, int gridSize, Runnable onClose) {
+        this.playerId = playerId;
+        frame = new JFrame("Player: " + playerId);
+        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        frame.setSize(600, 500);
+
+        // Create main panel
+        JPanel mainPanel = new JPanel(new BorderLayout());
+
+        // Create score panel
+        sidePanel = new JPanel();
+        sidePanel.setLayout(new BoxLayout(sidePanel, BoxLayout.Y_AXIS));
+        sidePanel.setBorder(BorderFactory.createTitledBorder("Game Stats"));
+        sidePanel.setPreferredSize(new Dimension(100, 0));  // Set preferred width
+
+        gridView = new GridView(gridSize, playerId);
+        // Add panels to main panel
+        mainPanel.add(sidePanel, BorderLayout.WEST);
+        mainPanel.add(gridView.getPanel(), BorderLayout.CENTER);
+        frame.add(mainPanel);
+
+        // Handle window close event
+        frame.addWindowListener(new java.awt.event.WindowAdapter() {
+            @Override
+            public void windowClosing(java.awt.event.WindowEvent windowEvent) {
+                onClose.run();
+            }
+        });
+
+        // Disable the default close operation
+        frame.setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
+
+        // Display the frame
+        frame.setVisible(true);
+
+        // Bring the window to the front
+        frame.setAlwaysOnTop(true);
+        frame.toFront();
+        frame.requestFocus();
+        frame.setAlwaysOnTop(false);
+    }
+
+    @Override
+    public void invokeLater(Runnable task) {
+        SwingUtilities.invokeLater(task);
+    }
+
+    @Override
+    public void drawCell(int idx, int status, String playerId) {
+        if (gridView == null) {
+            Log.warn("gridView is null in drawCell");
+            return;
+        }
+        gridView.drawCell(idx, status, playerId);
+    }
+
+    @Override
+    public void drawStats(String startTime, String primaryId, String backupId, Map<String, Integer> scores) {
+        if (sidePanel == null) {
+            return;
+        }
+        synchronized (sidePanelLock) {
+            if (isUpdatingSidePanel) {
+                return;
+            }
+            isUpdatingSidePanel = true;
+        }
+
+        try {
+            sidePanel.removeAll();
+
+            // Display start time
+            JLabel startTimeLabel = new JLabel("Start Time:");
+            startTimeLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
+            sidePanel.add(startTimeLabel);
+            JLabel timeLabel = new JLabel(startTime);
+            timeLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
+            sidePanel.add(timeLabel);
+            sidePanel.add(Box.createVerticalStrut(10));
+
+            // Display primary and backup server information
+            JLabel primaryServerLabel = new JLabel("Primary: " + (primaryId != null ? primaryId : "N/A"));
+            JLabel backupServerLabel = new JLabel("Backup: " + (backupId != null ? backupId : "N/A"));
+            primaryServerLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
+            backupServerLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
+            sidePanel.add(primaryServerLabel);
+            sidePanel.add(backupServerLabel);
+            sidePanel.add(Box.createVerticalStrut(10)); // Add some space
+
+            // Add a label for "Score:"
+            JLabel scoreHeaderLabel = new JLabel("Score:");
+            scoreHeaderLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
+            sidePanel.add(scoreHeaderLabel);
+            sidePanel.add(Box.createVerticalStrut(5)); // Add a small space after the header
+
+            // Display player scores
+            for (Map.Entry<String, Integer> entry : scores.entrySet()) {
+                String pid = entry.getKey();
+                JLabel scoreLabel = new JLabel(pid + ": " + entry.getValue());
+                scoreLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
+                if (pid.equals(playerId)) {
+                    scoreLabel.setForeground(Color.RED);
+                    scoreLabel.setFont(scoreLabel.getFont().deriveFont(Font.BOLD));
+                }
+                sidePanel.add(scoreLabel);
+            }
+
+            sidePanel.revalidate();
+            sidePanel.repaint();
+
+        } finally {
+            synchronized (sidePanelLock) {
+                isUpdatingSidePanel = false;
+            }
+        }
+    }
+
+    @Override
+    public void alert() {
+        for (int i = 0; i < 10; i++) {
+            Toolkit.getDefaultToolkit().beep();
+        }
+    }
+}
@@ -6,20 +6,52 @@ import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 interface TrackerInterface extends Remote {
+    // The calls without a session id are about the default session
     boolean registerPlayer(Player player) throws RemoteException;
     void deregisterPlayer(Player player) throws RemoteException;
-    // NOTE: Tracker should have no idea about the primary server or backup server
+    // NOTE: Tracker should have no idea about the primary server or backup server,
+    // apart from the region primaries the elections report when the maze is split (see RegionMap)
     int getN() throws RemoteException;
     int getK() throws RemoteException;
     ArrayList<Player> getPlayerList() throws RemoteException;
+    // The primary of every region, empty until an election reported them
+    ArrayList<Player> getRegionOwners() throws RemoteException;
+
+    // Every session hosted here, by id
+    ArrayList<GameSession.Info> listSessions() throws RemoteException;
+    // The named session, null if there is none (see createSession).
+    // With a null id, the first session with room for one more player, or a new one if all are full
+    GameSession.Info findSession(String sessionId) throws RemoteException;
+    // Start a session with its own maze, null if the id is taken
+    GameSession.Info createSession(String sessionId, int n, int k) throws RemoteException;
+    // Register the player in the session, false if it is full, unknown or the id is taken there
+    boolean joinSession(String sessionId, Player player) throws RemoteException;
+    void leaveSession(String sessionId, Player player) throws RemoteException;
+    ArrayList<Player> getPlayerList(String sessionId) throws RemoteException;
+    // The primary of every region as of the given election, ignored if a newer one was reported
+    void updateRegionOwners(String sessionId, long epoch, String initiatorId, ArrayList<String> ownerIds) throws RemoteException;
+    ArrayList<Player> getRegionOwners(String sessionId) throws RemoteException;
 }
 
 public class Tracker implements TrackerInterface {
-    private ArrayList<Player> playerList;
+    public static final String DEFAULT_SESSION = "default";
+
+    // Session id -> session. Each session locks only itself, the map is the only shared state
+    private final ConcurrentHashMap<String, GameSession> sessions = new ConcurrentHashMap<>();
+    // Numbers the sessions started for players routed automatically
+    private final AtomicInteger sessionsStarted = new AtomicInteger();
     private int port_number;
+    // The maze of the default session and of the sessions started without one
     private int n_grid;
     private int k_treasure;
+    // Most players a session admits
+    private int maxPlayers = Integer.MAX_VALUE;
+    // How long a session other than the default one may stay empty before it is dropped
+    private long sessionIdleMillis = Long.getLong("game.session.idleMs", 60000L);
     
     public int getPortNumber() {
         return port_number;
@@ -44,52 +76,162 @@ public class Tracker implements TrackerInterface {
         this.k_treasure = k_treasure;
     }
 
+    // Set before the first player joins, sessions keep the limit they started with
+    public void setMaxPlayers(int maxPlayers) {
+        this.maxPlayers = maxPlayers;
+    }
+
+    public void setSessionIdleMillis(long sessionIdleMillis) {
+        this.sessionIdleMillis = sessionIdleMillis;
+    }
+
     public Tracker() {
-        playerList = new ArrayList<>();
+    }
+
+    // The session, started with the default maze if there is none yet.
+    // Only the default session and the ones routing starts for players are made this way,
+    // a client naming an unknown session doesn't get one
+    private GameSession session(String sessionId) {
+        return sessions.computeIfAbsent(sessionId, id -> {
+            Log.info("Starting session " + id + " with N=" + n_grid + ", K=" + k_treasure);
+            return new GameSession(id, n_grid, k_treasure, maxPlayers);
+        });
+    }
+
+    // Drop the sessions that have been empty for a while, along with their election thread.
+    // The default session stays
+    private void dropIdleSessions() {
+        for (GameSession session : sessions.values()) {
+            if (!session.getId().equals(DEFAULT_SESSION) && session.closeIfIdle(sessionIdleMillis)) {
+                sessions.remove(session.getId(), session);
+            }
+        }
+    }
+
+    // The session, null if there is no such session
+    public GameSession getSession(String sessionId) {
+        return sessionId == null ? null : sessions.get(sessionId);
     }
 
     @Override
-    public ArrayList<Player> getPlayerList() throws RemoteException {
-        return playerList;
+    public ArrayList<GameSession.Info> listSessions() throws RemoteException {
+        ArrayList<GameSession.Info> infos = new ArrayList<>();
+        for (GameSession session : sessions.values()) {
+            infos.add(session.getInfo());
+        }
+        infos.sort(Comparator.comparing(info -> info.id));
+        return infos;
     }
 
     @Override
-    public synchronized boolean registerPlayer(Player player) throws RemoteException {
-        try {
-            System.out.println("New player is trying to register: " + player.getPlayerId());
-            System.out.println("Current number of players: " + (playerList.size()));
-            // Check if the player ID already exists
-            String newPlayerId = player.getPlayerId();
-            for (Player p : playerList) {
-                // There is a chance the player is already killed
-                try {
-                    System.out.println("Player in the playerList: " + p.getPlayerId());
-                } catch (RemoteException e) {
-                    // System.out.println("Player is no longer available");
-                    continue;
-                }
-                if (p.getPlayerId().equals(newPlayerId)) {
-                    System.out.println("Player with ID " + newPlayerId + " already exists. Ignoring registration.");
-                    return false;
-                }
+    public GameSession.Info findSession(String sessionId) throws RemoteException {
+        dropIdleSessions();
+        if (sessionId != null) {
+            GameSession session = getSession(sessionId);
+            return session == null ? null : session.getInfo();
+        }
+        // The default session first, then the others in the order they started
+        GameSession.Info best = session(DEFAULT_SESSION).getInfo();
+        if (!best.isFull()) {
+            return best;
+        }
+        for (GameSession.Info info : listSessions()) {
+            if (!info.isFull()) {
+                return info;
             }
-            playerList.add(player);
-            System.out.println("New player registered: " + player.getPlayerId());
-            System.out.println("Current number of players: " + (playerList.size()));
-            
-            // Trigger server election by the new player
-            player.initiateElection(playerList);
-            return true;
+        }
+        // All full, start a new one. Players arriving together may each start one, the ones
+        // left empty are handed out first next time
+        String id;
+        do {
+            id = "session-" + sessionsStarted.incrementAndGet();
+        } while (sessions.containsKey(id));
+        return session(id).getInfo();
+    }
+
+    @Override
+    public GameSession.Info createSession(String sessionId, int n, int k) throws RemoteException {
+        dropIdleSessions();
+        GameSession session = new GameSession(sessionId, n, k, maxPlayers);
+        if (sessions.putIfAbsent(sessionId, session) != null) {
+            return null;
+        }
+        Log.info("Starting session " + sessionId + " with N=" + n + ", K=" + k);
+        return session.getInfo();
+    }
+
+    @Override
+    public boolean joinSession(String sessionId, Player player) throws RemoteException {
+        return register(getSession(sessionId), player);
+    }
+
+    private boolean register(GameSession session, Player player) {
+        if (session == null) {
+            return false;
+        }
+        try {
+            return session.register(player);
         } catch (RemoteException e) {
-            System.err.println("Error registering player: " + e.getMessage());
+            Log.warn("Error registering player: " + e.getMessage());
             return false;
         }
     }
 
+    @Override
+    public void leaveSession(String sessionId, Player player) throws RemoteException {
+        GameSession session = getSession(sessionId);
+        if (session != null) {
+            session.deregister(player);
+        }
+    }
+
+    @Override
+    public ArrayList<Player> getPlayerList(String sessionId) throws RemoteException {
+        GameSession session = getSession(sessionId);
+        return session == null ? new ArrayList<>() : session.getPlayerList();
+    }
+
+    @Override
+    public void updateRegionOwners(String sessionId, long epoch, String initiatorId, ArrayList<String> ownerIds) throws RemoteException {
+        GameSession session = getSession(sessionId);
+        if (session != null) {
+            session.updateRegionOwners(epoch, initiatorId, ownerIds);
+        }
+    }
+
+    @Override
+    public ArrayList<Player> getRegionOwners(String sessionId) throws RemoteException {
+        GameSession session = getSession(sessionId);
+        return session == null ? new ArrayList<>() : session.getRegionOwners();
+    }
+
+    @Override
+    public ArrayList<Player> getPlayerList() throws RemoteException {
+        return session(DEFAULT_SESSION).getPlayerList();
+    }
+
+    @Override
+    public boolean registerPlayer(Player player) throws RemoteException {
+        return register(session(DEFAULT_SESSION), player);
+    }
+
+    // Number of elections the registrations have triggered so far, in every session
+    public long getElectionsRun() {
+        long total = 0;
+        for (GameSession session : sessions.values()) {
+            total += session.getElectionsRun();
+        }
+        return total;
+    }
+
     @Override
     public void deregisterPlayer(Player player) throws RemoteException {
-        System.out.println("Player deregistered: " + player.getPlayerId());
-        playerList.remove(player);
+        leaveSession(DEFAULT_SESSION, player);
+    }
+
+    @Override
+    public ArrayList<Player> getRegionOwners() throws RemoteException {
+        return getRegionOwners(DEFAULT_SESSION);
     }
 
     public void regTracker(){
@@ -98,15 +240,15 @@ public class Tracker implements TrackerInterface {
             Registry registry = LocateRegistry.createRegistry(port_number);
             registry.bind("Tracker", stub);   
         } catch (Exception e) {
-            e.printStackTrace();
+            Log.error("Error registering the Tracker", e);
         }
     }
  
     public static void main(String[] args) {
         // check the num of args
-        if (args.length != 3) {
-            System.out.println("Error: You must provide exactly 3 arguments.");
-            System.out.println("Usage: java Tracker <port_number> <N> <K>");
+        if (args.length != 3 && args.length != 4) {
+            System.out.println("Error: You must provide 3 or 4 arguments.");
+            System.out.println("Usage: java Tracker <port_number> <N> <K> [max players per session]");
             return;
         }
         try {
@@ -116,16 +258,21 @@ public class Tracker implements TrackerInterface {
             int N = Integer.parseInt(args[1]);
             int K = Integer.parseInt(args[2]);
 
-            System.out.println("Port Number: " + port_number);
-            System.out.println("N: " + N);
-            System.out.println("K: " + K);
+            Log.info("Port Number: " + port_number);
+            Log.info("N: " + N);
+            Log.info("K: " + K);
 
             tracker.setPortNumber(port_number);
             tracker.setN(N);
             tracker.setK(K);
+            if (args.length == 4) {
+                int maxPlayers = Integer.parseInt(args[3]);
+                Log.info("Max players per session: " + maxPlayers);
+                tracker.setMaxPlayers(maxPlayers);
+            }
 
             tracker.regTracker();
-            System.out.println("Tracker ready");
+            Log.info("Tracker ready");
         } catch (NumberFormatException e) {
             System.out.println("Error: All arguments must be valid integers.");
         }        
@@ -0,0 +1,28 @@
+package src;
+
+import java.rmi.RemoteException;
+
+// How the other nodes reach the players of this JVM. Java RMI by default, or NioTransport
+// with -Dgame.transport=nio. Every node of a game must use the same transport.
+//
+// A player is exported on the transport, which gives the reference to hand out to the Tracker,
+// and through it to the other players: an RMI stub, or a NioPlayerStub. Whoever calls the player
+// through that reference goes through the transport.
+public interface Transport {
+    // The reference the other nodes call the player through
+    Player export(Player player) throws RemoteException;
+
+    // Stop answering calls to the player, as if its process had exited
+    void unexport(Player player);
+
+    static Transport get() {
+        String name = System.getProperty("game.transport", "rmi");
+        if (name.equalsIgnoreCase("nio")) {
+            return NioTransport.getInstance();
+        }
+        if (!name.equalsIgnoreCase("rmi")) {
+            throw new IllegalArgumentException("Unknown transport: " + name + ", use rmi or nio");
+        }
+        return RmiTransport.INSTANCE;
+    }
+}
@@ -0,0 +1,33 @@
+package test;
+
+import java.lang.reflect.Proxy;
+import src.Player;
+
+// A Player for unit tests that never touches RMI. Each call is passed to the handler by
+// method name; hashCode and equals are by identity so fakes can be put in sets and maps.
+public class FakePlayer {
+
+    public interface Handler {
+        // Returns what the call returns, null for void and for calls the fake ignores
+        Object handle(Player self, String method, Object[] args) throws Exception;
+    }
+
+    private FakePlayer() {
+    }
+
+    public static Player of(Handler handler) {
+        return (Player) Proxy.newProxyInstance(Player.class.getClassLoader(), new Class<?>[] {Player.class},
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    case "toString":
+                        return "FakePlayer@" + Integer.toHexString(System.identityHashCode(proxy));
+                    default:
+                        return handler.handle((Player) proxy, method.getName(), args);
+                }
+            });
+    }
+}
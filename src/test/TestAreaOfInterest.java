@@ -0,0 +1,120 @@
+package test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import src.AreaOfInterest;
+import src.GameDelta;
+import src.OccupancyGrid;
+import src.Player.GameState;
+
+public class TestAreaOfInterest {
+    private final OccupancyGrid primary = new OccupancyGrid(20, 3);
+    private final Map<String, int[]> positions = new HashMap<>();
+    private final List<int[]> treasures = new ArrayList<>();
+    private final Map<String, Integer> scores = new HashMap<>();
+    private final AreaOfInterest interest = new AreaOfInterest(3);
+    private long version = 10;
+
+    public TestAreaOfInterest() {
+        commit(delta -> {
+            delta.playerMoved("ab", 5, 5);
+            delta.playerMoved("cd", 7, 5);
+            delta.playerMoved("ef", 15, 15);
+            delta.treasureSpawned(4, 4);
+            delta.treasureSpawned(18, 18);
+            delta.scoreChanged("ab", 0);
+            delta.scoreChanged("cd", 0);
+            delta.scoreChanged("ef", 2);
+        });
+    }
+
+    private interface Events {
+        void add(GameDelta delta);
+    }
+
+    private void commit(Events events) {
+        GameDelta delta = new GameDelta();
+        events.add(delta);
+        delta.setVersion(++version);
+        delta.applyTo(positions, treasures, scores, primary);
+    }
+
+    private GameState freshView(String playerId) {
+        GameState state = new GameState();
+        state.playerPositions = positions;
+        state.treasurePositions = treasures;
+        state.playerScores = scores;
+        state.version = version;
+        return interest.snapshot(playerId, state, positions.get(playerId), primary);
+    }
+
+    @Test
+    public void testFreshViewOnlyHasWhatIsNear() {
+        GameState view = freshView("ab");
+
+        assertEquals(2, view.playerPositions.size());
+        assertArrayEquals(new int[] {7, 5}, view.playerPositions.get("cd"));
+        assertEquals(1, view.treasurePositions.size());
+        assertArrayEquals(new int[] {4, 4}, view.treasurePositions.get(0));
+        assertEquals(2, view.playerScores.size());
+        assertNull(view.playerScores.get("ef"));
+    }
+
+    @Test
+    public void testChangesHaveEntriesAndExits() {
+        GameState view = freshView("ab");
+        Map<String, int[]> clientPositions = new HashMap<>(view.playerPositions);
+        List<int[]> clientTreasures = new ArrayList<>(view.treasurePositions);
+        Map<String, Integer> clientScores = new HashMap<>(view.playerScores);
+        OccupancyGrid client = new OccupancyGrid(20);
+        client.rebuild(clientPositions, clientTreasures);
+        long known = view.version;
+
+        commit(delta -> delta.playerMoved("ef", 8, 8));
+        commit(delta -> delta.playerMoved("cd", 12, 5));
+        commit(delta -> delta.scoreChanged("cd", 1));
+        // Far from ab
+        commit(delta -> {
+            delta.playerMoved("ef", 18, 18);
+            delta.treasureRemoved(18, 18);
+            delta.scoreChanged("ef", 3);
+        });
+        commit(delta -> delta.playerMoved("ef", 8, 8));
+
+        GameDelta changes = interest.changes("ab", known, version, positions.get("ab"), primary, scores);
+        assertNotNull(changes);
+        assertEquals(version, changes.getVersion());
+        changes.applyTo(clientPositions, clientTreasures, clientScores, client);
+
+        assertArrayEquals(new int[] {8, 8}, clientPositions.get("ef"));
+        assertFalse("cd left the view", clientPositions.containsKey("cd"));
+        assertNull(client.getPlayerAt(7, 5));
+        assertNull(clientScores.get("cd"));
+        // ef scored while it was out of view
+        assertEquals(Integer.valueOf(3), clientScores.get("ef"));
+        assertTrue(client.hasTreasure(4, 4));
+        // Nothing changed since
+        assertEquals(0, interest.changes("ab", version, version, positions.get("ab"), primary, scores).size());
+    }
+
+    @Test
+    public void testUnknownVersionNeedsAFreshView() {
+        assertNull("Never sent anything", interest.changes("ab", version, version, positions.get("ab"), primary, scores));
+
+        freshView("ab");
+        assertNull("Another version than was sent", interest.changes("ab", version - 1, version, positions.get("ab"), primary, scores));
+
+        interest.forget("ab");
+        assertEquals(0, interest.getViewCount());
+    }
+}
@@ -0,0 +1,118 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.Test;
+import src.Election;
+import src.Game.ServerRole;
+import src.Player;
+
+public class TestElection {
+
+    @Test
+    public void testHighestIdsBecomeServersAndStateComesFromOldPrimary() {
+        List<Player> players = Arrays.asList(null, null, null, null);
+        List<Election.Probe> probes = Arrays.asList(
+            new Election.Probe("bb", ServerRole.PRIMARY, 3),
+            new Election.Probe("aa", ServerRole.BACKUP, 3),
+            new Election.Probe("dd", null, 0),
+            new Election.Probe("cc", ServerRole.PLAYER, 2));
+
+        Election.Result result = Election.decide(players, probes);
+
+        assertEquals(4, result.epoch);
+        assertEquals(Arrays.asList("aa", "bb", "cc", "dd"), result.playerIds);
+        assertEquals("dd", result.primaryId);
+        assertEquals("cc", result.backupId);
+        assertEquals("bb", result.stateSourceId);
+    }
+
+    @Test
+    public void testStateComesFromBackupWhenPrimaryIsGone() {
+        List<Player> players = new ArrayList<>(Arrays.asList((Player) null));
+        List<Election.Probe> probes = Arrays.asList(new Election.Probe("aa", ServerRole.BACKUP, 5));
+
+        Election.Result result = Election.decide(players, probes);
+
+        assertEquals("aa", result.primaryId);
+        assertNull(result.backupId);
+        assertEquals("aa", result.stateSourceId);
+    }
+
+    @Test
+    public void testRegionsArePairedOffFromTheHighestIds() {
+        List<Player> players = Arrays.asList(null, null, null, null, null);
+        List<Election.Probe> probes = Arrays.asList(
+            new Election.Probe("ee", ServerRole.PRIMARY, 3, new int[] {0, 2}),
+            new Election.Probe("dd", ServerRole.BACKUP, 3, new int[] {0, 2}),
+            new Election.Probe("cc", ServerRole.PRIMARY, 3, new int[] {1, 3}),
+            new Election.Probe("bb", ServerRole.BACKUP, 3, new int[] {1, 3}),
+            new Election.Probe("ff", null, 0));
+
+        Election.Result result = Election.decide(players, probes, 4);
+
+        assertEquals("ff", result.primaryId);
+        assertEquals(Arrays.asList("ff", "dd", "ff", "dd"), result.regionPrimaryIds);
+        assertEquals(Arrays.asList("ee", "cc", "ee", "cc"), result.regionBackupIds);
+        assertEquals(Arrays.asList("ee", "cc", "ee", "cc"), result.regionStateSourceIds);
+        assertEquals("ff", result.primaryOf("ee"));
+        assertEquals("cc", result.backupOf("dd"));
+        assertNull(result.primaryOf("aa"));
+    }
+
+    @Test
+    public void testSameEpochIsOrderedByInitiator() {
+        List<Player> players = Arrays.asList(null, null);
+        List<Election.Probe> probes = Arrays.asList(
+            new Election.Probe("aa", ServerRole.PRIMARY, 3),
+            new Election.Probe("bb", ServerRole.BACKUP, 3));
+
+        // Two elections started at once from the same probes
+        Election.Result byAa = Election.decide(players, probes, 1, "aa");
+        Election.Result byBb = Election.decide(players, probes, 1, "bb");
+
+        assertEquals(byAa.epoch, byBb.epoch);
+        assertTrue(byBb.supersedes(byAa.epoch, byAa.initiatorId));
+        assertFalse(byAa.supersedes(byBb.epoch, byBb.initiatorId));
+        assertFalse(byBb.supersedes(byBb.epoch, byBb.initiatorId));
+        // Whatever order they arrive in, a player ends up at bb's
+        assertTrue(byAa.supersedes(3, "zz"));
+    }
+
+    private static Player player(String id, long probeMillis, List<String> applied) {
+        return FakePlayer.of((self, method, args) -> {
+            switch (method) {
+                case "probeForElection":
+                    Thread.sleep(probeMillis);
+                    return new Election.Probe(id, null, 0);
+                case "applyElectionResult":
+                    applied.add(id);
+                    return null;
+                default:
+                    return null;
+            }
+        });
+    }
+
+    @Test
+    public void testHungPlayerIsLeftOutOfTheElection() {
+        List<String> applied = new CopyOnWriteArrayList<>();
+        List<Player> players = Arrays.asList(player("aa", 0, applied), player("bb", 60_000, applied),
+                                             player("cc", 0, applied));
+
+        long start = System.currentTimeMillis();
+        Election.Result result = Election.run("aa", players);
+
+        assertTrue(System.currentTimeMillis() - start < 10_000);
+        assertEquals(Arrays.asList("aa", "cc"), result.playerIds);
+        assertEquals("aa", result.initiatorId);
+        assertEquals(Arrays.asList("cc", "aa"), applied);
+    }
+}
@@ -0,0 +1,94 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.rmi.ConnectException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import src.FailureDetector;
+import src.Player;
+
+public class TestFailureDetector {
+
+    private static Player peer(long pingMillis, boolean crashed) {
+        return peer(pingMillis, crashed, new AtomicInteger());
+    }
+
+    private static Player peer(long pingMillis, boolean crashed, AtomicInteger pings) {
+        return FakePlayer.of((self, method, args) -> {
+            switch (method) {
+                case "ping":
+                    pings.incrementAndGet();
+                    if (crashed) {
+                        throw new ConnectException("Connection refused");
+                    }
+                    Thread.sleep(pingMillis);
+                    return "pong";
+                default:
+                    return null;
+            }
+        });
+    }
+
+    @Test
+    public void testReportsAllDeadPeersWithoutWaitingForHungOne() {
+        FailureDetector detector = new FailureDetector("test", 50, 100, 8.0, 1);
+        Player alive = peer(0, false);
+        Player crashed1 = peer(0, true);
+        Player hung = peer(10_000, false);
+        Player crashed2 = peer(0, true);
+
+        long start = System.currentTimeMillis();
+        List<Player> dead = detector.probe(Arrays.asList(alive, crashed1, hung, crashed2));
+        long elapsed = System.currentTimeMillis() - start;
+
+        // Both crashed peers are reported in the same pass, the hung one is only suspected so far
+        assertEquals(Arrays.asList(crashed1, crashed2), dead);
+        assertTrue("Probe should be bounded by the ping deadline, took " + elapsed + "ms", elapsed < 1000);
+        assertEquals(2, detector.getDetections());
+        detector.shutdown();
+    }
+
+    @Test
+    public void testHungPeerIsDeclaredDeadOncePhiIsHigh() throws Exception {
+        FailureDetector detector = new FailureDetector("test", 50, 50, 3.0, 1);
+        Player hung = peer(10_000, false);
+        List<Player> peers = Arrays.asList(hung);
+
+        boolean declaredDead = false;
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!declaredDead && System.currentTimeMillis() < deadline) {
+            declaredDead = !detector.probe(peers).isEmpty();
+        }
+        assertTrue(declaredDead);
+        assertTrue(detector.getMaxDetectionMillis() > 0);
+        detector.shutdown();
+    }
+
+    @Test
+    public void testHungPingIsNotSentAgain() {
+        FailureDetector detector = new FailureDetector("test", 50, 20, 1000.0, 1);
+        AtomicInteger pings = new AtomicInteger();
+        Player hung = peer(10_000, false, pings);
+        Player alive = peer(0, false);
+
+        for (int i = 0; i < 5; i++) {
+            detector.probe(Arrays.asList(hung, alive));
+        }
+        // Every probe waits on the first ping instead of holding another thread
+        assertEquals(1, pings.get());
+        assertEquals(2, detector.getTrackedPeers());
+
+        // Once it has left the game it is forgotten, pending ping and all
+        detector.retainAll(Collections.singletonList(alive));
+        assertEquals(1, detector.getTrackedPeers());
+        assertEquals(0, detector.getPhi(hung), 0);
+        detector.probe(Arrays.asList(hung));
+        assertEquals(2, pings.get());
+        detector.shutdown();
+    }
+}
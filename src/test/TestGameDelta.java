@@ -0,0 +1,93 @@
+package test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import src.DeltaHistory;
+import src.GameDelta;
+import src.OccupancyGrid;
+
+public class TestGameDelta {
+
+    @Test
+    public void testApplyAfterSerialization() throws Exception {
+        GameDelta delta = new GameDelta();
+        delta.playerMoved("ab", 2, 2);
+        delta.treasureRemoved(2, 2);
+        delta.scoreChanged("ab", 1);
+        delta.treasureSpawned(4, 0);
+        delta.setVersion(7);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(delta);
+        }
+        GameDelta copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (GameDelta) in.readObject();
+        }
+        assertEquals(7, copy.getVersion());
+        assertEquals(4, copy.size());
+
+        Map<String, int[]> playerPositions = new HashMap<>();
+        playerPositions.put("ab", new int[] {2, 1});
+        List<int[]> treasurePositions = new ArrayList<>();
+        treasurePositions.add(new int[] {2, 2});
+        Map<String, Integer> playerScores = new HashMap<>();
+        OccupancyGrid occupancy = new OccupancyGrid(5);
+        occupancy.rebuild(playerPositions, treasurePositions);
+
+        copy.applyTo(playerPositions, treasurePositions, playerScores, occupancy);
+
+        assertArrayEquals(new int[] {2, 2}, playerPositions.get("ab"));
+        assertEquals(Integer.valueOf(1), playerScores.get("ab"));
+        assertEquals(1, treasurePositions.size());
+        assertArrayEquals(new int[] {4, 0}, treasurePositions.get(0));
+        assertTrue(occupancy.isEmpty(2, 1));
+        assertFalse(occupancy.hasTreasure(2, 2));
+        assertTrue(occupancy.hasTreasure(4, 0));
+    }
+
+    @Test
+    public void testHistorySince() {
+        DeltaHistory history = new DeltaHistory(3);
+        history.reset(10);
+        for (long version = 11; version <= 14; version++) {
+            GameDelta delta = new GameDelta();
+            delta.playerMoved("ab", 0, 0);
+            delta.setVersion(version);
+            history.append(delta);
+        }
+
+        // Up to date
+        assertEquals(0, history.since(14).size());
+        // Versions 12..14 are still in the ring
+        assertEquals(2, history.since(12).size());
+        assertEquals(12, history.since(11).get(0).getVersion());
+        // Version 11 was evicted, so a node at 10 needs a snapshot
+        assertNull(history.since(10));
+        // A node ahead of us (e.g. from the previous primary's term) needs a snapshot too
+        assertNull(history.since(15));
+        assertTrue(DeltaHistory.nextTerm(14) > 14);
+
+        // Into a list that is reused from one call to the next
+        List<GameDelta> deltas = new ArrayList<>();
+        assertTrue(history.since(12, deltas));
+        assertEquals(2, deltas.size());
+        assertTrue(history.since(14, deltas));
+        assertTrue(deltas.isEmpty());
+        assertFalse(history.since(10, deltas));
+    }
+}
@@ -0,0 +1,167 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import src.GameSession;
+import src.Player;
+import src.Tracker;
+
+public class TestGameSession {
+
+    // A player that answers pings unless dead and holds its elections until released
+    private static Player player(String id, boolean dead, CountDownLatch release, CountDownLatch elected) {
+        return FakePlayer.of((self, method, args) -> {
+            switch (method) {
+                case "getPlayerId":
+                    return id;
+                case "ping":
+                    if (dead) {
+                        throw new RemoteException("dead");
+                    }
+                    return null;
+                case "initiateElection":
+                    release.await();
+                    elected.countDown();
+                    return null;
+                default:
+                    return null;
+            }
+        });
+    }
+
+    // A player whose pings never come back
+    private static Player hungPlayer(String id) {
+        return FakePlayer.of((self, method, args) -> {
+            switch (method) {
+                case "getPlayerId":
+                    return id;
+                case "ping":
+                    Thread.sleep(60_000);
+                    return null;
+                default:
+                    return null;
+            }
+        });
+    }
+
+    private static Player player(String id) {
+        return player(id, false, new CountDownLatch(0), new CountDownLatch(1));
+    }
+
+    private static Tracker tracker(int maxPlayers) {
+        Tracker tracker = new Tracker();
+        tracker.setN(5);
+        tracker.setK(3);
+        tracker.setMaxPlayers(maxPlayers);
+        return tracker;
+    }
+
+    @Test
+    public void testFullSessionsRouteToANewOne() throws Exception {
+        Tracker tracker = tracker(2);
+        GameSession.Info first = tracker.findSession(null);
+        assertEquals(Tracker.DEFAULT_SESSION, first.id);
+        assertTrue(tracker.joinSession(first.id, player("aa")));
+        assertTrue(tracker.joinSession(tracker.findSession(null).id, player("bb")));
+
+        GameSession.Info second = tracker.findSession(null);
+        assertNotEquals(first.id, second.id);
+        assertEquals(5, second.n);
+        assertFalse(tracker.joinSession(first.id, player("cc")));
+        assertTrue(tracker.joinSession(second.id, player("cc")));
+        // Ids only have to be unique within a session
+        assertTrue(tracker.joinSession(second.id, player("aa")));
+
+        assertEquals(2, tracker.getPlayerList(first.id).size());
+        assertEquals(2, tracker.getPlayerList(second.id).size());
+        assertEquals(2, tracker.listSessions().size());
+    }
+
+    @Test
+    public void testSessionsKeepTheirOwnMaze() throws Exception {
+        Tracker tracker = tracker(100);
+        GameSession.Info small = tracker.createSession("small", 2, 1);
+        assertEquals(2, small.n);
+        assertEquals(1, small.k);
+        // No more players than free cells
+        assertEquals(3, small.capacity);
+        assertNull(tracker.createSession("small", 9, 9));
+        assertEquals(2, tracker.findSession("small").n);
+        assertFalse(tracker.joinSession("unknown", player("aa")));
+    }
+
+    @Test
+    public void testUnreachablePlayersMakeRoom() throws Exception {
+        Tracker tracker = tracker(2);
+        assertTrue(tracker.registerPlayer(player("aa")));
+        assertTrue(tracker.registerPlayer(player("bb", true, new CountDownLatch(0), new CountDownLatch(1))));
+
+        assertTrue(tracker.registerPlayer(player("cc")));
+        assertEquals(2, tracker.getPlayerList().size());
+    }
+
+    @Test
+    public void testStuckElectionOnlyHoldsItsSession() throws Exception {
+        Tracker tracker = tracker(10);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch busyElected = new CountDownLatch(1);
+        CountDownLatch quietElected = new CountDownLatch(1);
+        tracker.createSession("busy", 5, 3);
+        tracker.createSession("quiet", 5, 3);
+        try {
+            assertTrue(tracker.joinSession("busy", player("aa", false, release, busyElected)));
+
+            assertTrue(tracker.joinSession("quiet", player("bb", false, new CountDownLatch(0), quietElected)));
+            assertTrue(quietElected.await(5, TimeUnit.SECONDS));
+            assertEquals(1, busyElected.getCount());
+        } finally {
+            release.countDown();
+        }
+        assertTrue(busyElected.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testHungPlayerDoesNotHoldUpAJoinToAFullSession() throws Exception {
+        Tracker tracker = tracker(3);
+        assertTrue(tracker.registerPlayer(hungPlayer("aa")));
+        assertTrue(tracker.registerPlayer(player("bb", true, new CountDownLatch(0), new CountDownLatch(1))));
+        assertTrue(tracker.registerPlayer(player("cc")));
+
+        long start = System.currentTimeMillis();
+        assertTrue(tracker.registerPlayer(player("dd")));
+        // Only bounded by the ping deadline, and the dead player made room
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        assertEquals(3, tracker.getPlayerList().size());
+    }
+
+    @Test
+    public void testOnlyCreatedSessionsExistAndIdleOnesAreDropped() throws Exception {
+        Tracker tracker = tracker(10);
+        tracker.setSessionIdleMillis(0);
+        assertNull(tracker.findSession("typo"));
+        assertFalse(tracker.joinSession("typo", player("aa")));
+
+        tracker.createSession("short", 5, 3);
+        Player aa = player("aa");
+        assertTrue(tracker.joinSession("short", aa));
+        // Not dropped while somebody is in it
+        assertEquals(5, tracker.findSession("short").n);
+        tracker.leaveSession("short", aa);
+
+        assertNull(tracker.findSession("short"));
+        assertTrue(tracker.listSessions().isEmpty());
+        // The default session stays even when empty
+        assertEquals(Tracker.DEFAULT_SESSION, tracker.findSession(null).id);
+        assertEquals(Tracker.DEFAULT_SESSION, tracker.findSession(null).id);
+        assertEquals(1, tracker.listSessions().size());
+        assertFalse(tracker.joinSession("short", aa));
+    }
+}
@@ -0,0 +1,88 @@
+package test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import org.junit.Test;
+import src.Player;
+import src.Player.GameState;
+
+public class TestGameState {
+
+    private static GameState roundTrip(GameState state) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(state);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (GameState) in.readObject();
+        }
+    }
+
+    private static GameState newState() {
+        GameState state = new GameState();
+        state.isGameInitialized = true;
+        state.playerIds = new ArrayList<>(Arrays.asList("ab", "cd"));
+        state.playerList = new ArrayList<>(Arrays.asList((Player) null, null));
+        state.playerPositions = new HashMap<>();
+        state.playerPositions.put("ab", new int[] {1, 2});
+        state.playerPositions.put("cd", new int[] {300, 0});
+        state.treasurePositions = new ArrayList<>();
+        state.treasurePositions.add(new int[] {4, 5});
+        state.playerScores = new HashMap<>();
+        state.playerScores.put("ab", 0);
+        state.playerScores.put("cd", 1000);
+        state.startTime = "12:00:00";
+        state.version = (7L << 32) | 42;
+        return state;
+    }
+
+    @Test
+    public void testRoundTripKeepsTheState() throws Exception {
+        GameState copy = roundTrip(newState());
+
+        assertTrue(copy.isGameInitialized);
+        assertEquals(Arrays.asList("ab", "cd"), copy.playerIds);
+        assertArrayEquals(new int[] {1, 2}, copy.playerPositions.get("ab"));
+        assertArrayEquals(new int[] {300, 0}, copy.playerPositions.get("cd"));
+        assertEquals(1, copy.treasurePositions.size());
+        assertArrayEquals(new int[] {4, 5}, copy.treasurePositions.get(0));
+        assertEquals(Integer.valueOf(0), copy.playerScores.get("ab"));
+        assertEquals(Integer.valueOf(1000), copy.playerScores.get("cd"));
+        assertEquals("12:00:00", copy.startTime);
+        assertEquals((7L << 32) | 42, copy.version);
+    }
+
+    @Test
+    public void testNamedPlayersAreSentWithoutStubs() throws Exception {
+        GameState copy = roundTrip(newState());
+
+        List<Player> players = copy.playerList;
+        assertEquals(2, players.size());
+        assertNull(players.get(0));
+        assertNull(players.get(1));
+    }
+
+    @Test
+    public void testIdsOnlyInPositionsAreKept() throws Exception {
+        GameState state = newState();
+        state.playerPositions.put("ef", new int[] {0, 0});
+        state.startTime = null;
+
+        GameState copy = roundTrip(state);
+
+        assertArrayEquals(new int[] {0, 0}, copy.playerPositions.get("ef"));
+        assertEquals(2, copy.playerIds.size());
+        assertNull(copy.startTime);
+    }
+}
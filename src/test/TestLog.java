@@ -0,0 +1,43 @@
+package test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import org.junit.Test;
+import src.Log;
+
+public class TestLog {
+
+    @Test
+    public void testInfoIsTheDefaultLevel() {
+        assertTrue(Log.isEnabled(Log.Level.ERROR));
+        assertTrue(Log.isEnabled(Log.Level.INFO));
+        assertFalse(Log.isEnabled(Log.Level.DEBUG));
+        assertFalse(Log.DEBUG);
+    }
+
+    @Test
+    public void testFlushWritesQueuedMessagesToTheirStream() {
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+        ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
+        ByteArrayOutputStream errBytes = new ByteArrayOutputStream();
+        try {
+            System.setOut(new PrintStream(outBytes, true));
+            System.setErr(new PrintStream(errBytes, true));
+            Log.info("info message");
+            Log.warn("warn message");
+            Log.debug("debug message");
+            Log.flush();
+        } finally {
+            System.setOut(out);
+            System.setErr(err);
+        }
+
+        assertTrue(outBytes.toString().contains("] info message"));
+        assertTrue(errBytes.toString().contains("] warn message"));
+        assertFalse(outBytes.toString().contains("debug message"));
+    }
+}
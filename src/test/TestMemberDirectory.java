@@ -0,0 +1,54 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import src.MemberDirectory;
+import src.Player;
+
+public class TestMemberDirectory {
+
+    private static Player player(String id, AtomicInteger idLookups) {
+        return FakePlayer.of((self, method, args) -> {
+            switch (method) {
+                case "getPlayerId":
+                    idLookups.incrementAndGet();
+                    return id;
+                default:
+                    return null;
+            }
+        });
+    }
+
+    @Test
+    public void testIdIsOnlyAskedForOnce() throws Exception {
+        AtomicInteger idLookups = new AtomicInteger();
+        Player a = player("aa", idLookups);
+        MemberDirectory members = new MemberDirectory();
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals("aa", members.resolveId(a));
+        }
+        assertEquals(1, idLookups.get());
+        assertEquals(a, members.get("aa"));
+    }
+
+    @Test
+    public void testDeadMembersAreForgotten() throws Exception {
+        AtomicInteger idLookups = new AtomicInteger();
+        Player a = player("aa", idLookups);
+        Player b = player("bb", idLookups);
+        MemberDirectory members = new MemberDirectory();
+        members.replaceAll(Arrays.asList("aa", "bb"), Arrays.asList(a, b));
+
+        members.removeAll(Arrays.asList(a));
+        assertFalse(members.contains("aa"));
+        assertNull(members.getId(a));
+        assertEquals(Arrays.asList("bb"), members.getIds());
+        assertEquals(0, idLookups.get());
+    }
+}
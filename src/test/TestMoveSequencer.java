@@ -0,0 +1,114 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import src.GameDelta;
+import src.MoveSequencer;
+
+public class TestMoveSequencer {
+
+    // Counts the moves of every player and stamps each batch with the next version
+    private static class CountingWriter implements MoveSequencer.Writer {
+        final Map<String, Integer> moves = new HashMap<>();
+        final List<String> order = new ArrayList<>();
+        long version;
+
+        @Override
+        public void apply(String playerId, int x, int y, char[] directions, GameDelta delta) {
+            if (x < 0) {
+                return;
+            }
+            if ("boom".equals(playerId)) {
+                throw new IllegalStateException("boom");
+            }
+            int steps = directions == null ? 1 : directions.length;
+            moves.merge(playerId, steps, Integer::sum);
+            order.add(playerId + x);
+            delta.playerMoved(playerId, x, y);
+        }
+
+        @Override
+        public GameDelta commit(GameDelta delta) {
+            if (delta.isEmpty()) {
+                return null;
+            }
+            delta.setVersion(++version);
+            return delta;
+        }
+    }
+
+    @Test
+    public void testMovesOfOneThreadKeepTheirOrder() {
+        CountingWriter writer = new CountingWriter();
+        MoveSequencer sequencer = new MoveSequencer(new Object(), writer, 4);
+        for (int i = 0; i < 10; i++) {
+            assertNotNull(sequencer.move("aa", i, 0));
+        }
+        assertNotNull(sequencer.moves("aa", new char[] {'1', '2'}));
+        assertNull(sequencer.move("aa", -1, 0));
+
+        assertEquals(4, sequencer.getCapacity());
+        assertEquals(12, sequencer.getApplied());
+        assertEquals(12, (int) writer.moves.get("aa"));
+        for (int i = 0; i < 10; i++) {
+            assertEquals("aa" + i, writer.order.get(i));
+        }
+    }
+
+    @Test
+    public void testConcurrentMovesAreAllApplied() throws Exception {
+        CountingWriter writer = new CountingWriter();
+        Object lock = new Object();
+        MoveSequencer sequencer = new MoveSequencer(lock, writer, 8);
+        int threads = 8;
+        int perThread = 2000;
+        AtomicInteger outOfOrder = new AtomicInteger();
+        List<Thread> movers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            String id = "p" + t;
+            Thread mover = new Thread(() -> {
+                long last = 0;
+                for (int i = 0; i < perThread; i++) {
+                    GameDelta delta = sequencer.move(id, i, 0);
+                    // A later move is never in an earlier batch
+                    if (delta.getVersion() <= last) {
+                        outOfOrder.incrementAndGet();
+                    }
+                    last = delta.getVersion();
+                }
+            });
+            movers.add(mover);
+            mover.start();
+        }
+        for (Thread mover : movers) {
+            mover.join();
+        }
+
+        assertEquals(0, outOfOrder.get());
+        assertEquals(threads * perThread, sequencer.getApplied());
+        assertTrue(sequencer.getBatches() <= threads * perThread);
+        synchronized (lock) {
+            for (int t = 0; t < threads; t++) {
+                assertEquals(perThread, (int) writer.moves.get("p" + t));
+            }
+        }
+    }
+
+    @Test
+    public void testFailedMoveDoesNotStopTheOthers() {
+        CountingWriter writer = new CountingWriter();
+        MoveSequencer sequencer = new MoveSequencer(new Object(), writer, 4);
+        assertNull(sequencer.move("boom", 1, 1));
+        assertNotNull(sequencer.move("aa", 1, 1));
+        assertEquals(2, sequencer.getApplied());
+    }
+}
@@ -0,0 +1,142 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Constructor;
+import java.rmi.NoSuchObjectException;
+import java.rmi.ServerException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+import src.GameDelta;
+import src.NioPlayerStub;
+import src.NioTransport;
+import src.Player;
+import src.Player.StateUpdate;
+
+public class TestNioTransport {
+
+    // A player that answers with its id and replies to a move with one delta
+    private static Player player(String playerId) {
+        return FakePlayer.of((self, method, args) -> {
+            switch (method) {
+                case "getPlayerId":
+                    return playerId;
+                case "ping":
+                    return "pong";
+                case "updateGamebyNewMove": {
+                    GameDelta delta = new GameDelta();
+                    delta.playerMoved(((Player) args[0]).getPlayerId(), (int) args[1], (int) args[2]);
+                    delta.setVersion((long) args[3] + 1);
+                    return newStateUpdate(delta.getVersion(), delta);
+                }
+                case "getPrimaryServer":
+                    return self;
+                case "demoteToPlayer":
+                    throw new IllegalStateException("not now");
+                default:
+                    return null;
+            }
+        });
+    }
+
+    // StateUpdate's constructor is package-private to src
+    private static StateUpdate newStateUpdate(long version, GameDelta delta) throws Exception {
+        Constructor<?> constructor = StateUpdate.class.getDeclaredConstructors()[0];
+        constructor.setAccessible(true);
+        return (StateUpdate) constructor.newInstance(version, new ArrayList<>(Arrays.asList(delta)), null);
+    }
+
+    @Test
+    public void testCallsGoThroughTheStub() throws Exception {
+        NioTransport transport = NioTransport.getInstance();
+        Player server = player("ab");
+        Player mover = player("cd");
+        Player serverStub = transport.export(server);
+        Player moverStub = transport.export(mover);
+        try {
+            assertTrue(serverStub instanceof NioPlayerStub);
+            assertEquals("ab", serverStub.getPlayerId());
+            assertEquals("pong", serverStub.ping());
+
+            // The mover is sent as its reference and called back by the server
+            StateUpdate update = serverStub.updateGamebyNewMove(moverStub, 3, 4, 41);
+            assertEquals(42, update.version);
+            assertNull(update.snapshot);
+            assertEquals(1, update.deltas.size());
+            assertEquals("cd", update.deltas.get(0).getPlayerId(0));
+            assertEquals(3, update.deltas.get(0).getX(0));
+
+            // A local player comes back as its reference
+            assertEquals(serverStub, serverStub.getPrimaryServer());
+            assertSame(serverStub, transport.export(server));
+        } finally {
+            transport.unexport(server);
+            transport.unexport(mover);
+        }
+    }
+
+    @Test
+    public void testPipelinedCallsGetTheirOwnResponses() throws Exception {
+        NioTransport transport = NioTransport.getInstance();
+        List<Player> players = new ArrayList<>();
+        List<Player> stubs = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            players.add(player("p" + i));
+            stubs.add(transport.export(players.get(i)));
+        }
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                Player stub = stubs.get(i);
+                String id = "p" + i;
+                results.add(callers.submit(() -> {
+                    for (int call = 0; call < 200; call++) {
+                        if (!id.equals(stub.getPlayerId())) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            callers.shutdown();
+            for (Player player : players) {
+                transport.unexport(player);
+            }
+        }
+    }
+
+    @Test
+    public void testErrorsAreRemoteExceptions() throws Exception {
+        NioTransport transport = NioTransport.getInstance();
+        Player server = player("ab");
+        Player stub = transport.export(server);
+        try {
+            stub.demoteToPlayer();
+            fail("The error of the call should reach the caller");
+        } catch (ServerException e) {
+            assertTrue(e.getMessage().contains("not now"));
+        }
+
+        transport.unexport(server);
+        try {
+            stub.ping();
+            fail("An unexported player should not answer");
+        } catch (NoSuchObjectException e) {
+            // Expected, as with RMI
+        }
+    }
+}
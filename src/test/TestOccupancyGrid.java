@@ -0,0 +1,151 @@
+package test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+import src.BlockStatus;
+import src.FreeCellPool;
+import src.GameUtils;
+import src.OccupancyGrid;
+
+public class TestOccupancyGrid {
+
+    @Test
+    public void testMovePlayerFreesOldCell() {
+        OccupancyGrid grid = new OccupancyGrid(5);
+        grid.placePlayer("ab", 1, 1);
+        grid.movePlayer("ab", new int[] {1, 1}, 1, 2);
+
+        assertNull(grid.getPlayerAt(1, 1));
+        assertEquals("ab", grid.getPlayerAt(1, 2));
+        assertEquals(BlockStatus.PLAYER, grid.getBlockStatus(1, 2));
+    }
+
+    @Test
+    public void testStaleRemoveDoesNotClearOtherPlayer() {
+        OccupancyGrid grid = new OccupancyGrid(5);
+        grid.placePlayer("cd", 3, 3);
+        // "ab" thinks it is still standing on (3, 3)
+        grid.removePlayer("ab", 3, 3);
+
+        assertEquals("cd", grid.getPlayerAt(3, 3));
+    }
+
+    @Test
+    public void testRebuildFromGameState() {
+        Map<String, int[]> playerPositions = new HashMap<>();
+        playerPositions.put("ab", new int[] {0, 4});
+        List<int[]> treasurePositions = new ArrayList<>();
+        treasurePositions.add(new int[] {2, 3});
+
+        OccupancyGrid grid = new OccupancyGrid(5);
+        grid.placePlayer("old", 1, 1);
+        grid.rebuild(playerPositions, treasurePositions);
+
+        assertTrue(grid.isEmpty(1, 1));
+        assertEquals("ab", grid.getPlayerAt(0, 4));
+        assertTrue(grid.hasTreasure(2, 3));
+        assertFalse(grid.isEmpty(2, 3));
+        assertFalse(grid.isInside(5, 0));
+    }
+
+    @Test
+    public void testFreeCellsTrackPlayersAndTreasures() {
+        OccupancyGrid grid = new OccupancyGrid(3);
+        assertEquals(9, grid.getFreeCellCount());
+
+        grid.placePlayer("ab", 0, 0);
+        grid.addTreasure(1, 0);
+        assertEquals(7, grid.getFreeCellCount());
+
+        // Picking up the treasure keeps the cell taken by the player
+        grid.movePlayer("ab", new int[] {0, 0}, 1, 0);
+        grid.removeTreasure(1, 0);
+        assertEquals(8, grid.getFreeCellCount());
+
+        Random random = new Random(42);
+        for (int i = 0; i < 100; i++) {
+            int cell = grid.randomFreeCell(random);
+            assertTrue(grid.isEmpty(cell % 3, cell / 3));
+        }
+    }
+
+    @Test
+    public void testFreeCellPoolIsReproducibleWithSeed() {
+        FreeCellPool pool1 = new FreeCellPool(100);
+        FreeCellPool pool2 = new FreeCellPool(100);
+        Random random1 = new Random(7);
+        Random random2 = new Random(7);
+        for (int i = 0; i < 50; i++) {
+            int cell = pool1.randomCell(random1);
+            assertEquals(cell, pool2.randomCell(random2));
+            pool1.remove(cell);
+            pool2.remove(cell);
+            assertFalse(pool1.contains(cell));
+        }
+        assertEquals(50, pool1.size());
+    }
+
+    @Test
+    public void testOnlyChangedCellsAreDirty() {
+        OccupancyGrid grid = new OccupancyGrid(10);
+        // Everything has to be drawn once
+        assertEquals(100, grid.takeDirtyCells().length);
+        assertEquals(0, grid.takeDirtyCells().length);
+
+        grid.placePlayer("ab", 2, 3);
+        grid.takeDirtyCells();
+        grid.movePlayer("ab", new int[] {2, 3}, 3, 3);
+        grid.addTreasure(9, 9);
+        // Changed twice, drawn once
+        grid.movePlayer("ab", new int[] {3, 3}, 2, 3);
+        grid.movePlayer("ab", new int[] {2, 3}, 3, 3);
+        assertArrayEquals(new int[] {GameUtils.getIdx(2, 3, 10), GameUtils.getIdx(3, 3, 10), GameUtils.getIdx(9, 9, 10)},
+                          grid.takeDirtyCells());
+        assertEquals(0, grid.takeDirtyCells().length);
+
+        grid.rebuild(new HashMap<>(), new ArrayList<>());
+        assertEquals(100, grid.takeDirtyCells().length);
+    }
+
+    @Test
+    public void testPlayersNearMatchWithAndWithoutIndex() {
+        OccupancyGrid indexed = new OccupancyGrid(50, 4);
+        OccupancyGrid scanned = new OccupancyGrid(50);
+        Random random = new Random(3);
+        Map<String, int[]> positions = new HashMap<>();
+        for (int i = 0; i < 200; i++) {
+            String id = "p" + i;
+            int x = random.nextInt(50);
+            int y = random.nextInt(50);
+            indexed.movePlayer(id, positions.get(id), x, y);
+            scanned.movePlayer(id, positions.get(id), x, y);
+            positions.put(id, new int[] {x, y});
+            // Some players walk around and some are overwritten by others
+            String mover = "p" + random.nextInt(i + 1);
+            int[] from = positions.get(mover);
+            indexed.movePlayer(mover, from, (from[0] + 1) % 50, from[1]);
+            scanned.movePlayer(mover, from, (from[0] + 1) % 50, from[1]);
+            positions.put(mover, new int[] {(from[0] + 1) % 50, from[1]});
+        }
+
+        for (int i = 0; i < 20; i++) {
+            int x = random.nextInt(50);
+            int y = random.nextInt(50);
+            Map<String, Integer> near1 = new HashMap<>();
+            Map<String, Integer> near2 = new HashMap<>();
+            indexed.forEachPlayerNear(x, y, 6, (id, px, py) -> near1.put(id, GameUtils.getIdx(px, py, 50)));
+            scanned.forEachPlayerNear(x, y, 6, (id, px, py) -> near2.put(id, GameUtils.getIdx(px, py, 50)));
+            assertEquals(near2, near1);
+        }
+    }
+}
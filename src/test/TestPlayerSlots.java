@@ -0,0 +1,97 @@
+package test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+import src.PlayerSlots;
+
+public class TestPlayerSlots {
+
+    @Test
+    public void testSlotIsKeptUntilPositionAndScoreAreGone() {
+        PlayerSlots slots = new PlayerSlots();
+        int slot = slots.intern("ab");
+        assertEquals(slot, slots.intern("ab"));
+        slots.setPosition(slot, 3, 4);
+        slots.setScore(slot, 2);
+        assertEquals("ab", slots.idAt(slot));
+        assertEquals(3, slots.getX(slot));
+        assertEquals(4, slots.getY(slot));
+        long changes = slots.getScoreChanges();
+        slots.setScore(slot, 2);
+        assertEquals(changes, slots.getScoreChanges());
+
+        slots.clearPosition(slot);
+        assertEquals(slot, slots.slotOf("ab"));
+        assertFalse(slots.hasPosition(slot));
+        assertEquals(2, slots.getScore(slot));
+
+        slots.clearScore(slot);
+        assertEquals(changes + 1, slots.getScoreChanges());
+        assertEquals(-1, slots.slotOf("ab"));
+        assertEquals(0, slots.size());
+        // The freed slot goes to the next player
+        assertEquals(slot, slots.intern("cd"));
+        assertFalse(slots.hasScore(slot));
+    }
+
+    @Test
+    public void testMapViewsWriteThrough() {
+        PlayerSlots slots = new PlayerSlots(2);
+        Map<String, int[]> positions = slots.positions();
+        Map<String, Integer> scores = slots.scores();
+        assertNull(positions.put("ab", new int[] {1, 2}));
+        assertArrayEquals(new int[] {1, 2}, positions.put("ab", new int[] {5, 6}));
+        positions.put("cd", new int[] {7, 8});
+        scores.put("ab", 1);
+        scores.merge("ab", 4, Integer::sum);
+
+        assertEquals(2, positions.size());
+        assertEquals(1, scores.size());
+        assertEquals(5, (int) scores.get("ab"));
+        assertArrayEquals(new int[] {5, 6}, positions.get("ab"));
+        assertEquals(6, slots.getY(slots.slotOf("ab")));
+
+        for (Iterator<Map.Entry<String, int[]>> it = positions.entrySet().iterator(); it.hasNext();) {
+            if (it.next().getKey().equals("cd")) {
+                it.remove();
+            }
+        }
+        assertFalse(positions.containsKey("cd"));
+        assertEquals(-1, slots.slotOf("cd"));
+        assertTrue(positions.containsKey("ab"));
+    }
+
+    // Against a HashMap, with enough ids and removals to grow, rehash and shift the table around
+    @Test
+    public void testRandomChurnMatchesHashMap() {
+        PlayerSlots slots = new PlayerSlots(4);
+        Map<String, int[]> expected = new HashMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 20000; i++) {
+            String id = "p" + random.nextInt(500);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(id) != null, slots.positions().remove(id) != null);
+            } else {
+                int[] pos = {random.nextInt(100), random.nextInt(100)};
+                expected.put(id, pos);
+                int slot = slots.intern(id);
+                slots.setPosition(slot, pos[0], pos[1]);
+            }
+        }
+        assertEquals(expected.size(), slots.size());
+        assertEquals(expected.size(), slots.positions().size());
+        for (Map.Entry<String, int[]> entry : expected.entrySet()) {
+            assertArrayEquals(entry.getValue(), slots.positions().get(entry.getKey()));
+        }
+        assertEquals(expected.keySet(), slots.positions().keySet());
+    }
+}
@@ -0,0 +1,67 @@
+package test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import org.junit.Test;
+import src.GameUtils;
+import src.RegionMap;
+
+public class TestRegionMap {
+
+    @Test
+    public void testEveryCellIsInTheBoundsOfItsRegion() {
+        RegionMap regions = new RegionMap(15, 2, 3);
+        assertEquals(6, regions.size());
+        assertTrue(regions.isSharded());
+        int[] cells = new int[regions.size()];
+        for (int x = 0; x < 15; x++) {
+            for (int y = 0; y < 15; y++) {
+                int region = regions.regionOf(x, y);
+                int[] bounds = regions.bounds(region);
+                assertTrue(x >= bounds[0] && x <= bounds[2] && y >= bounds[1] && y <= bounds[3]);
+                cells[region]++;
+            }
+        }
+        for (int region = 0; region < regions.size(); region++) {
+            int[] bounds = regions.bounds(region);
+            assertEquals((bounds[2] - bounds[0] + 1) * (bounds[3] - bounds[1] + 1), cells[region]);
+        }
+        assertArrayEquals(new int[] {0, 0, 4, 7}, regions.bounds(0));
+        assertArrayEquals(new int[] {10, 8, 14, 14}, regions.bounds(5));
+    }
+
+    @Test
+    public void testRandomCellsStayInTheirRegion() {
+        RegionMap regions = new RegionMap(10, 2, 2);
+        Random random = new Random(1);
+        for (int i = 0; i < 100; i++) {
+            int region = i % regions.size();
+            int cell = regions.randomCell(region, random);
+            assertTrue(regions.contains(region, GameUtils.getX(cell, 10), GameUtils.getY(cell, 10)));
+        }
+    }
+
+    @Test
+    public void testTreasuresAreSharedOut() {
+        RegionMap regions = new RegionMap(15, 2, 2);
+        int total = 0;
+        for (int region = 0; region < regions.size(); region++) {
+            total += regions.treasuresOf(region, 10);
+        }
+        assertEquals(10, total);
+        assertEquals(3, regions.treasuresOf(0, 10));
+        assertEquals(2, regions.treasuresOf(3, 10));
+    }
+
+    @Test
+    public void testSingleRegionByDefault() {
+        RegionMap regions = new RegionMap(15, 1, 1);
+        assertFalse(regions.isSharded());
+        assertEquals(0, regions.regionOf(14, 14));
+        assertFalse(new RegionMap(15, 0, 1).isSharded());
+    }
+}
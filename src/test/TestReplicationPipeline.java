@@ -0,0 +1,158 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.rmi.ConnectException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import src.GameDelta;
+import src.Player;
+import src.ReplicationPipeline;
+import src.ReplicationPipeline.DurabilityMode;
+
+public class TestReplicationPipeline {
+
+    // A backup that only records what it is sent; it reports a gap for the first batch
+    private static Player recordingBackup(List<Long> appliedVersions, AtomicInteger snapshots) {
+        return FakePlayer.of((self, method, args) -> {
+            if (method.equals("applyGameDeltas")) {
+                if (snapshots.get() == 0) {
+                    return false;
+                }
+                @SuppressWarnings("unchecked")
+                List<GameDelta> deltas = (List<GameDelta>) args[0];
+                for (GameDelta delta : deltas) {
+                    appliedVersions.add(delta.getVersion());
+                }
+                return true;
+            } else if (method.equals("updateGameState")) {
+                snapshots.incrementAndGet();
+            }
+            return null;
+        });
+    }
+
+    private static GameDelta delta(long version) {
+        GameDelta delta = new GameDelta();
+        delta.playerMoved("ab", 0, 0);
+        delta.setVersion(version);
+        return delta;
+    }
+
+    @Test
+    public void testSyncModeWaitsForBackup() {
+        List<Long> applied = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger snapshots = new AtomicInteger();
+        Player backup = recordingBackup(applied, snapshots);
+        ReplicationPipeline pipeline = new ReplicationPipeline("sync", () -> backup,
+            () -> snapshot(1), DurabilityMode.SYNC, 16, 8, 5000);
+
+        for (long version = 1; version <= 20; version++) {
+            GameDelta delta = delta(version);
+            pipeline.enqueue(delta);
+            pipeline.awaitDurability(delta);
+            assertEquals(0, pipeline.getLag());
+        }
+        // The first batch hit a gap and was replaced by the snapshot at version 1
+        assertEquals(1, snapshots.get());
+        assertEquals(20, pipeline.getAckedVersion());
+        assertEquals(19, applied.size());
+    }
+
+    @Test
+    public void testAsyncModeBoundsLag() {
+        List<Long> applied = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger snapshots = new AtomicInteger(1);
+        Player backup = recordingBackup(applied, snapshots);
+        ReplicationPipeline pipeline = new ReplicationPipeline("async", () -> backup,
+            () -> snapshot(0), DurabilityMode.ASYNC, 4, 8, 5000);
+
+        for (long version = 1; version <= 100; version++) {
+            GameDelta delta = delta(version);
+            pipeline.enqueue(delta);
+            pipeline.awaitDurability(delta);
+            assertTrue(pipeline.getLag() <= 4);
+        }
+        // Wait for the tail of the queue to drain
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pipeline.getAckedVersion() < 100 && System.currentTimeMillis() < deadline) {
+            Thread.yield();
+        }
+        assertEquals(100, applied.size());
+        assertTrue(pipeline.getBatchesSent() <= 100);
+    }
+
+    private static boolean senderRunning(String name) {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("replication-" + name) && thread.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void testUnreachableBackupCountsFailedBatches() {
+        Player backup = FakePlayer.of((self, method, args) -> {
+            throw new ConnectException("Connection refused");
+        });
+        ReplicationPipeline pipeline = new ReplicationPipeline("failing", () -> backup,
+            () -> snapshot(0), DurabilityMode.SYNC, 16, 8, 5000);
+
+        long start = System.currentTimeMillis();
+        for (long version = 1; version <= 5; version++) {
+            GameDelta delta = delta(version);
+            pipeline.enqueue(delta);
+            pipeline.awaitDurability(delta);
+        }
+        // The movers are answered without the backup, but not silently
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        assertEquals(5, pipeline.getFailedBatches());
+        assertEquals(0, pipeline.getBatchesSent());
+        pipeline.close();
+    }
+
+    @Test
+    public void testCloseStopsTheSender() throws Exception {
+        List<Long> applied = Collections.synchronizedList(new ArrayList<>());
+        Player backup = recordingBackup(applied, new AtomicInteger(1));
+        ReplicationPipeline pipeline = new ReplicationPipeline("closing", () -> backup,
+            () -> snapshot(0), DurabilityMode.ASYNC, 16, 8, 5000);
+        pipeline.enqueue(delta(1));
+        assertTrue(senderRunning("closing"));
+
+        // Stopped on demotion, started again by the next delta
+        pipeline.stop();
+        pipeline.enqueue(delta(2));
+        pipeline.close();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (senderRunning("closing") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(senderRunning("closing"));
+        // Nothing is sent once closed
+        pipeline.enqueue(delta(3));
+        assertFalse(senderRunning("closing"));
+        assertEquals(0, pipeline.getLag());
+    }
+
+    // GameState's constructor is package-private to src
+    private static Player.GameState snapshot(long version) {
+        Player.GameState state = new Player.GameState();
+        state.isGameInitialized = true;
+        state.playerList = new ArrayList<Player>();
+        state.playerIds = new ArrayList<String>();
+        state.playerPositions = new HashMap<String, int[]>();
+        state.treasurePositions = new ArrayList<int[]>();
+        state.playerScores = new HashMap<String, Integer>();
+        state.startTime = "00:00:00";
+        state.version = version;
+        return state;
+    }
+}
@@ -0,0 +1,138 @@
+package test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import src.GameDelta;
+import src.OccupancyGrid;
+import src.Player.GameState;
+import src.StateLog;
+import src.StateSnapshot;
+
+public class TestStateLog {
+    private static final int GRID_SIZE = 10;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // The state the logged deltas are applied to, like the primary's
+    private GameState state;
+    private OccupancyGrid occupancy;
+
+    private void newState(long version) {
+        state = new GameState();
+        state.isGameInitialized = true;
+        state.playerList = new ArrayList<>();
+        state.playerIds = new ArrayList<>();
+        state.playerPositions = new HashMap<>();
+        state.playerPositions.put("ab", new int[] {0, 0});
+        state.treasurePositions = new ArrayList<>();
+        state.treasurePositions.add(new int[] {5, 5});
+        state.playerScores = new HashMap<>();
+        state.startTime = "12:00:00";
+        state.version = version;
+        occupancy = new OccupancyGrid(GRID_SIZE);
+        occupancy.rebuild(state.playerPositions, state.treasurePositions);
+    }
+
+    // Commit the next move of ab, collecting the treasure on the way, and log it like Game does
+    private void commitMove(StateLog log, int x) {
+        GameDelta delta = new GameDelta();
+        delta.playerMoved("ab", x, 5);
+        if (x == 5) {
+            delta.treasureRemoved(5, 5);
+            delta.scoreChanged("ab", 1);
+        }
+        delta.setVersion(++state.version);
+        delta.applyTo(state.playerPositions, state.treasurePositions, state.playerScores, occupancy);
+        if (!log.append(delta) || log.isSnapshotDue()) {
+            log.snapshot(StateSnapshot.of(state));
+        }
+    }
+
+    @Test
+    public void testRecoverSnapshotAndLogTail() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        assertNull(StateLog.recover(dir));
+        newState(10);
+        StateLog log = new StateLog(dir, GRID_SIZE, 1000);
+        GameDelta gap = new GameDelta();
+        gap.setVersion(11);
+        // Nothing to follow on before the first snapshot
+        assertFalse(log.append(gap));
+        log.snapshot(StateSnapshot.of(state));
+        for (int x = 0; x < GRID_SIZE; x++) {
+            commitMove(log, x);
+        }
+        log.close();
+
+        StateLog.Recovery recovery = StateLog.recover(dir);
+        assertEquals(GRID_SIZE, recovery.gridSize);
+        assertEquals(10, recovery.replayed);
+        assertEquals(20, recovery.state.version);
+        assertEquals("12:00:00", recovery.state.startTime);
+        assertArrayEquals(new int[] {9, 5}, recovery.state.playerPositions.get("ab"));
+        assertEquals(1, (int) recovery.state.playerScores.get("ab"));
+        assertTrue(recovery.state.treasurePositions.isEmpty());
+    }
+
+    @Test
+    public void testTornRecordEndsTheReplay() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        newState(0);
+        StateLog log = new StateLog(dir, GRID_SIZE, 1000);
+        log.snapshot(StateSnapshot.of(state));
+        for (int x = 0; x < 4; x++) {
+            commitMove(log, x);
+        }
+        log.close();
+
+        // Flip a byte of the last record, as if the process died while writing it
+        File segment = dir.resolve(String.format("log-%016x.wal", 0L)).toFile();
+        byte[] bytes = Files.readAllBytes(segment.toPath());
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int last = 0;
+        for (int offset = 0; buffer.getInt(offset) > 0; offset += 8 + buffer.getInt(offset)) {
+            last = offset;
+        }
+        bytes[last + 8 + 3] ^= 1;
+        Files.write(segment.toPath(), bytes);
+
+        StateLog.Recovery recovery = StateLog.recover(dir);
+        assertEquals(3, recovery.state.version);
+        assertArrayEquals(new int[] {2, 5}, recovery.state.playerPositions.get("ab"));
+    }
+
+    @Test
+    public void testSnapshotsCompactTheLog() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        newState(0);
+        StateLog log = new StateLog(dir, GRID_SIZE, 4);
+        for (int i = 0; i < 22; i++) {
+            commitMove(log, i % GRID_SIZE);
+        }
+        log.close();
+
+        // Every 4 deltas, only the files since the last snapshot are kept
+        assertEquals(6, log.getSnapshotsWritten());
+        String[] files = dir.toFile().list();
+        assertEquals(2, files.length);
+        StateLog.Recovery recovery = StateLog.recover(dir);
+        assertEquals(22, recovery.state.version);
+        assertEquals(1, recovery.replayed);
+        assertArrayEquals(new int[] {1, 5}, recovery.state.playerPositions.get("ab"));
+        assertEquals(1, (int) recovery.state.playerScores.get("ab"));
+    }
+}
@@ -0,0 +1,71 @@
+package test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import org.junit.Test;
+import src.Player;
+import src.Player.GameState;
+import src.StateSnapshot;
+
+public class TestStateSnapshot {
+
+    private static GameState newState() {
+        GameState state = new GameState();
+        state.isGameInitialized = true;
+        state.playerIds = new ArrayList<>(Arrays.asList("ab", "cd"));
+        state.playerList = new ArrayList<>(Arrays.asList((Player) null, null));
+        state.playerPositions = new HashMap<>();
+        state.playerPositions.put("ab", new int[] {1, 2});
+        state.playerPositions.put("cd", new int[] {3, 4});
+        state.treasurePositions = new ArrayList<>();
+        state.treasurePositions.add(new int[] {5, 6});
+        state.playerScores = new HashMap<>();
+        state.playerScores.put("ab", 7);
+        state.startTime = "12:00:00";
+        state.version = 42;
+        return state;
+    }
+
+    @Test
+    public void testLaterChangesDontShow() {
+        GameState live = newState();
+        StateSnapshot snapshot = StateSnapshot.of(live);
+
+        live.playerPositions.get("ab")[0] = 9;
+        live.playerPositions.remove("cd");
+        live.treasurePositions.clear();
+        live.playerScores.put("ab", 8);
+        live.playerIds.add("ef");
+
+        GameState state = snapshot.toGameState();
+        assertEquals(42, state.version);
+        assertTrue(state.isGameInitialized);
+        assertEquals("12:00:00", state.startTime);
+        assertEquals(Arrays.asList("ab", "cd"), state.playerIds);
+        assertArrayEquals(new int[] {1, 2}, state.playerPositions.get("ab"));
+        assertArrayEquals(new int[] {3, 4}, state.playerPositions.get("cd"));
+        assertEquals(1, state.treasurePositions.size());
+        assertArrayEquals(new int[] {5, 6}, state.treasurePositions.get(0));
+        assertEquals(Integer.valueOf(7), state.playerScores.get("ab"));
+        assertEquals(2, snapshot.getPlayerCount());
+    }
+
+    @Test
+    public void testEveryReaderGetsItsOwnCopy() {
+        StateSnapshot snapshot = StateSnapshot.of(newState());
+        GameState first = snapshot.toGameState();
+        first.playerPositions.get("ab")[0] = 9;
+        first.playerScores.clear();
+
+        GameState second = snapshot.toGameState();
+        assertNotSame(first.playerPositions, second.playerPositions);
+        assertArrayEquals(new int[] {1, 2}, second.playerPositions.get("ab"));
+        assertEquals(Integer.valueOf(7), second.playerScores.get("ab"));
+    }
+}
@@ -5,6 +5,7 @@ import java.awt.Robot;
 import java.awt.event.KeyEvent;
 import java.rmi.RemoteException;
 import java.util.ArrayList;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
@@ -22,16 +23,25 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.nio.file.Path;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
 import src.Game;
 import src.Tracker;
 import src.Player;
 import src.Player.GameState;
 import src.Game.ServerRole;
+import src.StateLog;
+import src.StateSnapshot;
 
 public class TestTrackerGame {
  
     private static Tracker tracker;
     private static ArrayList<Player> testPlayerList;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
  
     @BeforeClass
     public static void setUp() {
@@ -360,6 +370,129 @@ public class TestTrackerGame {
             finalState.treasurePositions.stream().noneMatch(t -> t[0] == 10 && t[1] == 10));
     }
 
+    @Test
+    public void testRegionPrimariesHandOffPlayers() throws Exception {
+        // Two regions side by side: x 0-7 and x 8-14
+        String regions = System.setProperty("game.regions", "1x2");
+        try {
+            Game player1 = new Game("127.0.0.1", 6789, "r1");
+            testPlayerList.add(player1);
+            Game player2 = new Game("127.0.0.1", 6789, "r2");
+            testPlayerList.add(player2);
+            Game player3 = new Game("127.0.0.1", 6789, "r3");
+            testPlayerList.add(player3);
+            Game player4 = new Game("127.0.0.1", 6789, "r4");
+            testPlayerList.add(player4);
+
+            Thread.sleep(200);
+
+            // r4 and r3 are the primary and backup of the left region, r2 and r1 of the right one
+            assertEquals(ServerRole.PRIMARY, player4.getServerRole());
+            assertEquals(ServerRole.BACKUP, player3.getServerRole());
+            assertEquals(ServerRole.PRIMARY, player2.getServerRole());
+            assertEquals(ServerRole.BACKUP, player1.getServerRole());
+            assertEquals(Arrays.asList("r4", "r2"), Arrays.asList(tracker.getRegionOwners().get(0).getPlayerId(),
+                                                                  tracker.getRegionOwners().get(1).getPlayerId()));
+
+            // Find r1 a row nobody else is on, then walk it across the whole maze and back
+            for (int i = 0; i < 15 && sharesRow(player1.getGameState(player1), "r1"); i++) {
+                int[] pos = player1.getGameState(player1).playerPositions.get("r1");
+                player1.processInput(pos[1] == 14 ? "4" : "2");
+            }
+            player1.processInput("111111111111111");
+            assertEquals(0, player1.getGameState(player1).playerPositions.get("r1")[0]);
+            player1.processInput("333333333333333");
+
+            // The primary of the right region took r1 over from the one of the left
+            int[] position = player1.getGameState(player1).playerPositions.get("r1");
+            assertEquals(14, position[0]);
+            assertArrayEquals(position, player2.getGameState(player1).playerPositions.get("r1"));
+            assertTrue(player4.getGameState(player1).playerPositions.get("r1")[0] >= 8);
+        } finally {
+            for (Player player : testPlayerList) {
+                player.selfCleanupAndDeregister();
+            }
+            testPlayerList.clear();
+            if (regions == null) {
+                System.clearProperty("game.regions");
+            } else {
+                System.setProperty("game.regions", regions);
+            }
+        }
+    }
+
+    @Test
+    public void testRecoveredScoresOutliveElectionsUntilTheirPlayersRejoin() throws Exception {
+        // The log a primary left behind: zz and yy had scored, then everybody went down
+        Path root = folder.getRoot().toPath();
+        GameState state = new GameState();
+        state.isGameInitialized = true;
+        state.playerList = new ArrayList<>();
+        state.playerIds = new ArrayList<>();
+        state.playerPositions = new HashMap<>();
+        state.playerPositions.put("zz", new int[] {1, 1});
+        state.playerPositions.put("yy", new int[] {2, 2});
+        state.treasurePositions = new ArrayList<>();
+        for (int x = 0; x < 10; x++) {
+            state.treasurePositions.add(new int[] {x, 14});
+        }
+        state.playerScores = new HashMap<>();
+        state.playerScores.put("zz", 5);
+        state.playerScores.put("yy", 3);
+        state.startTime = "12:00:00";
+        state.version = 7;
+        StateLog log = new StateLog(root.resolve("recovery"), 15, 1000);
+        log.snapshot(StateSnapshot.of(state));
+        log.close();
+
+        System.setProperty("game.wal.dir", root.toString());
+        System.setProperty("game.session", "recovery");
+        try {
+            Game player1 = new Game("127.0.0.1", 6789, "ma");
+            testPlayerList.add(player1);
+            GameState recovered = player1.getGameState(player1);
+            assertEquals("12:00:00", recovered.startTime);
+            assertEquals(5, (int) recovered.playerScores.get("zz"));
+            assertTrue(player1.isStateLogOpen());
+
+            // A join runs an election without zz and yy, and mb takes the state over as the new primary
+            Game player2 = new Game("127.0.0.1", 6789, "mb");
+            testPlayerList.add(player2);
+            Thread.sleep(200);
+            assertEquals(ServerRole.PRIMARY, player2.getServerRole());
+            // Only the primary keeps a log open
+            assertTrue(player2.isStateLogOpen());
+            assertTrue(!player1.isStateLogOpen());
+            GameState afterElection = player2.getGameState(player2);
+            assertEquals(5, (int) afterElection.playerScores.get("zz"));
+            assertEquals(3, (int) afterElection.playerScores.get("yy"));
+            assertTrue(!afterElection.playerPositions.containsKey("zz"));
+
+            // zz comes back to its score
+            Game player3 = new Game("127.0.0.1", 6789, "zz");
+            testPlayerList.add(player3);
+            Thread.sleep(200);
+            GameState rejoined = player3.getPrimaryServer().getGameState(player3);
+            assertEquals(5, (int) rejoined.playerScores.get("zz"));
+            assertTrue(rejoined.playerPositions.containsKey("zz"));
+            assertEquals(3, (int) rejoined.playerScores.get("yy"));
+        } finally {
+            for (Player player : testPlayerList) {
+                player.selfCleanupAndDeregister();
+            }
+            testPlayerList.clear();
+            System.clearProperty("game.wal.dir");
+            System.clearProperty("game.session");
+        }
+    }
+
+    // Whether another player is on the same row as the given one
+    private static boolean sharesRow(GameState state, String playerId) {
+        int row = state.playerPositions.get(playerId)[1];
+        return state.playerPositions.entrySet().stream()
+            .anyMatch(entry -> !entry.getKey().equals(playerId) && entry.getValue()[1] == row);
+    }
+
     @After
     public void tearDown() throws RemoteException {
         // Deregister all players